@@ -0,0 +1,110 @@
+package com.netcracker.core.declarative.client.cache;
+
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded, TTL-based record of declarative apply requests recently accepted by a backend.
+ * <p>
+ * Entries are keyed by the apply URL and a SHA-256 digest of the request body, so an identical
+ * {@code DeclarativeRequest} re-sent by a periodic resync, a label-only generation bump or a
+ * {@code BACKING_OFF} retry can be answered locally instead of hitting the backend again.
+ * The least recently used entry is evicted once {@code max-size} is reached.
+ * <p>
+ * Disabled by default; enable with {@code cloud.declarative.apply-cache.enabled=true}.
+ */
+@ApplicationScoped
+@Slf4j
+public class DeclarativeApplyCache {
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final LongSupplier nanoClock;
+    private final Map<String, Long> appliedAt;
+
+    @Inject
+    public DeclarativeApplyCache(@ConfigProperty(name = "cloud.declarative.apply-cache.enabled", defaultValue = "false") boolean enabled,
+                                 @ConfigProperty(name = "cloud.declarative.apply-cache.ttl", defaultValue = "10m") Duration ttl,
+                                 @ConfigProperty(name = "cloud.declarative.apply-cache.max-size", defaultValue = "1000") int maxSize) {
+        this(enabled, ttl, maxSize, System::nanoTime);
+    }
+
+    DeclarativeApplyCache(boolean enabled, Duration ttl, int maxSize, LongSupplier nanoClock) {
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.maxSize = maxSize;
+        this.nanoClock = nanoClock;
+        this.appliedAt = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > DeclarativeApplyCache.this.maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Builds the cache key for an apply request: its URL plus a digest of its body.
+     */
+    public String keyOf(Request request) throws IOException {
+        Buffer buffer = new Buffer();
+        RequestBody body = request.body();
+        if (body != null) {
+            body.writeTo(buffer);
+        }
+        return request.url() + "#" + sha256(buffer.readByteArray());
+    }
+
+    /**
+     * Returns {@code true} if a request with this key was accepted by the backend within the TTL.
+     */
+    public synchronized boolean isRecentlyApplied(String key) {
+        Long applied = appliedAt.get(key);
+        if (applied == null) {
+            return false;
+        }
+        if (nanoClock.getAsLong() - applied > ttlNanos) {
+            appliedAt.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void recordApplied(String key) {
+        appliedAt.put(key, nanoClock.getAsLong());
+        log.debug("Recorded successful apply, cache size={}", appliedAt.size());
+    }
+
+    public synchronized void invalidate(String key) {
+        appliedAt.remove(key);
+    }
+
+    synchronized int size() {
+        return appliedAt.size();
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
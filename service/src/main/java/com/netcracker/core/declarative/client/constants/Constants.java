@@ -17,6 +17,7 @@ public class Constants {
     public static final double CR_RETRY_MAX_INTERVAL = 900D;
     public static final String CR_RETRY_EXCEEDED_MESSAGE = "CR processing retries exceeded";
     public static final String CR_RETRY_EXCEEDED_REASON = "Exceeded the amount of retries while waiting for CR to be processed";
+    public static final String SKIP_APPLY_CACHE_ANNOTATION = "core.netcracker.com/skip-apply-cache";
 
     private Constants() {
     }
@@ -2,19 +2,39 @@ package com.netcracker.core.declarative.client.k8s;
 
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 /**
  * Client for managing ConfigMaps owned by core-operator via server-side apply.
  * Respects ownership: skips updates for ConfigMaps managed by other controllers
  * (determined by {@code app.kubernetes.io/managed-by} label).
+ * <p>
+ * Every written ConfigMap carries a digest of its data and owner in the {@value #DATA_HASH_ANNOTATION} annotation,
+ * so a write of unchanged content is skipped instead of being applied again.
+ * <p>
+ * ConfigMaps are read from a namespace-scoped informer filtered by the ConfigMap name, so ownership checks and
+ * resourceVersion lookups are in-memory reads. The informer is started on the first access of a ConfigMap;
+ * until it is synced, or if it can not be started, ConfigMaps are read with a GET. The informer may lag behind
+ * the own last apply, so writes use the cached ConfigMap only if it is at least at the resourceVersion of that apply
+ * and read it with a GET otherwise.
  */
 @ApplicationScoped
 @Slf4j
@@ -23,12 +43,30 @@ public class ConfigMapClient {
     public static final String LABEL_MANAGED_BY = "app.kubernetes.io/managed-by";
     public static final String MANAGED_BY_CORE_OPERATOR = "core-operator";
     public static final String PART_OF_CLOUD_CORE = "Cloud-Core";
+    public static final String DATA_HASH_ANNOTATION = "core.netcracker.com/data-hash";
 
     private final KubernetesClient client;
+    private final KubernetesWriteRateLimiter writeRateLimiter;
+    private final boolean informerEnabled;
+    private final Map<String, Optional<SharedIndexInformer<ConfigMap>>> informers = new ConcurrentHashMap<>();
+    // resourceVersion of the last apply of every ConfigMap
+    private final Map<String, String> appliedVersions = new ConcurrentHashMap<>();
 
-    @Inject
     public ConfigMapClient(KubernetesClient client) {
+        this(client, KubernetesWriteRateLimiter.unlimited());
+    }
+
+    public ConfigMapClient(KubernetesClient client, KubernetesWriteRateLimiter writeRateLimiter) {
+        this(client, writeRateLimiter, false);
+    }
+
+    @Inject
+    public ConfigMapClient(KubernetesClient client,
+                           KubernetesWriteRateLimiter writeRateLimiter,
+                           @ConfigProperty(name = "cloud.configmap.informer.enabled", defaultValue = "true") boolean informerEnabled) {
         this.client = client;
+        this.writeRateLimiter = writeRateLimiter;
+        this.informerEnabled = informerEnabled;
     }
 
     /**
@@ -49,13 +87,27 @@ public class ConfigMapClient {
                                String namespace,
                                Map<String, String> data,
                                HasMetadata owner) {
+        createOrUpdate(name, namespace, data, Map.of(), owner);
+    }
+
+    /**
+     * Creates or updates a ConfigMap with {@code data} and base64-encoded {@code binaryData}
+     * if it is managed by core-operator (or does not exist yet).
+     * Merges existing labels with core-operator ownership labels.
+     */
+    public void createOrUpdate(String name,
+                               String namespace,
+                               Map<String, String> data,
+                               Map<String, String> binaryData,
+                               HasMetadata owner) {
         Objects.requireNonNull(name, "name");
         Objects.requireNonNull(namespace, "namespace");
         Objects.requireNonNull(data, "data");
+        Objects.requireNonNull(binaryData, "binaryData");
 
         log.debug("Start creating or updating config map with name = {}", name);
 
-        ConfigMap existingConfigMap = getConfigMap(name, namespace);
+        ConfigMap existingConfigMap = getCurrentConfigMap(name, namespace);
 
         if (!shouldBeManagedByCoreOperator(existingConfigMap)) {
             log.info("Config map '{}' in namespace '{}' is not managed by '{}'. Skipping update.",
@@ -63,6 +115,12 @@ public class ConfigMapClient {
             return;
         }
 
+        String dataHash = dataHash(data, binaryData, owner);
+        if (isUpToDate(existingConfigMap, dataHash)) {
+            log.debug("Config map '{}' in namespace '{}' already contains the requested data. Skipping update.", name, namespace);
+            return;
+        }
+
         Map<String, String> effectiveLabels = resolveConfigMapLabels(existingConfigMap);
 
         // Include resourceVersion for optimistic locking: if another operator writes between
@@ -89,17 +147,72 @@ public class ConfigMapClient {
                 .withName(name)
                 .withNamespace(namespace)
                 .withLabels(effectiveLabels)
+                .withAnnotations(Map.of(DATA_HASH_ANNOTATION, dataHash))
                 .withResourceVersion(resourceVersion)
                 .withOwnerReferences(ownerReference)
                 .endMetadata()
                 .withData(data)
+                .withBinaryData(binaryData.isEmpty() ? null : binaryData)
                 .build();
 
-        client.configMaps()
-                .inNamespace(namespace)
-                .resource(configMap)
-                .fieldManager(MANAGED_BY_CORE_OPERATOR)
-                .serverSideApply();
+        writeRateLimiter.execute(KubernetesWriteRateLimiter.Priority.HIGH, () -> client.configMaps()
+                        .inNamespace(namespace)
+                        .resource(configMap)
+                        .fieldManager(MANAGED_BY_CORE_OPERATOR)
+                        .serverSideApply())
+                .map(ConfigMap::getMetadata)
+                .map(ObjectMeta::getResourceVersion)
+                .ifPresent(applied -> appliedVersions.put(namespace + "/" + name, applied));
+    }
+
+    /**
+     * Returns {@code true} if the existing ConfigMap was written by core-operator with the same data and owner.
+     */
+    boolean isUpToDate(ConfigMap existingConfigMap, String dataHash) {
+        if (existingConfigMap == null || existingConfigMap.getMetadata() == null) {
+            return false;
+        }
+        ObjectMeta metadata = existingConfigMap.getMetadata();
+        Map<String, String> labels = metadata.getLabels() == null ? Map.of() : metadata.getLabels();
+        Map<String, String> annotations = metadata.getAnnotations() == null ? Map.of() : metadata.getAnnotations();
+        return MANAGED_BY_CORE_OPERATOR.equals(labels.get(LABEL_MANAGED_BY))
+                && PART_OF_CLOUD_CORE.equals(labels.get(LABEL_PART_OF))
+                && dataHash.equals(annotations.get(DATA_HASH_ANNOTATION));
+    }
+
+    static String dataHash(Map<String, String> data, HasMetadata owner) {
+        return dataHash(data, Map.of(), owner);
+    }
+
+    /**
+     * SHA-256 of the data and binaryData entries in key order and of the owner uid, which is part of the written
+     * ConfigMap too. ConfigMaps without binaryData keep the digest of data and owner only.
+     */
+    static String dataHash(Map<String, String> data, Map<String, String> binaryData, HasMetadata owner) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        updateDigest(digest, data);
+        if (!binaryData.isEmpty()) {
+            digest.update((byte) 1);
+            updateDigest(digest, binaryData);
+        }
+        if (owner != null && owner.getMetadata() != null) {
+            digest.update(String.valueOf(owner.getMetadata().getUid()).getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void updateDigest(MessageDigest digest, Map<String, String> entries) {
+        new TreeMap<>(entries).forEach((key, value) -> {
+            digest.update(key.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        });
     }
 
     private Map<String, String> resolveConfigMapLabels(ConfigMap existingConfigMap) {
@@ -138,10 +251,120 @@ public class ConfigMapClient {
                 .orElse(true);
     }
 
+    /**
+     * Returns the data of the ConfigMap, or an empty map if it does not exist.
+     */
+    public Map<String, String> getData(String name, String namespace) {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(namespace, "namespace");
+
+        return Optional.ofNullable(getCurrentConfigMap(name, namespace))
+                .map(ConfigMap::getData)
+                .orElse(Map.of());
+    }
+
+    /**
+     * Notifies the listener whether the ConfigMap should be managed by core-operator whenever it is created,
+     * changed or deleted. The listener is called on the informer thread.
+     *
+     * @return {@code false} if the ConfigMap informer is not available and the caller has to poll
+     * {@link #shouldBeManagedByCoreOperator(String, String)} instead
+     */
+    public boolean watchOwnership(String name, String namespace, Consumer<Boolean> listener) {
+        Objects.requireNonNull(name, "name");
+        Objects.requireNonNull(namespace, "namespace");
+        Objects.requireNonNull(listener, "listener");
+
+        SharedIndexInformer<ConfigMap> informer = informerFor(name, namespace);
+        if (informer == null) {
+            return false;
+        }
+        informer.addEventHandler(new ResourceEventHandler<>() {
+            @Override
+            public void onAdd(ConfigMap configMap) {
+                listener.accept(shouldBeManagedByCoreOperator(configMap));
+            }
+
+            @Override
+            public void onUpdate(ConfigMap oldConfigMap, ConfigMap newConfigMap) {
+                listener.accept(shouldBeManagedByCoreOperator(newConfigMap));
+            }
+
+            @Override
+            public void onDelete(ConfigMap configMap, boolean deletedFinalStateUnknown) {
+                listener.accept(shouldBeManagedByCoreOperator((ConfigMap) null));
+            }
+        });
+        return true;
+    }
+
     private ConfigMap getConfigMap(String name, String namespace) {
+        SharedIndexInformer<ConfigMap> informer = informerFor(name, namespace);
+        if (informer != null && informer.hasSynced()) {
+            return informer.getStore().getByKey(namespace + "/" + name);
+        }
+        return readConfigMap(name, namespace);
+    }
+
+    /**
+     * Same as {@link #getConfigMap(String, String)}, but never older than the last apply of the ConfigMap.
+     */
+    private ConfigMap getCurrentConfigMap(String name, String namespace) {
+        SharedIndexInformer<ConfigMap> informer = informerFor(name, namespace);
+        if (informer != null && informer.hasSynced()) {
+            String key = namespace + "/" + name;
+            ConfigMap cached = informer.getStore().getByKey(key);
+            String applied = appliedVersions.get(key);
+            if (applied == null || (cached != null && isAtLeast(cached.getMetadata().getResourceVersion(), applied))) {
+                return cached;
+            }
+            log.debug("Cached config map '{}' in namespace '{}' is older than the last apply, reading it directly", name, namespace);
+        }
+        return readConfigMap(name, namespace);
+    }
+
+    private ConfigMap readConfigMap(String name, String namespace) {
         return client.configMaps()
                 .inNamespace(namespace)
                 .withName(name)
                 .get();
     }
+
+    /**
+     * resourceVersions are opaque, but in practice increasing numbers; anything else is only equal to itself.
+     */
+    static boolean isAtLeast(String resourceVersion, String applied) {
+        if (Objects.equals(resourceVersion, applied)) {
+            return true;
+        }
+        try {
+            return resourceVersion != null && Long.parseLong(resourceVersion) >= Long.parseLong(applied);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private SharedIndexInformer<ConfigMap> informerFor(String name, String namespace) {
+        if (!informerEnabled) {
+            return null;
+        }
+        return informers.computeIfAbsent(namespace + "/" + name, key -> {
+            try {
+                log.info("Starting informer for config map '{}' in namespace '{}'", name, namespace);
+                return Optional.of(client.configMaps()
+                        .inNamespace(namespace)
+                        .withField("metadata.name", name)
+                        .inform());
+            } catch (RuntimeException e) {
+                log.warn("Failed to start informer for config map '{}' in namespace '{}', reading it directly", name, namespace, e);
+                return Optional.empty();
+            }
+        }).orElse(null);
+    }
+
+    @PreDestroy
+    public void close() {
+        informers.values().forEach(informer -> informer.ifPresent(SharedIndexInformer::stop));
+        informers.clear();
+    }
 }
@@ -4,12 +4,17 @@ import com.netcracker.core.declarative.resources.maas.Maas;
 import com.netcracker.core.declarative.resources.maas.MaasList;
 import com.netcracker.core.declarative.resources.mesh.Mesh;
 import com.netcracker.core.declarative.resources.mesh.MeshList;
+import io.fabric8.kubernetes.api.model.Event;
+import io.fabric8.kubernetes.api.model.HasMetadata;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.dsl.MixedOperation;
 import io.fabric8.kubernetes.client.dsl.Resource;
 
+import static com.netcracker.core.declarative.client.k8s.KubernetesWriteRateLimiter.Priority.LOW;
+
 public class DeclarativeKubernetesClient {
     final KubernetesClient client;
+    private KubernetesWriteRateLimiter writeRateLimiter = KubernetesWriteRateLimiter.unlimited();
 
     public DeclarativeKubernetesClient(KubernetesClient client) {
         this.client = client;
@@ -19,6 +24,10 @@ public class DeclarativeKubernetesClient {
         return client;
     }
 
+    public void setWriteRateLimiter(KubernetesWriteRateLimiter writeRateLimiter) {
+        this.writeRateLimiter = writeRateLimiter;
+    }
+
     public MixedOperation<Mesh, MeshList, Resource<Mesh>> mesh() {
         return client.resources(Mesh.class, MeshList.class);
     }
@@ -26,4 +35,26 @@ public class DeclarativeKubernetesClient {
     public MixedOperation<Maas, MaasList, Resource<Maas>> maas() {
         return client.resources(Maas.class, MaasList.class);
     }
+
+    /**
+     * Replaces the status of the resource. Status writes are rate limited by {@link KubernetesWriteRateLimitInterceptor}
+     * of the operator's client, like the status patches sent by the operator framework.
+     */
+    public <R extends HasMetadata> void updateStatus(R resource) {
+        client.resource(resource).updateStatus();
+    }
+
+    /**
+     * Creates the Event as a low priority write; it is dropped when the write rate limit is exhausted.
+     */
+    public void createEvent(Event event, String namespace) {
+        writeRateLimiter.execute(LOW, () -> client.resource(event).inNamespace(namespace).create());
+    }
+
+    /**
+     * Patches the Event as a low priority write; it is dropped when the write rate limit is exhausted.
+     */
+    public void patchEvent(Event event, String namespace) {
+        writeRateLimiter.execute(LOW, () -> client.resource(event).inNamespace(namespace).patch());
+    }
 }
@@ -0,0 +1,66 @@
+package com.netcracker.core.declarative.client.k8s;
+
+import io.fabric8.kubernetes.client.http.AsyncBody;
+import io.fabric8.kubernetes.client.http.BasicBuilder;
+import io.fabric8.kubernetes.client.http.HttpRequest;
+import io.fabric8.kubernetes.client.http.HttpResponse;
+import io.fabric8.kubernetes.client.http.Interceptor;
+import io.fabric8.kubernetes.client.http.RequestTags;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies {@link KubernetesWriteRateLimiter} to the status subresource writes of the operator's Kubernetes client.
+ * <p>
+ * Status patches are mostly sent by the operator framework after a reconcile, so they are limited here where the
+ * request is actually sent and where its response, including a 429, is seen.
+ */
+public class KubernetesWriteRateLimitInterceptor implements Interceptor {
+    public static final String NAME = "write-rate-limit";
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final String STATUS_SUBRESOURCE = "/status";
+    private static final Set<String> WRITE_METHODS = Set.of("POST", "PUT", "PATCH");
+
+    private final KubernetesWriteRateLimiter writeRateLimiter;
+
+    public KubernetesWriteRateLimitInterceptor(KubernetesWriteRateLimiter writeRateLimiter) {
+        this.writeRateLimiter = writeRateLimiter;
+    }
+
+    @Override
+    public void before(BasicBuilder builder, HttpRequest request, RequestTags tags) {
+        if (isStatusWrite(request)) {
+            writeRateLimiter.acquire(KubernetesWriteRateLimiter.Priority.HIGH);
+        }
+    }
+
+    @Override
+    public void after(HttpRequest request, HttpResponse<?> response, AsyncBody.Consumer<List<ByteBuffer>> consumer) {
+        if (!isStatusWrite(request)) {
+            return;
+        }
+        if (response.code() == TOO_MANY_REQUESTS) {
+            writeRateLimiter.onThrottled(retryAfter(response.header("Retry-After")));
+        } else if (response.isSuccessful()) {
+            writeRateLimiter.onSuccess();
+        }
+    }
+
+    static boolean isStatusWrite(HttpRequest request) {
+        return WRITE_METHODS.contains(request.method())
+                && request.uri().getPath().endsWith(STATUS_SUBRESOURCE);
+    }
+
+    private static Duration retryAfter(String header) {
+        try {
+            long seconds = header == null ? 0 : Long.parseLong(header.trim());
+            return seconds > 0 ? Duration.ofSeconds(seconds) : Duration.ofSeconds(1);
+        } catch (NumberFormatException e) {
+            return Duration.ofSeconds(1);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.netcracker.core.declarative.client.k8s;
+
+import io.fabric8.kubernetes.api.model.Status;
+import io.fabric8.kubernetes.api.model.StatusDetails;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Token bucket shared by all apiserver writes made by core-operator (status updates, Events, ConfigMap applies).
+ * <p>
+ * {@link Priority#HIGH} writes always get a permit, waiting for the bucket to refill if needed.
+ * {@link Priority#LOW} writes (Events) may not dip into the reserved part of the bucket and are dropped
+ * if no permit becomes available within {@code event-max-wait}.
+ * <p>
+ * The rate adapts to apiserver feedback: a 429 response halves it (down to {@code min-qps}) and pauses all
+ * writes for the {@code Retry-After} period, while successful writes grow it back towards {@code qps}.
+ * <p>
+ * Disabled by default ({@code cloud.k8s.write-rate-limit.enabled}): an enabled limiter blocks the writing thread while
+ * it waits for a permit and drops Events it can not send in time.
+ */
+@ApplicationScoped
+@Slf4j
+public class KubernetesWriteRateLimiter {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final double INCREASE_FACTOR = 0.05;
+    private static final double DECREASE_FACTOR = 0.5;
+
+    public enum Priority {HIGH, LOW}
+
+    private final boolean enabled;
+    private final double maxRate;
+    private final double minRate;
+    private final double burst;
+    private final double lowPriorityReserve;
+    private final long lowPriorityMaxWaitNanos;
+    private final LongSupplier nanoClock;
+
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    @Inject
+    public KubernetesWriteRateLimiter(@ConfigProperty(name = "cloud.k8s.write-rate-limit.enabled", defaultValue = "false") boolean enabled,
+                                      @ConfigProperty(name = "cloud.k8s.write-rate-limit.qps", defaultValue = "20") double qps,
+                                      @ConfigProperty(name = "cloud.k8s.write-rate-limit.min-qps", defaultValue = "2") double minQps,
+                                      @ConfigProperty(name = "cloud.k8s.write-rate-limit.burst", defaultValue = "40") int burst,
+                                      @ConfigProperty(name = "cloud.k8s.write-rate-limit.event-reserve", defaultValue = "0.25") double eventReserve,
+                                      @ConfigProperty(name = "cloud.k8s.write-rate-limit.event-max-wait", defaultValue = "2s") Duration eventMaxWait) {
+        this(enabled, qps, minQps, burst, eventReserve, eventMaxWait, System::nanoTime);
+    }
+
+    KubernetesWriteRateLimiter(boolean enabled, double qps, double minQps, int burst, double eventReserve,
+                               Duration eventMaxWait, LongSupplier nanoClock) {
+        if (enabled && (qps <= 0 || minQps <= 0 || minQps > qps || burst < 1)) {
+            throw new IllegalArgumentException("Invalid Kubernetes write rate limit: qps=%s, min-qps=%s, burst=%s".formatted(qps, minQps, burst));
+        }
+        this.enabled = enabled;
+        this.maxRate = qps;
+        this.minRate = minQps;
+        this.burst = burst;
+        this.lowPriorityReserve = burst * eventReserve;
+        this.lowPriorityMaxWaitNanos = eventMaxWait.toNanos();
+        this.nanoClock = nanoClock;
+        this.rate = qps;
+        this.tokens = burst;
+        this.lastRefill = nanoClock.getAsLong();
+        this.pausedUntil = lastRefill;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Limiter which never delays writes, used when no shared instance is wired in.
+     */
+    public static KubernetesWriteRateLimiter unlimited() {
+        return new KubernetesWriteRateLimiter(false, 0, 0, 0, 0, Duration.ZERO, System::nanoTime);
+    }
+
+    /**
+     * Waits for a permit and runs the write, feeding the outcome back into the adaptive rate.
+     *
+     * @return result of the write, or empty if a {@link Priority#LOW} write was dropped
+     */
+    public <R> Optional<R> execute(Priority priority, Supplier<R> write) {
+        if (!acquire(priority)) {
+            return Optional.empty();
+        }
+        try {
+            R result = write.get();
+            onSuccess();
+            return Optional.ofNullable(result);
+        } catch (KubernetesClientException e) {
+            if (e.getCode() == TOO_MANY_REQUESTS) {
+                onThrottled(retryAfter(e));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Blocks until a permit is available.
+     *
+     * @return {@code false} if a {@link Priority#LOW} permit could not be obtained within {@code event-max-wait}
+     */
+    public boolean acquire(Priority priority) {
+        long waitNanos = reserve(priority);
+        if (waitNanos < 0) {
+            log.warn("Kubernetes write rate limit reached, dropping low priority write");
+            return false;
+        }
+        if (waitNanos > 0) {
+            log.debug("Kubernetes write rate limit reached, waiting {} ms", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reserves a permit and returns how long the caller has to wait before using it,
+     * or {@code -1} if a low priority permit would take longer than allowed.
+     */
+    synchronized long reserve(Priority priority) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = nanoClock.getAsLong();
+        refill(now);
+        double floor = priority == Priority.LOW ? lowPriorityReserve : 0;
+        long waitNanos = Math.max(0, (long) ((floor + 1 - tokens) / rate * TimeUnit.SECONDS.toNanos(1)));
+        waitNanos = Math.max(waitNanos, pausedUntil - now);
+        if (priority == Priority.LOW && waitNanos > lowPriorityMaxWaitNanos) {
+            return -1;
+        }
+        tokens -= 1;
+        return waitNanos;
+    }
+
+    synchronized void onSuccess() {
+        if (enabled && rate < maxRate) {
+            refill(nanoClock.getAsLong());
+            rate = Math.min(maxRate, rate + maxRate * INCREASE_FACTOR);
+        }
+    }
+
+    synchronized void onThrottled(Duration retryAfter) {
+        if (!enabled) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        refill(now);
+        rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        tokens = Math.min(tokens, 0);
+        pausedUntil = Math.max(pausedUntil, now + retryAfter.toNanos());
+        log.warn("Kubernetes API throttled core-operator writes, reducing write rate to {} qps for at least {} s",
+                rate, retryAfter.toSeconds());
+    }
+
+    public synchronized double getCurrentRate() {
+        return rate;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+        lastRefill = now;
+    }
+
+    private static Duration retryAfter(KubernetesClientException e) {
+        Integer seconds = Optional.ofNullable(e.getStatus())
+                .map(Status::getDetails)
+                .map(StatusDetails::getRetryAfterSeconds)
+                .orElse(null);
+        return seconds != null && seconds > 0 ? Duration.ofSeconds(seconds) : Duration.ofSeconds(1);
+    }
+}
@@ -5,10 +5,19 @@ import com.netcracker.core.declarative.service.composite.CompositeStructureWatch
 import com.netcracker.core.declarative.service.composite.TopologyConfigMapPublisher;
 import com.netcracker.core.declarative.service.composite.model.CompositeStructure;
 import com.netcracker.core.declarative.service.composite.model.transformation.CompositeSpecTransformer;
+import com.netcracker.core.declarative.service.composite.model.transformation.IncrementalCompositeStructureTransformer;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.javaoperatorsdk.operator.api.reconciler.Cleaner;
+import io.javaoperatorsdk.operator.api.reconciler.Context;
+import io.javaoperatorsdk.operator.api.reconciler.DeleteControl;
+import io.javaoperatorsdk.operator.api.reconciler.EventSourceContext;
 import io.javaoperatorsdk.operator.api.reconciler.UpdateControl;
+import io.javaoperatorsdk.operator.processing.event.ResourceID;
+import io.javaoperatorsdk.operator.processing.event.source.EventSource;
+import io.javaoperatorsdk.operator.processing.event.source.inbound.SimpleInboundEventSource;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import com.netcracker.core.declarative.client.rest.Condition;
 import com.netcracker.core.declarative.client.rest.ProcessStatus;
 import com.netcracker.core.declarative.exception.NoopConsulException;
@@ -19,22 +28,45 @@ import com.netcracker.core.declarative.resources.composite.Composite;
 import com.netcracker.core.declarative.service.CompositeConsulUpdater;
 import com.netcracker.core.declarative.service.CompositeSpec;
 import com.netcracker.core.declarative.service.CompositeCRHolder;
+import com.netcracker.core.declarative.service.CompositeMembershipNotifier;
+import com.netcracker.core.declarative.service.CompositeMembershipSnapshot;
+import com.netcracker.core.declarative.service.CompositeNotificationOutbox;
 import com.netcracker.core.declarative.service.CompositeStructureUpdateNotifier;
+import com.netcracker.core.declarative.service.XaasNotificationRegistry;
+import jakarta.inject.Inject;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
 
 import static com.netcracker.core.declarative.client.constants.Constants.VALIDATED_STEP_NAME;
 
 @Slf4j
-public abstract class BaseCompositeReconciler<T extends Composite> extends CoreReconciler<T> {
+public abstract class BaseCompositeReconciler<T extends Composite> extends CoreReconciler<T> implements Cleaner<T> {
     public static final String MAAS_NAME = "MaaS";
     public static final String DBAAS_NAME = "DBaaS";
 
     public static final String COMPOSITE_STRUCTURE_UPDATED_STEP_NAME = "CompositeStructureUpdated";
     public static final Function<String, String> XAAS_UPDATED_STEP_NAME = (String id) -> "%sUpdated".formatted(StringUtils.capitalize(id));
+    static final long DEFAULT_NOTIFY_DEADLINE_MS = 10_000;
+
+    // topology publishes still being written (and retried) by ConfigMapWriter, so reconcile threads are not blocked
+    private final Map<ResourceID, PendingPublish> pendingPublishes = new ConcurrentHashMap<>();
+    // composite IDs of the reconciled CRs waiting for the notification outbox to deliver their members
+    private final Map<ResourceID, String> awaitedDeliveries = new ConcurrentHashMap<>();
+    // triggers the reconcile of a composite once its topology publish or an outbox delivery completes, instead of polling for it
+    private final SimpleInboundEventSource<T> reconcileTrigger = new SimpleInboundEventSource<>("composite-reconcile-trigger");
+    // composite IDs of the reconciled CRs, a composite is watched until the last of its CRs is deleted
+    private final Map<ResourceID, String> watchedComposites = new ConcurrentHashMap<>();
 
     private CompositeSpecTransformer compositeSpecTransformer;
     private CompositeConsulUpdater compositeConsulUpdater;
@@ -43,6 +75,15 @@ public abstract class BaseCompositeReconciler<T extends Composite> extends CoreR
     private CompositeCRHolder compositeCRHolder;
     private TopologyConfigMapPublisher topologyConfigMapPublisher;
 
+    private XaasNotificationRegistry notificationRegistry = new XaasNotificationRegistry();
+    private CompositeNotificationOutbox notificationOutbox = CompositeNotificationOutbox.disabled();
+    private CompositeMembershipNotifier membershipNotifier = new CompositeMembershipNotifier(List.of(), notificationRegistry);
+    private CompositeMembershipSnapshot membershipSnapshot = new CompositeMembershipSnapshot();
+    private IncrementalCompositeStructureTransformer structureTransformer = new IncrementalCompositeStructureTransformer();
+
+    @ConfigProperty(name = "cloud.composite.structure.xaas.notify-deadline", defaultValue = "10000")
+    long notifyDeadlineMs;
+
     public BaseCompositeReconciler(
             KubernetesClient client,
             CompositeConsulUpdater compositeConsulUpdater,
@@ -63,6 +104,37 @@ public abstract class BaseCompositeReconciler<T extends Composite> extends CoreR
     protected BaseCompositeReconciler() {
     }
 
+    @Inject
+    void setNotificationRegistry(XaasNotificationRegistry notificationRegistry) {
+        this.notificationRegistry = notificationRegistry;
+    }
+
+    @Inject
+    void setNotificationOutbox(CompositeNotificationOutbox notificationOutbox) {
+        this.notificationOutbox = notificationOutbox;
+        notificationOutbox.addDeliveryListener(this::onNotificationDelivered);
+    }
+
+    @Inject
+    void setMembershipNotifier(CompositeMembershipNotifier membershipNotifier) {
+        this.membershipNotifier = membershipNotifier;
+    }
+
+    @Inject
+    void setMembershipSnapshot(CompositeMembershipSnapshot membershipSnapshot) {
+        this.membershipSnapshot = membershipSnapshot;
+    }
+
+    @Inject
+    void setStructureTransformer(IncrementalCompositeStructureTransformer structureTransformer) {
+        this.structureTransformer = structureTransformer;
+    }
+
+    @Override
+    public List<EventSource<?, T>> prepareEventSources(EventSourceContext<T> context) {
+        return List.of(reconcileTrigger);
+    }
+
     @Override
     public UpdateControl<T> reconcileInternal(T composite) throws Exception {
         log.info("Reconcile composite Resource {}", composite);
@@ -82,10 +154,18 @@ public abstract class BaseCompositeReconciler<T extends Composite> extends CoreR
 
         if (!isCompleted(composite, COMPOSITE_STRUCTURE_UPDATED_STEP_NAME)) {
             try {
-                CompositeStructure structure = compositeSpecTransformer.transform(compositeSpec);
-                topologyConfigMapPublisher.publish(structure, composite).toCompletableFuture().join();
+                CompletableFuture<Void> publish = publishTopology(composite, compositeSpec);
+                if (!publish.isDone()) {
+                    return awaitPublish(composite);
+                }
+                pendingPublishes.remove(ResourceID.fromResource(composite));
+                publish.join();
                 compositeConsulUpdater.updateCompositeStructureInConsul(compositeSpec);
                 completeStep(composite, COMPOSITE_STRUCTURE_UPDATED_STEP_NAME);
+            } catch (CompletionException ce) {
+                Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
+                log.error("Topology ConfigMap publish error", cause);
+                return failStep(composite, COMPOSITE_STRUCTURE_UPDATED_STEP_NAME, "topology publish error", cause.getMessage());
             } catch (NoopConsulException nce) {
                 log.warn("Consul integration is disabled; skip composite CR processing");
                 return failStepNoRetry(composite, COMPOSITE_STRUCTURE_UPDATED_STEP_NAME, "consul disabled", "Consul integration is disabled; skip composite CR processing");
@@ -97,29 +177,142 @@ public abstract class BaseCompositeReconciler<T extends Composite> extends CoreR
             }
         }
 
+        // read before the members, so the members are at least as new as the index
+        long consulIndex = membershipSnapshot.getIndex(compositeSpec.getCompositeId());
         Set<String> namespaceList = compositeConsulUpdater.getCompositeMembers(compositeSpec.getCompositeId());
 
         log.info("Update XaaSes...");
+        String compositeId = compositeSpec.getCompositeId();
+        notificationRegistry.restore(composite.getStatus());
+        if (notificationOutbox.isEnabled()) {
+            return queueNotifications(composite, compositeId, namespaceList);
+        }
+        Map<CompositeStructureUpdateNotifier, CompletableFuture<Void>> notifications = new LinkedHashMap<>();
         for (CompositeStructureUpdateNotifier step : compositeStructureUpdateNotifiers) {
             String stepId = XAAS_UPDATED_STEP_NAME.apply(step.getXaasName());
             if (isCompleted(composite, stepId)) {
                 continue;
             }
+            if (notificationRegistry.isAcknowledged(step.getXaasName(), compositeId, namespaceList)) {
+                log.info("{} already has the current members of composite '{}', skip notification", step.getXaasName(), compositeId);
+                completeStep(composite, stepId);
+                continue;
+            }
+            log.info("Send composite structure to {}", step.getXaasName());
+            notifications.put(step, membershipNotifier.send(step, compositeId, namespaceList, consulIndex));
+        }
 
+        // all XaaSes are notified concurrently, so the total wait is bounded by the slowest one, not the sum
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(notifyDeadlineMs > 0 ? notifyDeadlineMs : DEFAULT_NOTIFY_DEADLINE_MS);
+        boolean failed = false;
+        for (Map.Entry<CompositeStructureUpdateNotifier, CompletableFuture<Void>> notification : notifications.entrySet()) {
+            CompositeStructureUpdateNotifier step = notification.getKey();
+            String stepId = XAAS_UPDATED_STEP_NAME.apply(step.getXaasName());
             try {
-                log.info("Send composite structure to {}", step.getXaasName());
-                step.notify(compositeSpec.getCompositeId(), namespaceList);
+                notification.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
                 completeStep(composite, stepId);
-            } catch (Exception e) {
-                log.error("Notification failed for {}", step.getXaasName(), e);
-                return failStep(composite, stepId, step.getXaasName() + " notify error", e.getMessage());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("Notification failed for {}", step.getXaasName(), cause);
+                buildCondition(composite, new Condition(stepId, ProcessStatus.FAILED, cause.getMessage(), step.getXaasName() + " notify error"));
+                failed = true;
+            } catch (TimeoutException e) {
+                log.error("Notification of {} did not complete in time, it is awaited by the next reconcile", step.getXaasName());
+                buildCondition(composite, new Condition(stepId, ProcessStatus.FAILED, "no response within the notification deadline", step.getXaasName() + " notify error"));
+                failed = true;
             }
         }
+        notificationRegistry.store(composite.getStatus(), compositeId);
+        if (failed) {
+            client.updateStatus(composite);
+            return setPhaseAndReschedule(composite, Phase.BACKING_OFF);
+        }
 
         log.info("Composite resource successfully processed");
         return setPhaseAndReschedule(composite, Phase.UPDATED_PHASE);
     }
 
+    /**
+     * Hands the members over to the notification outbox, which delivers them to every XaaS independently.
+     * The steps of the XaaSes stay in progress and the composite waits until the outbox delivered the members;
+     * every delivery triggers a reconcile, which completes the steps of the XaaSes that acknowledged them.
+     */
+    private UpdateControl<T> queueNotifications(T composite, String compositeId, Set<String> namespaceList) {
+        ResourceID resourceID = ResourceID.fromResource(composite);
+        awaitedDeliveries.put(resourceID, compositeId);
+        notificationOutbox.enqueue(compositeId, namespaceList);
+        boolean queued = false;
+        for (CompositeStructureUpdateNotifier step : compositeStructureUpdateNotifiers) {
+            String stepId = XAAS_UPDATED_STEP_NAME.apply(step.getXaasName());
+            if (isCompleted(composite, stepId)) {
+                continue;
+            }
+            if (notificationRegistry.isAcknowledged(step.getXaasName(), compositeId, namespaceList)) {
+                completeStep(composite, stepId);
+            } else {
+                buildCondition(composite, new Condition(stepId, ProcessStatus.IN_PROGRESS, "", "queued for delivery"));
+                queued = true;
+            }
+        }
+        notificationRegistry.store(composite.getStatus(), compositeId);
+        if (queued) {
+            log.info("XaaS notifications are delivered from the outbox, wait for the delivery");
+            return setPhaseAndReschedule(composite, Phase.WAITING_FOR_DEPENDS);
+        }
+        awaitedDeliveries.remove(resourceID);
+        log.info("Composite resource successfully processed");
+        return setPhaseAndReschedule(composite, Phase.UPDATED_PHASE);
+    }
+
+    private void onNotificationDelivered(String compositeId) {
+        awaitedDeliveries.forEach((resourceID, awaited) -> {
+            if (awaited.equals(compositeId)) {
+                reconcileTrigger.propagateEvent(resourceID);
+            }
+        });
+    }
+
+    /**
+     * Returns the publish of the topology ConfigMap for the current generation of the composite,
+     * starting it if there is none yet. The composite is reconciled again as soon as the publish completes.
+     * <p>
+     * Publishes are tracked in memory only: after a restart the next reconcile of a composite still waiting for
+     * its publish starts the publish anew.
+     */
+    private CompletableFuture<Void> publishTopology(T composite, CompositeSpec compositeSpec) {
+        ResourceID resourceID = ResourceID.fromResource(composite);
+        Long generation = composite.getMetadata().getGeneration();
+        PendingPublish pending = pendingPublishes.get(resourceID);
+        if (pending != null && Objects.equals(pending.generation(), generation)) {
+            return pending.result();
+        }
+        CompositeStructure structure = compositeSpecTransformer.transform(compositeSpec);
+        CompletableFuture<Void> result = topologyConfigMapPublisher.publish(structure, composite).toCompletableFuture();
+        pendingPublishes.put(resourceID, new PendingPublish(generation, result));
+        result.whenComplete((ignored, error) -> reconcileTrigger.propagateEvent(resourceID));
+        return result;
+    }
+
+    private UpdateControl<T> awaitPublish(T composite) {
+        CoreCondition condition = composite.getStatus().getConditions().get(COMPOSITE_STRUCTURE_UPDATED_STEP_NAME);
+        if (composite.getStatus().getPhase() == Phase.WAITING_FOR_DEPENDS
+                && condition != null && ProcessStatus.IN_PROGRESS.equals(condition.getState())) {
+            log.debug("Topology ConfigMap publish is still in progress");
+            return UpdateControl.noUpdate();
+        }
+        log.info("Topology ConfigMap publish is in progress, reconcile again when it completes");
+        buildCondition(composite, new Condition(COMPOSITE_STRUCTURE_UPDATED_STEP_NAME, ProcessStatus.IN_PROGRESS, "", "topology publish in progress"));
+        composite.getStatus().setObservedGeneration(composite.getMetadata().getGeneration());
+        composite.getStatus().setPhase(Phase.WAITING_FOR_DEPENDS);
+        return UpdateControl.patchStatus(composite);
+    }
+
+    @Override
+    protected UpdateControl<T> reconcilePooling(T composite) throws Exception {
+        // composites wait only for their own topology publish and outbox deliveries, continue with the remaining steps
+        return reconcileInternal(composite);
+    }
+
     @Override
     protected UpdateControl<T> onReconciliationCompleted(T composite) {
         UpdateControl<T> result = super.onReconciliationCompleted(composite);
@@ -127,7 +320,8 @@ public abstract class BaseCompositeReconciler<T extends Composite> extends CoreR
         try {
             CompositeSpec compositeSpec = fromResource(composite);
             log.info("CompositeStructure updated -> start CompositeStructure watcher for compositeId = {}", compositeSpec.getCompositeId());
-            compositeCRHolder.set(composite);
+            watchedComposites.put(ResourceID.fromResource(composite), compositeSpec.getCompositeId());
+            compositeCRHolder.set(compositeSpec.getCompositeId(), composite);
             compositeStructureWatcher.start(compositeSpec.getCompositeId());
         }
         catch (Exception e) {
@@ -137,15 +331,35 @@ public abstract class BaseCompositeReconciler<T extends Composite> extends CoreR
         return result;
     }
 
+    @Override
+    public DeleteControl cleanup(T composite, Context<T> context) {
+        ResourceID resourceID = ResourceID.fromResource(composite);
+        pendingPublishes.remove(resourceID);
+        awaitedDeliveries.remove(resourceID);
+        String compositeId = watchedComposites.remove(resourceID);
+        if (compositeId != null && !watchedComposites.containsValue(compositeId)) {
+            try {
+                log.info("Composite CR deleted -> stop CompositeStructure watcher for compositeId = {}", compositeId);
+                compositeStructureWatcher.stop(compositeId);
+                compositeCRHolder.remove(compositeId);
+                structureTransformer.remove(compositeId);
+                membershipSnapshot.remove(compositeId);
+            } catch (Exception e) {
+                log.error("Cannot stop compositeStructureWatcher", e);
+            }
+        }
+        return DeleteControl.defaultDelete();
+    }
+
     private UpdateControl<T> failStep(T resource, String type, String message, String reason) {
         buildCondition(resource, new Condition(type, ProcessStatus.FAILED, reason, message));
-        client.getRawClient().resource(resource).updateStatus();
+        client.updateStatus(resource);
         return setPhaseAndReschedule(resource, Phase.BACKING_OFF);
     }
 
     private UpdateControl<T> failStepNoRetry(T resource, String type, String message, String reason) {
         buildCondition(resource, new Condition(type, ProcessStatus.FAILED, reason, message));
-        client.getRawClient().resource(resource).updateStatus();
+        client.updateStatus(resource);
         return setPhaseAndReschedule(resource, Phase.UPDATED_PHASE);
     }
 
@@ -158,6 +372,8 @@ public abstract class BaseCompositeReconciler<T extends Composite> extends CoreR
         return condition != null && condition.getStatus();
     }
 
+    private record PendingPublish(Long generation, CompletableFuture<Void> result) {
+    }
     public static CompositeSpec fromResource(CoreResource resource) {
         ObjectMapper mapper = new ObjectMapper();
         return mapper.convertValue(resource.getSpec().getValue(), CompositeSpec.class);
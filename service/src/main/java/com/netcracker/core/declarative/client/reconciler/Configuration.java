@@ -1,18 +1,26 @@
 package com.netcracker.core.declarative.client.reconciler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.netcracker.cloud.consul.provider.common.TokenStorage;
-import com.netcracker.cloud.quarkus.security.auth.M2MManager;
 import com.netcracker.cloud.security.core.utils.k8s.M2MClientFactory;
+import com.netcracker.core.declarative.client.k8s.KubernetesWriteRateLimitInterceptor;
+import com.netcracker.core.declarative.client.k8s.KubernetesWriteRateLimiter;
+import com.netcracker.core.declarative.client.rest.auth.M2MTokenProvider;
+import com.netcracker.core.declarative.client.rest.compression.RequestCompression;
+import com.netcracker.core.declarative.client.rest.pool.HttpClientResources;
 import com.netcracker.core.declarative.client.rest.tracing.RequestIdInterceptor;
 import com.netcracker.core.declarative.service.*;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientBuilder;
+import io.fabric8.kubernetes.client.utils.KubernetesSerialization;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.vertx.ext.consul.ConsulClient;
 import io.vertx.ext.consul.ConsulClientOptions;
 import io.vertx.mutiny.core.Vertx;
 import jakarta.enterprise.context.ApplicationScoped;
-import jakarta.enterprise.inject.Instance;
+import jakarta.enterprise.inject.Disposes;
 import jakarta.enterprise.inject.Produces;
 import jakarta.inject.Named;
+import jakarta.inject.Singleton;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
@@ -40,47 +48,82 @@ public class Configuration {
     @ConfigProperty(name = "cloud.http-client.read-timeout")
     Duration clientReadTimeout;
 
+    /**
+     * The Kubernetes client of the operator and its framework, built like the default Quarkus client. With the write
+     * rate limit enabled, its status subresource writes are subject to it; note that the interceptor then blocks the
+     * thread sending the request, including retries of the client, while it waits for a permit.
+     */
+    @Produces
+    @Singleton
+    public KubernetesClient kubernetesClient(io.fabric8.kubernetes.client.Config config,
+                                             KubernetesSerialization kubernetesSerialization,
+                                             KubernetesWriteRateLimiter writeRateLimiter) {
+        KubernetesClientBuilder builder = new KubernetesClientBuilder()
+                .withConfig(config)
+                .withKubernetesSerialization(kubernetesSerialization);
+        if (writeRateLimiter.isEnabled()) {
+            KubernetesWriteRateLimitInterceptor interceptor = new KubernetesWriteRateLimitInterceptor(writeRateLimiter);
+            builder.withHttpClientBuilderConsumer(httpClientBuilder -> httpClientBuilder.addOrReplaceInterceptor(KubernetesWriteRateLimitInterceptor.NAME, interceptor));
+        }
+        return builder.build();
+    }
+
+    public void closeKubernetesClient(@Disposes KubernetesClient client) {
+        client.close();
+    }
+
     @Produces
     @Named("maasHttpClient")
     @ApplicationScoped
-    public OkHttpClient maasHttpClient() {
-        return configure(M2MClientFactory.getMaasOkHttpClient(m2mToken()));
+    public OkHttpClient maasHttpClient(HttpClientResources httpClientResources,
+                                       M2MTokenProvider m2mTokenProvider,
+                                       RequestCompression requestCompression) {
+        OkHttpClient base = M2MClientFactory.getMaasOkHttpClient(m2mTokenProvider);
+        return configure(requestCompression.apply(httpClientResources.share(base, "maas"), "maas"));
     }
 
     @Produces
     @Named("dbaasHttpClient")
     @ApplicationScoped
-    public OkHttpClient dbaasHttpClient() {
-        return configure(M2MClientFactory.getDbaasOkHttpClient(m2mToken()));
+    public OkHttpClient dbaasHttpClient(HttpClientResources httpClientResources,
+                                        M2MTokenProvider m2mTokenProvider,
+                                        RequestCompression requestCompression) {
+        OkHttpClient base = M2MClientFactory.getDbaasOkHttpClient(m2mTokenProvider);
+        return configure(requestCompression.apply(httpClientResources.share(base, "dbaas"), "dbaas"));
     }
 
     @Produces
     @Named("keyManagerHttpClient")
     @ApplicationScoped
-    public OkHttpClient keyManagerHttpClient() {
-        return configure(M2MClientFactory.getM2mOkHttpClient(m2mToken()));
+    public OkHttpClient keyManagerHttpClient(HttpClientResources httpClientResources,
+                                             M2MTokenProvider m2mTokenProvider,
+                                             RequestCompression requestCompression) {
+        OkHttpClient base = M2MClientFactory.getM2mOkHttpClient(m2mTokenProvider);
+        return configure(requestCompression.apply(httpClientResources.share(base, "keyManager"), "keyManager"));
     }
 
     @Produces
     @Named("idpExtensionsHttpClient")
     @ApplicationScoped
-    public OkHttpClient idpExtensionsHttpClient() {
-        return configure(M2MClientFactory.getM2mOkHttpClient(m2mToken()));
+    public OkHttpClient idpExtensionsHttpClient(HttpClientResources httpClientResources,
+                                                M2MTokenProvider m2mTokenProvider,
+                                                RequestCompression requestCompression) {
+        OkHttpClient base = M2MClientFactory.getM2mOkHttpClient(m2mTokenProvider);
+        return configure(requestCompression.apply(httpClientResources.share(base, "idpExtensions"), "idpExtensions"));
     }
 
     @Produces
     @Named("meshHttpClient")
     @ApplicationScoped
-    public OkHttpClient meshHttpClient() {
-        return configure(M2MClientFactory.getM2mOkHttpClient(m2mToken()));
-    }
-
-    private static Supplier<String> m2mToken() {
-        return () -> M2MManager.getInstance().getToken().getTokenValue();
+    public OkHttpClient meshHttpClient(HttpClientResources httpClientResources,
+                                       M2MTokenProvider m2mTokenProvider,
+                                       RequestCompression requestCompression) {
+        OkHttpClient base = M2MClientFactory.getM2mOkHttpClient(m2mTokenProvider);
+        return configure(requestCompression.apply(httpClientResources.share(base, "mesh"), "mesh"));
     }
 
-    private OkHttpClient configure(OkHttpClient base) {
-        return base.newBuilder()
+    private OkHttpClient configure(OkHttpClient.Builder base) {
+        return base
                 .addInterceptor(new RequestIdInterceptor())
                 .connectTimeout(clientConnectTimeout)
                 .readTimeout(clientReadTimeout)
@@ -94,7 +137,9 @@ public class Configuration {
             @ConfigProperty(name = "cloud.composite.structure.xaas.receivers") List<String> receiversConfig,
             @ConfigProperty(name = "cloud.composite.structure.xaas.read-timeout") Long readTimeout,
             @ConfigProperty(name = "cloud.composite.structure.xaas.connect-timeout") Long connectTimeout,
-            ObjectMapper objectMapper
+            ObjectMapper objectMapper,
+            HttpClientResources httpClientResources,
+            M2MTokenProvider m2mTokenProvider
     ) {
         List<String> receiversConfigLowercase = receiversConfig.stream().map(String::toLowerCase).toList();
         return xaasAddresses.entrySet()
@@ -103,7 +148,7 @@ public class Configuration {
                 .filter(xaas -> receiversConfigLowercase.contains(xaas.getKey().toLowerCase()))
                 .map(xaas -> new CompositeStructureUpdateNotifier(
                         xaas.getKey(),
-                        compositeStructureClient(xaas.getKey(), readTimeout, connectTimeout),
+                        compositeStructureClient(xaas.getKey(), readTimeout, connectTimeout, httpClientResources, m2mTokenProvider),
                         xaas.getValue(),
                         objectMapper))
                 .toList();
@@ -112,11 +157,13 @@ public class Configuration {
     /**
      * XaaSes reachable only through their own agent need a dedicated client, everything else talks plain m2m.
      */
-    private static OkHttpClient compositeStructureClient(String xaasName, long readTimeout, long connectTimeout) {
-        return XAAS_CLIENT_FACTORIES
+    private static OkHttpClient compositeStructureClient(String xaasName, long readTimeout, long connectTimeout,
+                                                         HttpClientResources httpClientResources,
+                                                         Supplier<String> m2mToken) {
+        OkHttpClient base = XAAS_CLIENT_FACTORIES
                 .getOrDefault(xaasName.toLowerCase(), M2MClientFactory::getM2mOkHttpClient)
-                .apply(m2mToken())
-                .newBuilder()
+                .apply(m2mToken);
+        return httpClientResources.share(base, xaasName)
                 .addInterceptor(new RequestIdInterceptor())
                 .readTimeout(readTimeout, TimeUnit.MILLISECONDS)
                 .connectTimeout(connectTimeout, TimeUnit.MILLISECONDS)
@@ -128,12 +175,16 @@ public class Configuration {
     public CompositeConsulUpdater compositeConsulUpdater(
             @ConfigProperty(name = "cloud.microservice.namespace") String namespace,
             @ConfigProperty(name = "quarkus.consul-source-config.agent.enabled") boolean consulEnabled,
-            ConsulClientFactory consulClientFactory,
-            Instance<TokenStorage> consulTokenStorage) { // TokenStorage in Singleton scope. Lazy inject.
+            PooledConsulClient consulClient,
+            @ConfigProperty(name = "cloud.composite.structure.consul.update-mode", defaultValue = "legacy") String updateMode,
+            @ConfigProperty(name = "cloud.composite.structure.consul.cas-retries", defaultValue = "3") int casRetries,
+            MeterRegistry meterRegistry,
+            CompositeMembershipSnapshot membershipSnapshot) {
         if (!consulEnabled) {
             return new NoopCompositeConsulUpdaterImpl();
         }
-        return new CompositeConsulUpdaterImpl(namespace, consulClientFactory, consulTokenStorage.get());
+        return new CompositeConsulUpdaterImpl(namespace, consulClient,
+                CompositeConsulUpdaterImpl.UpdateMode.valueOf(updateMode.toUpperCase()), casRetries, meterRegistry, membershipSnapshot);
     }
 
     @Produces
@@ -166,9 +217,8 @@ public class Configuration {
 
     @Produces
     @ApplicationScoped
-    public TenantService tenantService(ConsulClientFactory consulClientFactory,
-                                       Instance<TokenStorage> consulTokenStorage) {
-        return new TenantService(consulClientFactory, consulTokenStorage.get());
+    public TenantService tenantService(PooledConsulClient consulClient, CompositeMemberIndex memberIndex) {
+        return new TenantService(consulClient, memberIndex);
     }
 
     @Produces
@@ -3,8 +3,10 @@ package com.netcracker.core.declarative.client.reconciler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netcracker.cloud.core.error.rest.tmf.TmfErrorResponse;
 import com.netcracker.cloud.headerstracking.filters.context.RequestIdContext;
+import com.netcracker.core.declarative.client.cache.DeclarativeApplyCache;
 import com.netcracker.core.declarative.client.cache.RetryResourceCache;
 import com.netcracker.core.declarative.client.k8s.DeclarativeKubernetesClient;
+import com.netcracker.core.declarative.client.k8s.KubernetesWriteRateLimiter;
 import com.netcracker.core.declarative.client.rest.*;
 import com.netcracker.core.declarative.client.rest.Condition;
 import com.netcracker.core.declarative.resources.base.CoreCondition;
@@ -60,6 +62,8 @@ public abstract class CoreReconciler<T extends CoreResource> implements Reconcil
     protected RetryResourceCache retryResourceCache;
     @Inject
     protected ObjectMapper objectMapper;
+    @Inject
+    protected DeclarativeApplyCache applyCache;
 
     @ConfigProperty(name = "DEPLOYMENT_SESSION_ID")
     protected String deploymentSessionId;
@@ -68,6 +72,13 @@ public abstract class CoreReconciler<T extends CoreResource> implements Reconcil
     protected CoreReconciler() {
     }
 
+    @Inject
+    void setWriteRateLimiter(KubernetesWriteRateLimiter writeRateLimiter) {
+        if (client != null) {
+            client.setWriteRateLimiter(writeRateLimiter);
+        }
+    }
+
     protected CoreReconciler(KubernetesClient client) {
         this.client = new DeclarativeKubernetesClient(client);
         this.retryResourceCache = new RetryResourceCache();
@@ -138,6 +149,11 @@ public abstract class CoreReconciler<T extends CoreResource> implements Reconcil
     protected UpdateControl<T> reconcileInternal(T t) throws Exception {
         log.debug("Reconcile Resource {}", t);
         Request request = buildApplyRequest(getApiVersion(), declarativeRequestBuilder(t));
+        String applyCacheKey = applyCacheKey(t, request);
+        if (applyCacheKey != null && applyCache.isRecentlyApplied(applyCacheKey)) {
+            log.info("Identical request was recently accepted by url={}, skip sending it again", request.url());
+            return setPhaseAndReschedule(t, UPDATED_PHASE);
+        }
         try (Response response = httpClient.newCall(request).execute()) {
             return switch (response.code()) {
                 case SC_ACCEPTED -> {
@@ -145,7 +161,12 @@ public abstract class CoreReconciler<T extends CoreResource> implements Reconcil
                     buildCondition(t, readEntity(response, DeclarativeResponse.class));
                     yield setPhaseAndReschedule(t, WAITING_FOR_DEPENDS);
                 }
-                case SC_OK -> setPhaseAndReschedule(t, UPDATED_PHASE);
+                case SC_OK -> {
+                    if (applyCacheKey != null) {
+                        applyCache.recordApplied(applyCacheKey);
+                    }
+                    yield setPhaseAndReschedule(t, UPDATED_PHASE);
+                }
                 default ->
                         throw new ServerErrorException(String.format("Unexpected status=%s received from Microservice", response.code()), 500);
             };
@@ -160,6 +181,22 @@ public abstract class CoreReconciler<T extends CoreResource> implements Reconcil
         return new Request.Builder().url(url).post(body).build();
     }
 
+    /**
+     * Returns the apply cache key for the request, or {@code null} when the cache is disabled
+     * or bypassed for this resource via the {@code core.netcracker.com/skip-apply-cache} annotation.
+     */
+    private String applyCacheKey(T resource, Request request) throws IOException {
+        if (applyCache == null || !applyCache.isEnabled()) {
+            return null;
+        }
+        Map<String, String> annotations = resource.getMetadata() == null ? null : resource.getMetadata().getAnnotations();
+        if (annotations != null && Boolean.parseBoolean(annotations.get(SKIP_APPLY_CACHE_ANNOTATION))) {
+            log.debug("Apply cache is bypassed for resource by annotation {}", SKIP_APPLY_CACHE_ANNOTATION);
+            return null;
+        }
+        return applyCache.keyOf(request);
+    }
+
     protected Request buildStatusRequest(String apiVersion, String trackingId) {
         HttpUrl url = declarativeBaseUrl(apiVersion)
                 .addPathSegment("operation")
@@ -239,7 +276,7 @@ public abstract class CoreReconciler<T extends CoreResource> implements Reconcil
             Event e = event.get();
             e.setLastTimestamp(Instant.now().toString());
             e.setCount(e.getCount() + 1);
-            client.getRawClient().resource(e).inNamespace(resource.getMetadata().getNamespace()).patch();
+            client.patchEvent(e, resource.getMetadata().getNamespace());
         } else {
             Map<String, String> labels = new HashMap<>();
             labels.put("app.kubernetes.io/processed-by-operator", REPORTING_INSTANCE);
@@ -265,7 +302,7 @@ public abstract class CoreReconciler<T extends CoreResource> implements Reconcil
                     .withLastTimestamp(Instant.now().toString())
                     .withCount(1)
                     .build();
-            client.getRawClient().resource(ev).inNamespace(resource.getMetadata().getNamespace()).create();
+            client.createEvent(ev, resource.getMetadata().getNamespace());
         }
     }
 
@@ -284,7 +321,7 @@ public abstract class CoreReconciler<T extends CoreResource> implements Reconcil
         } else {
             buildExceptionCondition(resource, e);
         }
-        client.getRawClient().resource(resource).updateStatus();
+        client.updateStatus(resource);
 
         return setPhaseAndReschedule(resource, Phase.BACKING_OFF);
     }
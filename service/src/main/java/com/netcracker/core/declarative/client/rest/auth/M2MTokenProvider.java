@@ -0,0 +1,191 @@
+package com.netcracker.core.declarative.client.rest.auth;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netcracker.cloud.quarkus.security.auth.M2MManager;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caches the M2M token used by the XaaS OkHttp clients, so that token retrieval is not on the per-request path.
+ * <p>
+ * The token is held until {@code refresh-ahead} before its expiry, taken from the JWT {@code exp} claim or,
+ * for tokens without one, {@code fallback-ttl} after it was fetched. A refresh is scheduled in the background
+ * at that point; at most one fetch is in flight at any time and concurrent callers share it. Only one background
+ * refresh is scheduled at a time, whichever fetch completed last decides when it runs.
+ * Callers block only when there is no valid token at all.
+ * <p>
+ * Refresh latency and failures are exported as {@code core.operator.m2m.token.refresh} metrics.
+ */
+@ApplicationScoped
+@Slf4j
+public class M2MTokenProvider implements Supplier<String> {
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Supplier<String> tokenFetcher;
+    private final Duration refreshAhead;
+    private final Duration fallbackTtl;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+    private final Timer refreshTimer;
+    private final Counter refreshFailures;
+
+    private volatile CachedToken current;
+    private CompletableFuture<CachedToken> inFlight;
+    volatile ScheduledFuture<?> scheduledRefresh;
+
+    @Inject
+    public M2MTokenProvider(@ConfigProperty(name = "cloud.m2m.token.refresh-ahead", defaultValue = "60s") Duration refreshAhead,
+                            @ConfigProperty(name = "cloud.m2m.token.fallback-ttl", defaultValue = "5m") Duration fallbackTtl,
+                            MeterRegistry meterRegistry) {
+        this(() -> M2MManager.getInstance().getToken().getTokenValue(), refreshAhead, fallbackTtl, Clock.systemUTC(), meterRegistry);
+    }
+
+    M2MTokenProvider(Supplier<String> tokenFetcher, Duration refreshAhead, Duration fallbackTtl, Clock clock, MeterRegistry meterRegistry) {
+        this.tokenFetcher = tokenFetcher;
+        this.refreshAhead = refreshAhead;
+        this.fallbackTtl = fallbackTtl;
+        this.clock = clock;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "m2m-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refreshTimer = Timer.builder("core.operator.m2m.token.refresh")
+                .description("Time taken to fetch a new M2M token")
+                .register(meterRegistry);
+        this.refreshFailures = Counter.builder("core.operator.m2m.token.refresh.failures")
+                .description("Failed M2M token fetches")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached token, fetching it only if there is no unexpired one.
+     */
+    @Override
+    public String get() {
+        CachedToken token = current;
+        Instant now = clock.instant();
+        if (token != null && now.isBefore(token.expiresAt())) {
+            if (!now.isBefore(token.refreshAt())) {
+                refresh();
+            }
+            return token.value();
+        }
+        try {
+            return refresh().join().value();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    /**
+     * Starts a token fetch unless one is already in flight, and returns the fetch shared by all callers.
+     */
+    synchronized CompletableFuture<CachedToken> refresh() {
+        if (inFlight != null) {
+            return inFlight;
+        }
+        CompletableFuture<CachedToken> fetch = CompletableFuture.supplyAsync(this::fetch, scheduler);
+        inFlight = fetch;
+        fetch.whenComplete(this::onRefreshed);
+        return fetch;
+    }
+
+    private CachedToken fetch() {
+        long start = System.nanoTime();
+        try {
+            String value = tokenFetcher.get();
+            Instant fetchedAt = clock.instant();
+            Instant expiresAt = expiryOf(value).orElse(fetchedAt.plus(fallbackTtl));
+            Instant refreshAt = expiresAt.minus(refreshAhead);
+            if (refreshAt.isBefore(fetchedAt)) {
+                // short-lived token: refresh halfway through its lifetime instead
+                refreshAt = fetchedAt.plus(Duration.between(fetchedAt, expiresAt).dividedBy(2));
+            }
+            return new CachedToken(value, expiresAt, refreshAt);
+        } catch (RuntimeException e) {
+            refreshFailures.increment();
+            throw e;
+        } finally {
+            refreshTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private synchronized void onRefreshed(CachedToken token, Throwable error) {
+        inFlight = null;
+        Duration nextRefresh;
+        if (error != null) {
+            log.warn("Failed to refresh M2M token, retry in {} s", RETRY_DELAY.toSeconds(), error);
+            nextRefresh = RETRY_DELAY;
+        } else {
+            current = token;
+            nextRefresh = Duration.between(clock.instant(), token.refreshAt());
+            log.debug("M2M token refreshed, expires at {}, next refresh at {}", token.expiresAt(), token.refreshAt());
+        }
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        if (!scheduler.isShutdown()) {
+            scheduledRefresh = scheduler.schedule(this::scheduledRefresh, Math.max(0, nextRefresh.toMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Background refresh, skipped if a fetch started by a caller already brought a fresh token.
+     */
+    void scheduledRefresh() {
+        CachedToken token = current;
+        if (token != null && clock.instant().isBefore(token.refreshAt())) {
+            log.debug("M2M token is still fresh until {}, skip scheduled refresh", token.refreshAt());
+            return;
+        }
+        refresh();
+    }
+
+    private static Optional<Instant> expiryOf(String token) {
+        String[] parts = token == null ? new String[0] : token.split("\\.");
+        if (parts.length < 2) {
+            return Optional.empty();
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(parts[1]);
+            JsonNode exp = MAPPER.readTree(new String(payload, StandardCharsets.UTF_8)).get("exp");
+            return exp != null && exp.canConvertToLong()
+                    ? Optional.of(Instant.ofEpochSecond(exp.asLong()))
+                    : Optional.empty();
+        } catch (Exception e) {
+            log.debug("M2M token is not a JWT with exp claim, use fallback ttl");
+            return Optional.empty();
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    record CachedToken(String value, Instant expiresAt, Instant refreshAt) {
+    }
+}
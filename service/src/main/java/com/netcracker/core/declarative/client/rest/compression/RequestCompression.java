@@ -0,0 +1,127 @@
+package com.netcracker.core.declarative.client.rest.compression;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Gzip compression of large request bodies, enabled per backend with {@code cloud.http-client.compression.backends}.
+ * <p>
+ * Bodies of at least {@code cloud.http-client.compression.min-size} bytes are sent with {@code Content-Encoding: gzip}.
+ * If a backend answers {@code 415 Unsupported Media Type}, the request is repeated uncompressed and compression
+ * stays off for that backend until restart.
+ * <p>
+ * Bytes before and after compression are counted in {@code core.operator.http.compression.*} metrics.
+ */
+@ApplicationScoped
+@Slf4j
+public class RequestCompression {
+    static final String GZIP = "gzip";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+    private static final int UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private final Set<String> backends;
+    private final long minSize;
+    private final MeterRegistry meterRegistry;
+
+    @Inject
+    public RequestCompression(@ConfigProperty(name = "cloud.http-client.compression.backends") Optional<List<String>> backends,
+                              @ConfigProperty(name = "cloud.http-client.compression.min-size", defaultValue = "16384") long minSize,
+                              MeterRegistry meterRegistry) {
+        this.backends = backends.orElse(List.of()).stream()
+                .map(String::toLowerCase)
+                .collect(Collectors.toUnmodifiableSet());
+        this.minSize = minSize;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Adds the compression interceptor to the client if compression is enabled for the backend.
+     */
+    public OkHttpClient.Builder apply(OkHttpClient.Builder builder, String backend) {
+        if (backends.contains(backend.toLowerCase())) {
+            log.info("Enable gzip request compression for backend={}, min-size={}", backend, minSize);
+            builder.addInterceptor(new GzipInterceptor(backend));
+        }
+        return builder;
+    }
+
+    class GzipInterceptor implements Interceptor {
+        private final String backend;
+        private final AtomicBoolean supported = new AtomicBoolean(true);
+        private final Counter uncompressedBytes;
+        private final Counter compressedBytes;
+
+        GzipInterceptor(String backend) {
+            this.backend = backend;
+            this.uncompressedBytes = Counter.builder("core.operator.http.compression.uncompressed.bytes")
+                    .description("Request body bytes before gzip compression")
+                    .tag("backend", backend)
+                    .register(meterRegistry);
+            this.compressedBytes = Counter.builder("core.operator.http.compression.compressed.bytes")
+                    .description("Request body bytes sent after gzip compression")
+                    .tag("backend", backend)
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public @NonNull Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            RequestBody body = request.body();
+            if (body == null || !supported.get() || request.header(CONTENT_ENCODING) != null
+                    || (body.contentLength() >= 0 && body.contentLength() < minSize)) {
+                return chain.proceed(request);
+            }
+            Buffer plain = new Buffer();
+            body.writeTo(plain);
+            if (plain.size() < minSize) {
+                return chain.proceed(request);
+            }
+
+            long plainSize = plain.size();
+            Buffer compressed = new Buffer();
+            try (BufferedSink gzip = Okio.buffer(new GzipSink(compressed))) {
+                gzip.writeAll(plain);
+            }
+            uncompressedBytes.increment(plainSize);
+            compressedBytes.increment(compressed.size());
+
+            Request gzipped = request.newBuilder()
+                    .header(CONTENT_ENCODING, GZIP)
+                    .method(request.method(), RequestBody.create(compressed.readByteString(), body.contentType()))
+                    .build();
+            Response response = chain.proceed(gzipped);
+            if (response.code() != UNSUPPORTED_MEDIA_TYPE) {
+                return response;
+            }
+            response.close();
+            supported.set(false);
+            log.warn("Backend={} rejected gzip request body, disable request compression for it", backend);
+            return chain.proceed(request);
+        }
+
+        boolean isSupported() {
+            return supported.get();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.netcracker.core.declarative.client.rest.pool;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jspecify.annotations.NonNull;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Connection pool and dispatcher shared by all XaaS OkHttp clients, so connections to the same backend are
+ * reused across clients and the total number of connections and in-flight calls is bounded.
+ * <p>
+ * Backends listed in {@code cloud.http-client.h2c-backends} are called with HTTP/2 over cleartext
+ * (prior knowledge), which lets concurrent calls share a single connection.
+ * <p>
+ * Pool usage, dispatcher load and connection reuse are exported as {@code core.operator.http.*} metrics.
+ */
+@ApplicationScoped
+@Slf4j
+public class HttpClientResources implements MeterBinder {
+    private static final String METRIC_PREFIX = "core.operator.http.";
+
+    private final ConnectionPool connectionPool;
+    private final Dispatcher dispatcher;
+    private final PerHostConcurrencyInterceptor perHostConcurrencyInterceptor;
+    private final Set<String> h2cBackends;
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final EventListener connectionReuseListener = new EventListener() {
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+            connectionsCreated.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+            connectionsAcquired.incrementAndGet();
+        }
+    };
+
+    @Inject
+    public HttpClientResources(@ConfigProperty(name = "cloud.http-client.pool.max-idle-connections", defaultValue = "10") int maxIdleConnections,
+                               @ConfigProperty(name = "cloud.http-client.pool.keep-alive", defaultValue = "5m") Duration keepAlive,
+                               @ConfigProperty(name = "cloud.http-client.max-requests", defaultValue = "64") int maxRequests,
+                               @ConfigProperty(name = "cloud.http-client.max-requests-per-host", defaultValue = "16") int maxRequestsPerHost,
+                               @ConfigProperty(name = "cloud.http-client.read-timeout", defaultValue = "30s") Duration readTimeout,
+                               @ConfigProperty(name = "cloud.http-client.h2c-backends") Optional<List<String>> h2cBackends) {
+        this.connectionPool = new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+        this.dispatcher = new Dispatcher();
+        this.dispatcher.setMaxRequests(maxRequests);
+        this.dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+        this.perHostConcurrencyInterceptor = new PerHostConcurrencyInterceptor(maxRequestsPerHost, readTimeout.toMillis());
+        this.h2cBackends = h2cBackends.orElse(List.of()).stream()
+                .map(String::toLowerCase)
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    /**
+     * Rebuilds the client on top of the shared pool and dispatcher.
+     *
+     * @param backend backend name, matched case-insensitively against {@code cloud.http-client.h2c-backends}
+     */
+    public OkHttpClient.Builder share(OkHttpClient client, String backend) {
+        OkHttpClient.Builder builder = client.newBuilder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .addInterceptor(perHostConcurrencyInterceptor)
+                .eventListener(connectionReuseListener);
+        if (h2cBackends.contains(backend.toLowerCase())) {
+            log.info("Use HTTP/2 with prior knowledge for backend={}", backend);
+            builder.protocols(List.of(Protocol.H2_PRIOR_KNOWLEDGE));
+        }
+        return builder;
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    public Dispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder(METRIC_PREFIX + "pool.connections", connectionPool, ConnectionPool::connectionCount)
+                .description("Connections held by the shared XaaS connection pool")
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + "pool.idle.connections", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Idle connections in the shared XaaS connection pool")
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + "dispatcher.running", dispatcher, Dispatcher::runningCallsCount)
+                .description("Asynchronous XaaS calls in flight")
+                .register(registry);
+        Gauge.builder(METRIC_PREFIX + "dispatcher.queued", dispatcher, Dispatcher::queuedCallsCount)
+                .description("Asynchronous XaaS calls waiting for a dispatcher slot")
+                .register(registry);
+        FunctionCounter.builder(METRIC_PREFIX + "connections.acquired", connectionsAcquired, AtomicLong::doubleValue)
+                .description("Connections acquired by XaaS calls, either pooled or new")
+                .register(registry);
+        FunctionCounter.builder(METRIC_PREFIX + "connections.created", connectionsCreated, AtomicLong::doubleValue)
+                .description("New connections opened by XaaS calls")
+                .register(registry);
+    }
+
+    long getConnectionsAcquired() {
+        return connectionsAcquired.get();
+    }
+
+    long getConnectionsCreated() {
+        return connectionsCreated.get();
+    }
+}
@@ -0,0 +1,52 @@
+package com.netcracker.core.declarative.client.rest.pool;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import org.jspecify.annotations.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the number of in-flight calls per host.
+ * {@link okhttp3.Dispatcher#setMaxRequestsPerHost(int)} only applies to asynchronous calls, while the
+ * reconcilers use {@code execute()}, so synchronous calls are bounded here with the same limit.
+ */
+public class PerHostConcurrencyInterceptor implements Interceptor {
+    private final int maxRequestsPerHost;
+    private final long maxWaitMillis;
+    private final Map<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+    public PerHostConcurrencyInterceptor(int maxRequestsPerHost, long maxWaitMillis) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    @Override
+    public @NonNull Response intercept(Chain chain) throws IOException {
+        String host = chain.request().url().host();
+        Semaphore semaphore = permits.computeIfAbsent(host, h -> new Semaphore(maxRequestsPerHost));
+        try {
+            if (!semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Too many concurrent requests to host=%s, limit=%d".formatted(host, maxRequestsPerHost));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a request slot to host=" + host);
+        }
+        try {
+            return chain.proceed(chain.request());
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    int inFlight(String host) {
+        Semaphore semaphore = permits.get(host);
+        return semaphore == null ? 0 : maxRequestsPerHost - semaphore.availablePermits();
+    }
+}
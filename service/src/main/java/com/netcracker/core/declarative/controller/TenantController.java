@@ -1,12 +1,21 @@
 package com.netcracker.core.declarative.controller;
 
 import com.netcracker.core.declarative.model.Tenant;
+import com.netcracker.core.declarative.model.TenantResult;
 import com.netcracker.core.declarative.service.TenantService;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
+import jakarta.ws.rs.core.Response;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Path("/api/v1")
@@ -15,12 +24,46 @@ public class TenantController {
     @Inject
     TenantService tenantService;
 
+    @ConfigProperty(name = "cloud.tenant.request-timeout", defaultValue = "10s")
+    Duration requestTimeout;
+
+    /**
+     * Registers the default tenant of the composite the tenant namespace belongs to.
+     * <p>
+     * Answers {@code 504 Gateway Timeout} when Consul does not answer within {@code cloud.tenant.request-timeout}.
+     * The transaction already sent is not cancelled and may still be applied, so a timeout means the outcome is
+     * unknown, not that the tenant was not added. The request only sets the default tenant keys, so it is idempotent:
+     * the caller retries it with the same body until it gets a definite answer.
+     */
     @POST
     @Path("/tenant/add")
     @Produces("application/json")
     @Consumes("application/json")
-    public void add(Tenant tenant) throws ExecutionException, InterruptedException {
+    public CompletionStage<Void> add(Tenant tenant) {
         log.info("Add new tenant:{}", tenant);
-        tenantService.add(tenant);
+        return tenantService.addAsync(tenant)
+                .toCompletableFuture()
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof TimeoutException) {
+                        log.error("Add tenant {} timed out after {}, the Consul transaction may still be applied", tenant, requestTimeout);
+                        throw new ServerErrorException("Add tenant timed out after %s, the tenant may still be added; the request is idempotent and safe to retry"
+                                .formatted(requestTimeout), Response.Status.GATEWAY_TIMEOUT);
+                    }
+                    if (cause instanceof RuntimeException runtimeException) {
+                        throw runtimeException;
+                    }
+                    throw new CompletionException(cause);
+                });
+    }
+
+    @POST
+    @Path("/tenant/add-bulk")
+    @Produces("application/json")
+    @Consumes("application/json")
+    public List<TenantResult> addAll(List<Tenant> tenants) throws ExecutionException, InterruptedException {
+        log.info("Add {} new tenants", tenants == null ? 0 : tenants.size());
+        return tenantService.addAll(tenants);
     }
 }
@@ -0,0 +1,24 @@
+package com.netcracker.core.declarative.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TenantResult {
+    private String tenantId;
+    private String namespace;
+    private String compositeId;
+    private boolean success;
+    private String error;
+
+    public static TenantResult success(Tenant tenant, String compositeId) {
+        return new TenantResult(tenant.getTenantId(), tenant.getNamespace(), compositeId, true, null);
+    }
+
+    public static TenantResult failure(Tenant tenant, String compositeId, String error) {
+        return new TenantResult(tenant.getTenantId(), tenant.getNamespace(), compositeId, false, error);
+    }
+}
@@ -3,24 +3,55 @@ package com.netcracker.core.declarative.service;
 import com.netcracker.core.declarative.resources.composite.Composite;
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Thread-safe holder for the current {@link Composite}.
+ * Thread-safe holder for the reconciled {@link Composite} resources, keyed by composite ID.
  * <p>
  * This bean provides a centralized location for storing and accessing
- * the composite structure custom resource across different components of the application.
+ * the composite structure custom resources across different components of the application.
+ * {@link #get()} returns the composite set last, for components which serve a single composite.
  */
 @ApplicationScoped
 public class CompositeCRHolder {
 
+    private final Map<String, Composite> byCompositeId = new ConcurrentHashMap<>();
     private final AtomicReference<Composite> ref = new AtomicReference<>();
 
     public void set(Composite spec) {
         ref.set(spec);
     }
 
+    public void set(String compositeId, Composite spec) {
+        byCompositeId.put(compositeId, spec);
+        ref.set(spec);
+    }
+
     public Composite get() {
         return ref.get();
     }
+
+    /**
+     * @return the composite with the given ID, or the composite set last if {@code compositeId} is {@code null}
+     */
+    public Composite get(String compositeId) {
+        return compositeId == null ? get() : byCompositeId.get(compositeId);
+    }
+
+    /**
+     * Forgets the composite, e.g. after its CR is deleted.
+     */
+    public void remove(String compositeId) {
+        Composite removed = byCompositeId.remove(compositeId);
+        if (removed != null) {
+            ref.compareAndSet(removed, null);
+        }
+    }
+
+    public Set<String> getCompositeIds() {
+        return Set.copyOf(byCompositeId.keySet());
+    }
 }
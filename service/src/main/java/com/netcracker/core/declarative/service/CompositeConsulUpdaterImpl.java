@@ -1,21 +1,49 @@
 package com.netcracker.core.declarative.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import io.vertx.ext.consul.*;
-import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import com.netcracker.cloud.consul.provider.common.TokenStorage;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+/**
+ * Writes the composite structure to Consul.
+ * <p>
+ * In {@link UpdateMode#LEGACY} mode the structure tree is read, stale namespaces are computed and the cleanup is
+ * written together with the new roles without any guard. In {@link UpdateMode#CAS} mode the same transaction is
+ * guarded by the modify indexes of the read: every deleted key is checked with {@code check-index} and every written
+ * role uses {@code cas}, so a concurrent change by another namespace fails the transaction, which is then re-read and
+ * retried. Other transaction errors are not retried. Every guarded update also bumps the composite version key
+ * ({@code composite/{compositeId}/version}) with {@code cas} at the index read before the structure. An update larger
+ * than Consul's 64 operation limit is split into sequential chunks: a namespace tree is deleted in the same chunk
+ * as the checks of its keys, and every further chunk checks that the version key still has the index written by the
+ * first one, so a concurrent guarded update fails the remaining chunks and the update is retried from a fresh read.
+ * Chunks already written stay written, the retry converges to the same structure. In {@link UpdateMode#LEGACY} mode
+ * transactions larger than the limit are split into sequential chunks without guards, each of them atomic on its own.
+ * <p>
+ * Transaction latency is exported as the {@code core.operator.consul.txn} timer.
+ * <p>
+ * Composite members are served from {@link CompositeMembershipSnapshot}: every successful write stores the resulting
+ * membership at the Consul index of the transaction, so a read right after a write sees that write without another
+ * Consul call. Without a snapshot the members are read from Consul.
+ */
 @Slf4j
-@AllArgsConstructor
 public class CompositeConsulUpdaterImpl implements CompositeConsulUpdater {
     private static final String CONTROLLER_NAMESPACE_KEY = "controllerNamespace";
     private static final String COMPOSITE_STRUCTURE_BASE_PATH_TEMPLATE = "composite/%s/structure";
@@ -24,14 +52,44 @@ public class CompositeConsulUpdaterImpl implements CompositeConsulUpdater {
     private static final String BLUE_GREEN_ROLE_BASE_PATH_TEMPLATE = COMPOSITE_STRUCTURE_NAMESPACE_BASE_PATH_TEMPLATE + "/bluegreenRole";
     private static final String CONTROLLER_NAMESPACE_BASE_PATH_TEMPLATE = COMPOSITE_STRUCTURE_NAMESPACE_BASE_PATH_TEMPLATE + "/" + CONTROLLER_NAMESPACE_KEY;
     private static final String COMPOSITE_REF_ROLE_BASE_PATH_TEMPLATE = "config/%s/application/composite/structureRef";
+    private static final String COMPOSITE_VERSION_PATH_TEMPLATE = "composite/%s/version";
 
     private static final String BLUE_GREEN_ROLE_CONTROLLER = "controller";
     private static final String BLUE_GREEN_ROLE_ORIGIN = "origin";
     private static final String BLUE_GREEN_ROLE_PEER = "peer";
 
+    static final int MAX_TXN_OPERATIONS = 64;
+    // messages of Consul for a failed cas or check-index operation
+    private static final List<String> CONFLICT_MESSAGES = List.of("index is stale", "modify index", "doesn't exist");
+
+    public enum UpdateMode {
+        LEGACY, CAS
+    }
+
     private final String namespace;
-    private final ConsulClientFactory consulClientFactory;
-    private final TokenStorage consulTokenStorage;
+    private final PooledConsulClient consulClient;
+    private final UpdateMode updateMode;
+    private final int casRetries;
+    private final MeterRegistry meterRegistry;
+    private final CompositeMembershipSnapshot membershipSnapshot;
+
+    public CompositeConsulUpdaterImpl(String namespace, ConsulClientFactory consulClientFactory, TokenStorage consulTokenStorage) {
+        this(namespace, new PooledConsulClient(consulClientFactory, consulTokenStorage::get, 0));
+    }
+
+    public CompositeConsulUpdaterImpl(String namespace, PooledConsulClient consulClient) {
+        this(namespace, consulClient, UpdateMode.LEGACY, 0, Metrics.globalRegistry, new CompositeMembershipSnapshot());
+    }
+
+    public CompositeConsulUpdaterImpl(String namespace, PooledConsulClient consulClient, UpdateMode updateMode,
+                                      int casRetries, MeterRegistry meterRegistry, CompositeMembershipSnapshot membershipSnapshot) {
+        this.namespace = namespace;
+        this.consulClient = consulClient;
+        this.updateMode = updateMode;
+        this.casRetries = casRetries;
+        this.meterRegistry = meterRegistry;
+        this.membershipSnapshot = membershipSnapshot;
+    }
 
     @Override
     public void updateCompositeStructureInConsul(CompositeSpec compositeSpec) throws ExecutionException, InterruptedException {
@@ -40,108 +98,364 @@ public class CompositeConsulUpdaterImpl implements CompositeConsulUpdater {
 
     @Override
     public void updateCompositeStructureInConsul(String namespace, CompositeSpec compositeSpec) throws ExecutionException, InterruptedException {
-        boolean isBaseline = compositeSpec.isBaseline();
         String compositeId = compositeSpec.getCompositeId();
         String compositeDefinitionRoot = COMPOSITE_STRUCTURE_BASE_PATH_TEMPLATE.formatted(compositeId);
+        log.info("Update composite structure in consul by path: {}", compositeDefinitionRoot);
+        if (updateMode == UpdateMode.CAS) {
+            updateWithCas(namespace, compositeSpec);
+            return;
+        }
 
-        TxnRequest request = new TxnRequest();
-        cleanUp(compositeSpec.getCompositeId(), compositeSpec.getOriginNamespace()).forEach(request::addOperation);
-        TxnKVOperation compositeRefOp = new TxnKVOperation()
+        writeUnguarded(namespace, compositeSpec, readStructure(compositeId).getList());
+    }
+
+    private void writeUnguarded(String namespace, CompositeSpec compositeSpec, List<KeyValue> struct) throws ExecutionException, InterruptedException {
+        String compositeId = compositeSpec.getCompositeId();
+        List<TxnOperation> operations = new ArrayList<>(cleanUp(compositeId, compositeSpec.getOriginNamespace(), struct));
+        operations.addAll(writeOperations(namespace, compositeSpec));
+        TxnOutcome outcome = execute(operations);
+        if (!outcome.errors().isEmpty()) {
+            membershipSnapshot.invalidate(compositeId);
+            throw updateFailed(outcome.errors());
+        }
+        recordMembers(compositeId, struct, operations, outcome.index());
+    }
+
+    private void updateWithCas(String namespace, CompositeSpec compositeSpec) throws ExecutionException, InterruptedException {
+        String compositeId = compositeSpec.getCompositeId();
+        String structureRoot = COMPOSITE_STRUCTURE_BASE_PATH_TEMPLATE.formatted(compositeId) + "/";
+        List<TxnError> errors = List.of();
+        for (int attempt = 0; attempt <= casRetries; attempt++) {
+            // read before the structure, so any guarded update after this read fails the version cas
+            KeyValue version = readVersion(compositeId);
+            List<KeyValue> struct = readStructure(compositeId).getList();
+            if (struct == null) {
+                struct = List.of();
+            }
+            Set<TxnOperation> deletes = cleanUp(compositeId, compositeSpec.getOriginNamespace(), struct);
+            Set<String> deletedPrefixes = deletes.stream().map(op -> ((TxnKVOperation) op).getKey()).collect(Collectors.toSet());
+            Map<String, Long> modifyIndexes = new HashMap<>();
+            struct.forEach(keyValue -> modifyIndexes.put(keyValue.getKey(), keyValue.getModifyIndex()));
+
+            // every deleted tree together with the checks of its keys, so they end up in the same chunk
+            List<List<TxnOperation>> groups = new ArrayList<>();
+            for (TxnOperation delete : deletes) {
+                String prefix = ((TxnKVOperation) delete).getKey();
+                List<TxnOperation> group = new ArrayList<>();
+                struct.stream()
+                        .filter(keyValue -> keyValue.getKey().startsWith(prefix))
+                        .forEach(keyValue -> group.add(new TxnKVOperation()
+                                .setKey(keyValue.getKey())
+                                .setIndex(keyValue.getModifyIndex())
+                                .setType(TxnKVVerb.CHECK_INDEX)));
+                group.add(delete);
+                groups.add(group);
+            }
+            for (TxnOperation operation : writeOperations(namespace, compositeSpec)) {
+                TxnKVOperation write = (TxnKVOperation) operation;
+                if (write.getKey().startsWith(structureRoot)) {
+                    // key deleted earlier in this update or absent from the read must still be absent
+                    long index = isUnder(write.getKey(), deletedPrefixes) ? 0 : modifyIndexes.getOrDefault(write.getKey(), 0L);
+                    write.setType(TxnKVVerb.CAS).setIndex(index);
+                }
+                groups.add(List.of(write));
+            }
+
+            GuardedOutcome outcome = executeGuarded(compositeId, version, chunk(groups));
+            if (outcome.errors().isEmpty()) {
+                recordMembers(compositeId, struct, outcome.operations(), outcome.index());
+                return;
+            }
+            errors = outcome.errors();
+            if (!isConflict(errors, outcome.operations())) {
+                break;
+            }
+            log.warn("Composite structure of '{}' was changed concurrently, retry {}/{}: {}",
+                    compositeId, attempt + 1, casRetries, describe(errors));
+        }
+        membershipSnapshot.invalidate(compositeId);
+        throw updateFailed(errors);
+    }
+
+    /**
+     * Packs the operation groups into chunks which leave room for the version guard of every transaction. A group is
+     * only split if it does not fit into a chunk on its own.
+     */
+    static List<List<TxnOperation>> chunk(List<List<TxnOperation>> groups) {
+        int capacity = MAX_TXN_OPERATIONS - 1;
+        List<List<TxnOperation>> chunks = new ArrayList<>();
+        List<TxnOperation> current = new ArrayList<>();
+        for (List<TxnOperation> group : groups) {
+            if (!current.isEmpty() && current.size() + group.size() > capacity) {
+                chunks.add(current);
+                current = new ArrayList<>();
+            }
+            for (TxnOperation operation : group) {
+                if (current.size() == capacity) {
+                    chunks.add(current);
+                    current = new ArrayList<>();
+                }
+                current.add(operation);
+            }
+        }
+        if (!current.isEmpty() || chunks.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    /**
+     * Sends the chunks one after another. The first one bumps the version key with {@code cas} at the read index,
+     * every further one checks that the version key still has the index written by the first one. Stops at the
+     * first failed chunk.
+     *
+     * @return the errors and operations of the failed chunk, or all operations and the highest index on success
+     */
+    private GuardedOutcome executeGuarded(String compositeId, KeyValue version, List<List<TxnOperation>> chunks)
+            throws ExecutionException, InterruptedException {
+        String versionKey = COMPOSITE_VERSION_PATH_TEMPLATE.formatted(compositeId);
+        if (chunks.size() > 1) {
+            log.info("Guarded update of composite structure of '{}' is split into {} transactions", compositeId, chunks.size());
+        }
+        List<TxnOperation> all = new ArrayList<>();
+        long versionIndex = 0;
+        long index = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            List<TxnOperation> operations = new ArrayList<>();
+            operations.add(i == 0
+                    ? new TxnKVOperation().setKey(versionKey).setValue(nextVersion(version)).setIndex(modifyIndex(version)).setType(TxnKVVerb.CAS)
+                    : new TxnKVOperation().setKey(versionKey).setIndex(versionIndex).setType(TxnKVVerb.CHECK_INDEX));
+            operations.addAll(chunks.get(i));
+            TxnRequest request = new TxnRequest();
+            operations.forEach(request::addOperation);
+            TxnOutcome outcome = transaction(request);
+            if (!outcome.errors().isEmpty()) {
+                if (i > 0) {
+                    log.warn("Guarded update of composite structure of '{}' failed at transaction {}/{}, the previous ones stay written",
+                            compositeId, i + 1, chunks.size());
+                }
+                return new GuardedOutcome(outcome.errors(), operations, 0);
+            }
+            if (i == 0) {
+                versionIndex = outcome.index();
+                if (versionIndex <= 0 && chunks.size() > 1) {
+                    membershipSnapshot.invalidate(compositeId);
+                    throw new IllegalStateException("Consul did not report the index of composite version key '%s', "
+                            .formatted(versionKey) + "remaining transactions of the update can not be guarded");
+                }
+            }
+            index = Math.max(index, outcome.index());
+            all.addAll(operations);
+        }
+        return new GuardedOutcome(List.of(), all, index);
+    }
+
+    private KeyValue readVersion(String compositeId) throws ExecutionException, InterruptedException {
+        return consulClient.get()
+                .getValue(COMPOSITE_VERSION_PATH_TEMPLATE.formatted(compositeId)).toCompletionStage().toCompletableFuture().get();
+    }
+
+    private static long modifyIndex(KeyValue version) {
+        // Consul answers a missing key with an empty value, cas with index 0 then only creates the key
+        return version == null || version.getKey() == null ? 0 : version.getModifyIndex();
+    }
+
+    private static String nextVersion(KeyValue version) {
+        try {
+            return Long.toString(modifyIndex(version) == 0 ? 1 : Long.parseLong(version.getValue()) + 1);
+        } catch (NumberFormatException e) {
+            return "1";
+        }
+    }
+
+    /**
+     * Stores the members resulting from a successful write: the read keys minus the deleted trees plus the written keys.
+     */
+    private void recordMembers(String compositeId, List<KeyValue> struct, List<TxnOperation> operations, long index) {
+        if (index <= 0) {
+            membershipSnapshot.invalidate(compositeId);
+            return;
+        }
+        String root = COMPOSITE_STRUCTURE_BASE_PATH_TEMPLATE.formatted(compositeId) + "/";
+        Set<String> deletedPrefixes = new HashSet<>();
+        Set<String> keys = new HashSet<>();
+        for (TxnOperation operation : operations) {
+            TxnKVOperation kvOperation = (TxnKVOperation) operation;
+            if (kvOperation.getType() == TxnKVVerb.DELETE_TREE) {
+                deletedPrefixes.add(kvOperation.getKey());
+            } else if (kvOperation.getType() != TxnKVVerb.CHECK_INDEX && kvOperation.getKey().startsWith(root)) {
+                keys.add(kvOperation.getKey());
+            }
+        }
+        if (struct != null) {
+            struct.stream().map(KeyValue::getKey).filter(key -> !isUnder(key, deletedPrefixes)).forEach(keys::add);
+        }
+        membershipSnapshot.update(compositeId, index, CompositeMembershipSnapshot.membersOf(keys));
+    }
+
+    private List<TxnOperation> writeOperations(String namespace, CompositeSpec compositeSpec) {
+        boolean isBaseline = compositeSpec.isBaseline();
+        String compositeId = compositeSpec.getCompositeId();
+        List<TxnOperation> operations = new ArrayList<>();
+        operations.add(new TxnKVOperation()
                 .setKey(COMPOSITE_REF_ROLE_BASE_PATH_TEMPLATE.formatted(namespace))
-                .setValue(compositeDefinitionRoot)
-                .setType(TxnKVVerb.SET);
-        request.addOperation(compositeRefOp);
+                .setValue(COMPOSITE_STRUCTURE_BASE_PATH_TEMPLATE.formatted(compositeId))
+                .setType(TxnKVVerb.SET));
         boolean isBlueGreen = StringUtils.isNotEmpty(compositeSpec.getControllerNamespace());
 
         if (isBlueGreen) {
             // BC
-            request.addOperation(writeBlueGreenRole(compositeId, compositeSpec.getControllerNamespace(), BLUE_GREEN_ROLE_CONTROLLER));
-            request.addOperation(writeCompositeRole(compositeId, compositeSpec.getControllerNamespace(), isBaseline));
+            operations.add(writeBlueGreenRole(compositeId, compositeSpec.getControllerNamespace(), BLUE_GREEN_ROLE_CONTROLLER));
+            operations.add(writeCompositeRole(compositeId, compositeSpec.getControllerNamespace(), isBaseline));
 
             // BO
-            request.addOperation(writeBlueGreenRole(compositeId, compositeSpec.getOriginNamespace(), BLUE_GREEN_ROLE_ORIGIN));
-            request.addOperation(writeCompositeRole(compositeId, compositeSpec.getOriginNamespace(), isBaseline));
-            request.addOperation(writeControllerNamespace(compositeId, compositeSpec.getOriginNamespace(), compositeSpec.getControllerNamespace()));
+            operations.add(writeBlueGreenRole(compositeId, compositeSpec.getOriginNamespace(), BLUE_GREEN_ROLE_ORIGIN));
+            operations.add(writeCompositeRole(compositeId, compositeSpec.getOriginNamespace(), isBaseline));
+            operations.add(writeControllerNamespace(compositeId, compositeSpec.getOriginNamespace(), compositeSpec.getControllerNamespace()));
 
             // BP
-            request.addOperation(writeBlueGreenRole(compositeId, compositeSpec.getPeerNamespace(), BLUE_GREEN_ROLE_PEER));
-            request.addOperation(writeCompositeRole(compositeId, compositeSpec.getPeerNamespace(), isBaseline));
-            request.addOperation(writeControllerNamespace(compositeId, compositeSpec.getPeerNamespace(), compositeSpec.getControllerNamespace()));
+            operations.add(writeBlueGreenRole(compositeId, compositeSpec.getPeerNamespace(), BLUE_GREEN_ROLE_PEER));
+            operations.add(writeCompositeRole(compositeId, compositeSpec.getPeerNamespace(), isBaseline));
+            operations.add(writeControllerNamespace(compositeId, compositeSpec.getPeerNamespace(), compositeSpec.getControllerNamespace()));
         } else {
-            request.addOperation(writeCompositeRole(compositeId, namespace, isBaseline));
+            operations.add(writeCompositeRole(compositeId, namespace, isBaseline));
         }
+        return operations;
+    }
 
-        log.info("Update composite structure in consul by path: {}", compositeDefinitionRoot);
-        ConsulClient consulClient = consulClientFactory.create(consulTokenStorage.get());
-        try {
-            TxnResponse result = consulClient.transaction(request).toCompletionStage().toCompletableFuture().get();
-            if (!result.getErrors().isEmpty()) {
-                String errors = result.getErrors().stream().map(TxnError::getWhat).collect(Collectors.joining("\n"));
-                log.error("Error update structure in consul: {}", errors);
-                throw new RuntimeException("error update composite structure in consul: " + errors);
+    /**
+     * Sends the operations in chunks of at most {@value #MAX_TXN_OPERATIONS}. Stops at the first failed chunk.
+     */
+    private TxnOutcome execute(List<TxnOperation> operations) throws ExecutionException, InterruptedException {
+        long index = 0;
+        for (int from = 0; from < operations.size(); from += MAX_TXN_OPERATIONS) {
+            TxnRequest request = new TxnRequest();
+            operations.subList(from, Math.min(operations.size(), from + MAX_TXN_OPERATIONS)).forEach(request::addOperation);
+            TxnOutcome outcome = transaction(request);
+            if (!outcome.errors().isEmpty()) {
+                return outcome;
             }
+            index = Math.max(index, outcome.index());
+        }
+        return new TxnOutcome(List.of(), index);
+    }
+
+    private TxnOutcome transaction(TxnRequest request) throws ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            TxnResponse result = consulClient.get().transaction(request).toCompletionStage().toCompletableFuture().get();
+            List<TxnError> errors = result.getErrors() == null ? List.of() : result.getErrors();
+            outcome = errors.isEmpty() ? "success" : "conflict";
+            // modify index of the written keys is the raft index of the transaction
+            long index = result.getResults() == null ? 0 : result.getResults().stream()
+                    .filter(KeyValue.class::isInstance)
+                    .mapToLong(txnResult -> ((KeyValue) txnResult).getModifyIndex())
+                    .max()
+                    .orElse(0);
+            return new TxnOutcome(errors, index);
         } finally {
-            consulClient.close();
+            Timer.builder("core.operator.consul.txn")
+                    .description("Latency of Consul transactions writing the composite structure")
+                    .tag("mode", updateMode.name().toLowerCase())
+                    .tag("outcome", outcome)
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 
+    private KeyValueList readStructure(String compositeId) throws ExecutionException, InterruptedException {
+        return consulClient.get()
+                .getValues(COMPOSITE_STRUCTURE_BASE_PATH_TEMPLATE.formatted(compositeId)).toCompletionStage().toCompletableFuture().get();
+    }
+
+    /**
+     * Whether the transaction failed only because a guarded key was changed since it was read, so a retry with a
+     * fresh read can succeed. Other errors, such as a denied permission, are not retried.
+     */
+    static boolean isConflict(List<TxnError> errors, List<TxnOperation> operations) {
+        return errors.stream().allMatch(error -> {
+            String what = Objects.requireNonNullElse(error.getWhat(), "").toLowerCase();
+            if (what.contains("permission denied")) {
+                return false;
+            }
+            int opIndex = error.getOpIndex();
+            boolean guarded = opIndex >= 0 && opIndex < operations.size()
+                    && operations.get(opIndex) instanceof TxnKVOperation kv
+                    && (kv.getType() == TxnKVVerb.CAS || kv.getType() == TxnKVVerb.CHECK_INDEX);
+            return guarded || CONFLICT_MESSAGES.stream().anyMatch(what::contains);
+        });
+    }
+
+    private static boolean isUnder(String key, Set<String> prefixes) {
+        return prefixes.stream().anyMatch(key::startsWith);
+    }
+
+    private static String describe(List<TxnError> errors) {
+        return errors.stream().map(TxnError::getWhat).collect(Collectors.joining("\n"));
+    }
+
+    private static RuntimeException updateFailed(List<TxnError> errors) {
+        String description = describe(errors);
+        log.error("Error update structure in consul: {}", description);
+        return new RuntimeException("error update composite structure in consul: " + description);
+    }
+
     @Override
     public Set<String> getCompositeMembers(String compositeId) throws ExecutionException, InterruptedException {
+        Optional<Set<String>> snapshot = membershipSnapshot.get(compositeId);
+        if (snapshot.isPresent()) {
+            log.debug("Composite members of '{}' served from snapshot: {}", compositeId, snapshot.get());
+            return snapshot.get();
+        }
         String compositeDefinitionRoot = COMPOSITE_STRUCTURE_BASE_PATH_TEMPLATE.formatted(compositeId);
         log.info("Get updated composite structure from consul by path: {}", compositeDefinitionRoot);
-        ConsulClient consulClient = consulClientFactory.create(consulTokenStorage.get());
-        try {
-            return consulClient.getKeys(compositeDefinitionRoot)
-                    .toCompletionStage()
-                    .toCompletableFuture()
-                    .get()
-                    .stream()
-                    .map(s -> Paths.get(compositeDefinitionRoot).relativize(Paths.get(s)).getParent().toString())
-                    .collect(Collectors.toSet());
-        } finally {
-            consulClient.close();
-        }
+        return consulClient.get().getKeys(compositeDefinitionRoot)
+                .toCompletionStage()
+                .toCompletableFuture()
+                .get()
+                .stream()
+                .map(s -> Paths.get(compositeDefinitionRoot).relativize(Paths.get(s)).getParent().toString())
+                .collect(Collectors.toSet());
     }
 
-    private Set<TxnOperation> cleanUp(String compositeId, String originNamespace) throws ExecutionException, InterruptedException {
-        ConsulClient consulClient = consulClientFactory.create(consulTokenStorage.get());
-        try {
-            List<KeyValue> struct = consulClient
-                    .getValues(COMPOSITE_STRUCTURE_BASE_PATH_TEMPLATE.formatted(compositeId)).toCompletionStage().toCompletableFuture().get().getList();
+    private record TxnOutcome(List<TxnError> errors, long index) {
+    }
 
-            if (struct == null) {
-                return Collections.emptySet();
-            }
-            Set<TxnOperation> toDelete = new HashSet<>();
-            struct.stream()
-                    .filter(keyValue -> keyValue.getKey().equals(COMPOSITE_ROLE_BASE_PATH_TEMPLATE.formatted(compositeId, originNamespace)))
-                    .findFirst()
-                    .ifPresent(keyValue -> toDelete.add(new TxnKVOperation()
-                            .setKey(normalize(Paths.get(keyValue.getKey()).getParent().toString().replace("\\", "/")))
-                            .setType(TxnKVVerb.DELETE_TREE)));
-
-            struct.stream()
-                    .filter(keyValue -> keyValue.getKey().equals(CONTROLLER_NAMESPACE_BASE_PATH_TEMPLATE.formatted(compositeId, originNamespace)))
-                    .findFirst()
-                    .ifPresent(value -> {
-                                toDelete.add(new TxnKVOperation()
-                                        .setKey(normalize(COMPOSITE_STRUCTURE_NAMESPACE_BASE_PATH_TEMPLATE.formatted(compositeId, value.getValue())))
-                                        .setType(TxnKVVerb.DELETE_TREE));
-                                toDelete.addAll(struct.stream()
-                                        .filter(keyValue -> keyValue.getKey().endsWith(CONTROLLER_NAMESPACE_KEY))
-                                        .filter(keyValue -> keyValue.getValue().equals(value.getValue()))
-                                        .map(keyValue -> Paths.get(keyValue.getKey()).getParent().toString().replace("\\", "/"))
-                                        .map(this::normalize)
-                                        .map(p -> new TxnKVOperation().setKey(p).setType(TxnKVVerb.DELETE_TREE))
-                                        .collect(Collectors.toSet()));
-                            }
-                    );
-            log.info("CleanUp for compositeId '{}' and origin namespace '{}'; Will be deleted: {}",
-                    compositeId, originNamespace, toDelete.stream().map(txnOperation -> ((TxnKVOperation) txnOperation).getKey()).collect(Collectors.toSet()));
-            return toDelete;
-        } finally {
-            consulClient.close();
+    private record GuardedOutcome(List<TxnError> errors, List<TxnOperation> operations, long index) {
+    }
+
+    private Set<TxnOperation> cleanUp(String compositeId, String originNamespace, List<KeyValue> struct) {
+        if (struct == null) {
+            return Collections.emptySet();
         }
+        Set<TxnOperation> toDelete = new HashSet<>();
+        struct.stream()
+                .filter(keyValue -> keyValue.getKey().equals(COMPOSITE_ROLE_BASE_PATH_TEMPLATE.formatted(compositeId, originNamespace)))
+                .findFirst()
+                .ifPresent(keyValue -> toDelete.add(new TxnKVOperation()
+                        .setKey(normalize(Paths.get(keyValue.getKey()).getParent().toString().replace("\\", "/")))
+                        .setType(TxnKVVerb.DELETE_TREE)));
+
+        struct.stream()
+                .filter(keyValue -> keyValue.getKey().equals(CONTROLLER_NAMESPACE_BASE_PATH_TEMPLATE.formatted(compositeId, originNamespace)))
+                .findFirst()
+                .ifPresent(value -> {
+                            toDelete.add(new TxnKVOperation()
+                                    .setKey(normalize(COMPOSITE_STRUCTURE_NAMESPACE_BASE_PATH_TEMPLATE.formatted(compositeId, value.getValue())))
+                                    .setType(TxnKVVerb.DELETE_TREE));
+                            toDelete.addAll(struct.stream()
+                                    .filter(keyValue -> keyValue.getKey().endsWith(CONTROLLER_NAMESPACE_KEY))
+                                    .filter(keyValue -> keyValue.getValue().equals(value.getValue()))
+                                    .map(keyValue -> Paths.get(keyValue.getKey()).getParent().toString().replace("\\", "/"))
+                                    .map(this::normalize)
+                                    .map(p -> new TxnKVOperation().setKey(p).setType(TxnKVVerb.DELETE_TREE))
+                                    .collect(Collectors.toSet()));
+                        }
+                );
+        log.info("CleanUp for compositeId '{}' and origin namespace '{}'; Will be deleted: {}",
+                compositeId, originNamespace, toDelete.stream().map(txnOperation -> ((TxnKVOperation) txnOperation).getKey()).collect(Collectors.toSet()));
+        return toDelete;
     }
 
     private TxnOperation writeCompositeRole(String compositeId, String namespace, boolean isBaseline) {
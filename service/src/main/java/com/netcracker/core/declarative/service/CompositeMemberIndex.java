@@ -0,0 +1,129 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.consul.CompositeMembersUpdateEvent;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulLongPoller;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.LongPollSession;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index from member namespace to the id of the composite it belongs to, so tenant operations do not scan
+ * every key of every composite in Consul.
+ * <p>
+ * The first lookup starts a long-poll watch on {@code composite/}; each {@link CompositeMembersUpdateEvent}
+ * rebuilds the index from the full tree. Namespaces missing from the index are resolved by the caller with a scan
+ * and stored via {@link #put(String, String)} until the next event. The index and the scan take members from the same
+ * keys, see {@link #memberOf(String)}.
+ * <p>
+ * Consul has no wildcard prefixes, so members of composites not known up front can only be watched on the whole
+ * {@code composite/} tree. Being the shorter root, this watch also serves the per-composite {@code structure} watches
+ * of {@link ConsulLongPoller}: a structure change is then downloaded once as the whole tree, where separate watches
+ * would download the whole tree for the index and the structure subtree on top of it.
+ * <p>
+ * Disabled together with the Consul integration ({@code quarkus.consul-source-config.agent.enabled}):
+ * lookups then always miss and nothing is cached.
+ */
+@ApplicationScoped
+@Slf4j
+public class CompositeMemberIndex {
+    static final String COMPOSITE_ROOT = "composite/";
+
+    private final ConsulLongPoller consulLongPoller;
+    private final boolean enabled;
+    private volatile Map<String, String> compositeIdByMember = new ConcurrentHashMap<>();
+    private LongPollSession longPollSession;
+
+    @Inject
+    public CompositeMemberIndex(ConsulLongPoller consulLongPoller,
+                                @ConfigProperty(name = "quarkus.consul-source-config.agent.enabled") boolean enabled) {
+        this.consulLongPoller = consulLongPoller;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return index which never caches anything, for services created outside of CDI
+     */
+    public static CompositeMemberIndex disabled() {
+        return new CompositeMemberIndex(null, false);
+    }
+
+    public Optional<String> lookup(String namespace) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        ensureWatching();
+        return Optional.ofNullable(compositeIdByMember.get(namespace));
+    }
+
+    /**
+     * Stores a mapping resolved by a fallback scan.
+     */
+    public void put(String namespace, String compositeId) {
+        if (enabled) {
+            compositeIdByMember.put(namespace, compositeId);
+        }
+    }
+
+    void onCompositesUpdated(@Observes CompositeMembersUpdateEvent event) {
+        Map<String, String> index = build(event.getValues().stream().map(GetValue::getKey).filter(Objects::nonNull).toList());
+        log.debug("Rebuilt composite member index at Consul index {} with {} namespaces", event.getConsulIndex(), index.size());
+        compositeIdByMember = new ConcurrentHashMap<>(index);
+    }
+
+    /**
+     * Builds the index from keys shaped as {@code composite/{compositeId}/structure/{namespace}/...}.
+     */
+    static Map<String, String> build(Collection<String> keys) {
+        Map<String, String> index = new HashMap<>();
+        for (String key : keys) {
+            Member member = memberOf(key);
+            if (member != null) {
+                index.putIfAbsent(member.namespace(), member.compositeId());
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Parses a key shaped as {@code composite/{compositeId}/structure/{namespace}/...}.
+     *
+     * @return the member namespace and its composite, or {@code null} for any other key
+     */
+    static Member memberOf(String key) {
+        String[] chunks = key.split("/");
+        if (chunks.length > 3 && COMPOSITE_ROOT.equals(chunks[0] + "/") && "structure".equals(chunks[2]) && !chunks[3].isEmpty()) {
+            return new Member(chunks[3], chunks[1]);
+        }
+        return null;
+    }
+
+    private synchronized void ensureWatching() {
+        if (longPollSession == null || longPollSession.isCancelled()) {
+            log.info("Start composite member index watch on '{}'", COMPOSITE_ROOT);
+            longPollSession = consulLongPoller.startWatch(COMPOSITE_ROOT, CompositeMembersUpdateEvent::new);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (longPollSession != null) {
+            longPollSession.cancel();
+            longPollSession = null;
+        }
+    }
+
+    record Member(String namespace, String compositeId) {
+    }
+}
@@ -0,0 +1,170 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.cloud.headerstracking.filters.context.RequestIdContext;
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.consul.CompositeStructureUpdateEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Sends composite members to the XaaS receivers, both for the composite reconcile and for membership changes
+ * observed by the composite structure long-poll, so the changes are not left to the next reconcile.
+ * <p>
+ * Notifications of one receiver and composite are sent one after another, whichever path started them, and a
+ * member set read at a lower Consul index than an already acknowledged one is not sent, so a receiver never gets
+ * an outdated set after a newer one. Only receivers whose last acknowledged member set ({@link XaasNotificationRegistry})
+ * differs are notified. A failed notification is left to the next change or composite reconcile. With the
+ * {@link CompositeNotificationOutbox} enabled, the long-poll changes are handed over to it instead.
+ */
+@ApplicationScoped
+@Slf4j
+public class CompositeMembershipNotifier {
+    /**
+     * Consul index of a member set not read from a versioned snapshot, such a set is never treated as outdated.
+     */
+    public static final long UNKNOWN_INDEX = 0;
+
+    private final List<CompositeStructureUpdateNotifier> notifiers;
+    private final XaasNotificationRegistry notificationRegistry;
+    private final CompositeNotificationOutbox notificationOutbox;
+    private final ExecutorService executor;
+    private final ExecutorService outboxExecutor;
+    // the last notification of every receiver and composite, the next one is sent after it completed
+    private final Map<Key, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    public CompositeMembershipNotifier(List<CompositeStructureUpdateNotifier> notifiers,
+                                       XaasNotificationRegistry notificationRegistry) {
+        this(notifiers, notificationRegistry, CompositeNotificationOutbox.disabled());
+    }
+
+    @Inject
+    public CompositeMembershipNotifier(List<CompositeStructureUpdateNotifier> notifiers,
+                                       XaasNotificationRegistry notificationRegistry,
+                                       CompositeNotificationOutbox notificationOutbox) {
+        this.notifiers = notifiers;
+        this.notificationRegistry = notificationRegistry;
+        this.notificationOutbox = notificationOutbox;
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "composite-structure-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.outboxExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "composite-membership-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void onStructureUpdated(@Observes CompositeStructureUpdateEvent event) {
+        String compositeId = event.getCompositeId();
+        if (compositeId == null) {
+            log.debug("Structure update of an unknown composite, skip XaaS notifications");
+            return;
+        }
+        // the long-poll fires an emptied composite once with no keys at all, its receivers must still get the empty member set
+        Set<String> keys = event.getValues().stream()
+                .map(GetValue::getKey)
+                .filter(Objects::nonNull)
+                .filter(key -> compositeId.equals(CompositeMembershipSnapshot.compositeIdOf(key)))
+                .collect(Collectors.toSet());
+        Set<String> members = CompositeMembershipSnapshot.membersOf(keys);
+        if (notificationOutbox.isEnabled()) {
+            outboxExecutor.execute(() -> notificationOutbox.enqueue(compositeId, members));
+            return;
+        }
+        notifyChanged(compositeId, members, event.getConsulIndex());
+    }
+
+    /**
+     * Notifies every receiver which has not acknowledged the members yet.
+     */
+    CompletableFuture<Void> notifyChanged(String compositeId, Set<String> members, long consulIndex) {
+        CompletableFuture<?>[] notifications = notifiers.stream()
+                .filter(notifier -> !notificationRegistry.isAcknowledged(notifier.getXaasName(), compositeId, members))
+                .map(notifier -> {
+                    log.info("Composite '{}' members changed in Consul, notify {}", compositeId, notifier.getXaasName());
+                    return send(notifier, compositeId, members, consulIndex).exceptionally(error -> {
+                        log.warn("Failed to notify {} about members of composite '{}', will be sent on next change or reconcile",
+                                notifier.getXaasName(), compositeId, error);
+                        return null;
+                    });
+                })
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(notifications);
+    }
+
+    /**
+     * Sends the members of the composite to the receiver once its previous notification of the composite completed,
+     * and records them in the {@link XaasNotificationRegistry}. A notification of the same members which is still
+     * running, e.g. after its caller gave up waiting for it, is returned instead of sending the members again.
+     *
+     * @param consulIndex Consul index the members were read at, or {@link #UNKNOWN_INDEX}
+     * @return completes once the receiver accepted the members or already has the same or newer ones
+     */
+    public CompletableFuture<Void> send(CompositeStructureUpdateNotifier notifier, String compositeId,
+                                        Set<String> members, long consulIndex) {
+        Key key = new Key(notifier.getXaasName(), compositeId);
+        String requestId = RequestIdContext.get();
+        InFlight notification = inFlight.compute(key, (k, previous) -> {
+            if (previous != null && !previous.result().isDone() && previous.members().equals(members)) {
+                log.info("Notification of {} with the current members of composite '{}' is still in flight, wait for it",
+                        notifier.getXaasName(), compositeId);
+                return previous;
+            }
+            CompletableFuture<Void> after = previous == null
+                    ? CompletableFuture.completedFuture(null)
+                    : previous.result().exceptionally(e -> null);
+            return new InFlight(Set.copyOf(members), after.thenRunAsync(
+                    () -> deliver(notifier, compositeId, members, consulIndex, requestId), executor));
+        });
+        notification.result().whenComplete((result, error) -> inFlight.remove(key, notification));
+        return notification.result();
+    }
+
+    private void deliver(CompositeStructureUpdateNotifier notifier, String compositeId, Set<String> members,
+                         long consulIndex, String requestId) {
+        String xaasName = notifier.getXaasName();
+        if (notificationRegistry.isOutdated(xaasName, compositeId, consulIndex)) {
+            log.info("{} already acknowledged newer members of composite '{}', skip members of index {}", xaasName, compositeId, consulIndex);
+            return;
+        }
+        if (notificationRegistry.isAcknowledged(xaasName, compositeId, members)) {
+            return;
+        }
+        if (requestId != null) {
+            RequestIdContext.set(requestId);
+        }
+        try {
+            notifier.notify(compositeId, members);
+        } finally {
+            RequestIdContext.clear();
+        }
+        notificationRegistry.acknowledge(xaasName, compositeId, members, consulIndex);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+        outboxExecutor.shutdownNow();
+    }
+
+    private record Key(String xaasName, String compositeId) {
+    }
+
+    private record InFlight(Set<String> members, CompletableFuture<Void> result) {
+    }
+}
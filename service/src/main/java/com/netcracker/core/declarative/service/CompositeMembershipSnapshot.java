@@ -0,0 +1,127 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.consul.CompositeStructureUpdateEvent;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory, Consul index versioned view of composite members ({@code composite/{compositeId}/structure/{namespace}}).
+ * <p>
+ * Fed by two sources: {@link CompositeStructureUpdateEvent}s of the long-poll watch and the results of the
+ * structure transactions written by {@link CompositeConsulUpdaterImpl}. A snapshot is only replaced by one with
+ * a higher or equal Consul index, so a late long-poll response can not hide a write this operator already made.
+ * If the index of a write is unknown, the snapshot of the composite is dropped until a newer one arrives and
+ * readers fall back to Consul.
+ */
+@ApplicationScoped
+@Slf4j
+public class CompositeMembershipSnapshot {
+    private static final String STRUCTURE_SEGMENT = "/structure/";
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * @return members of the composite, or empty if there is no valid snapshot for it
+     */
+    public synchronized Optional<Set<String>> get(String compositeId) {
+        Entry entry = entries.get(compositeId);
+        return entry == null || entry.members == null ? Optional.empty() : Optional.of(entry.members);
+    }
+
+    /**
+     * @return Consul index of the snapshot of the composite, also of a dropped one, or {@code 0} if none is known;
+     * members read from this snapshot or from Consul afterwards are at least as new as this index
+     */
+    public synchronized long getIndex(String compositeId) {
+        Entry entry = entries.get(compositeId);
+        return entry == null ? 0 : entry.index;
+    }
+
+    /**
+     * Stores the members of the composite as of the given Consul index, unless a newer snapshot is already known.
+     */
+    public synchronized void update(String compositeId, long index, Set<String> members) {
+        Entry current = entries.get(compositeId);
+        if (current != null && index < current.index) {
+            log.debug("Ignore outdated membership of composite '{}' at index {}, current index {}", compositeId, index, current.index);
+            return;
+        }
+        entries.put(compositeId, new Entry(index, Set.copyOf(members)));
+    }
+
+    /**
+     * Drops the snapshot of the composite; only snapshots newer than the dropped one are accepted afterwards.
+     */
+    public synchronized void invalidate(String compositeId) {
+        Entry current = entries.get(compositeId);
+        entries.put(compositeId, new Entry(current == null ? 0 : current.index + 1, null));
+    }
+
+    /**
+     * Forgets the composite, e.g. after it is not watched anymore.
+     */
+    public synchronized void remove(String compositeId) {
+        entries.remove(compositeId);
+    }
+
+    void onStructureUpdated(@Observes CompositeStructureUpdateEvent event) {
+        String compositeId = event.getCompositeId();
+        if (compositeId != null) {
+            // the long-poll fires an emptied structure once with no keys at all, it must still replace the previous members
+            Set<String> keys = event.getValues().stream()
+                    .map(GetValue::getKey)
+                    .filter(Objects::nonNull)
+                    .filter(key -> compositeId.equals(compositeIdOf(key)))
+                    .collect(Collectors.toSet());
+            update(compositeId, event.getConsulIndex(), membersOf(keys));
+            return;
+        }
+        Map<String, Set<String>> byComposite = event.getValues().stream()
+                .map(GetValue::getKey)
+                .filter(Objects::nonNull)
+                .filter(key -> compositeIdOf(key) != null)
+                .collect(Collectors.groupingBy(CompositeMembershipSnapshot::compositeIdOf, Collectors.toSet()));
+        byComposite.forEach((compositeId, keys) -> update(compositeId, event.getConsulIndex(), membersOf(keys)));
+    }
+
+    /**
+     * Extracts member namespaces from keys of a composite structure tree.
+     */
+    static Set<String> membersOf(Collection<String> keys) {
+        return keys.stream()
+                .map(CompositeMembershipSnapshot::memberOf)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    static String compositeIdOf(String key) {
+        int structure = key.indexOf(STRUCTURE_SEGMENT);
+        if (!key.startsWith("composite/") || structure < 0) {
+            return null;
+        }
+        return key.substring("composite/".length(), structure);
+    }
+
+    private static String memberOf(String key) {
+        int structure = key.indexOf(STRUCTURE_SEGMENT);
+        if (structure < 0) {
+            return null;
+        }
+        String relative = key.substring(structure + STRUCTURE_SEGMENT.length());
+        int slash = relative.indexOf('/');
+        return slash <= 0 || slash == relative.length() - 1 ? null : relative.substring(0, slash);
+    }
+
+    private record Entry(long index, Set<String> members) {
+    }
+}
@@ -0,0 +1,323 @@
+package com.netcracker.core.declarative.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netcracker.core.declarative.client.k8s.ConfigMapClient;
+import com.netcracker.core.declarative.service.composite.ConfigMapWriter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.quarkus.runtime.StartupEvent;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jspecify.annotations.NonNull;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Durable outbox for composite structure notifications of the XaaS receivers.
+ * <p>
+ * When enabled ({@code cloud.composite.structure.xaas.outbox.enabled}), the composite reconcile only records the
+ * members to send and waits for their delivery without blocking; every receiver has its own worker which delivers
+ * them and retries failed deliveries with exponential backoff, so a failing or hanging receiver does not hold back
+ * the others. Delivery listeners learn about every delivered record.
+ * <p>
+ * Every receiver has at most one pending record per composite: a newer member set of the composite replaces a
+ * pending one and is delivered right away, so receivers get the latest membership in order and never an outdated
+ * set after a newer one. Pending records are kept in the data of the {@value #CONFIG_MAP_NAME} ConfigMap, one JSON
+ * entry per receiver and composite ({@code <receiver>.<compositeId>}), and are delivered again after a restart.
+ * The ConfigMap name is fixed, the Role of the operator grants access to it by name. The ConfigMap is written by
+ * {@link ConfigMapWriter} in the background, which writes only the latest snapshot of the records. Delivered member
+ * sets are recorded in {@link XaasNotificationRegistry}.
+ * <p>
+ * Pending records and failed deliveries are exported as {@code core.operator.composite.outbox.*} metrics.
+ */
+@ApplicationScoped
+@Slf4j
+public class CompositeNotificationOutbox implements MeterBinder {
+    // composite IDs are namespace names, which never contain a dot
+    private static final char KEY_SEPARATOR = '.';
+    static final String CONFIG_MAP_NAME = "composite-notification-outbox";
+
+    private final boolean enabled;
+    private final String namespace;
+    private final long retryInitialMs;
+    private final long retryMaxMs;
+    private final ConfigMapClient configMapClient;
+    private final ConfigMapWriter configMapWriter;
+    private final Map<String, CompositeStructureUpdateNotifier> notifiers;
+    private final XaasNotificationRegistry notificationRegistry;
+    private final ObjectMapper objectMapper;
+    private final Map<String, ScheduledExecutorService> workers = new HashMap<>();
+    private final List<Consumer<String>> deliveryListeners = new CopyOnWriteArrayList<>();
+
+    // keyed by receiver and composite, see recordKey
+    private final Map<String, OutboxRecord> pending = new HashMap<>();
+    private final Map<String, Integer> attempts = new HashMap<>();
+    // the next delivery of every record, a record has at most one
+    private final Map<String, ScheduledFuture<?>> scheduled = new HashMap<>();
+    private final AtomicLong failedDeliveries = new AtomicLong();
+    private long sequence;
+    private boolean recovered;
+    private boolean shutdown;
+
+    @Inject
+    public CompositeNotificationOutbox(
+            @ConfigProperty(name = "cloud.composite.structure.xaas.outbox.enabled", defaultValue = "false") boolean enabled,
+            @ConfigProperty(name = "cloud.microservice.namespace") String namespace,
+            @ConfigProperty(name = "cloud.composite.structure.xaas.outbox.retry-initial", defaultValue = "5000") long retryInitialMs,
+            @ConfigProperty(name = "cloud.composite.structure.xaas.outbox.retry-max", defaultValue = "300000") long retryMaxMs,
+            ConfigMapClient configMapClient,
+            ConfigMapWriter configMapWriter,
+            List<CompositeStructureUpdateNotifier> notifiers,
+            XaasNotificationRegistry notificationRegistry,
+            ObjectMapper objectMapper) {
+        this.enabled = enabled;
+        this.namespace = namespace;
+        this.retryInitialMs = retryInitialMs;
+        this.retryMaxMs = retryMaxMs;
+        this.configMapClient = configMapClient;
+        this.configMapWriter = configMapWriter;
+        this.notifiers = notifiers.stream()
+                .collect(Collectors.toMap(CompositeStructureUpdateNotifier::getXaasName, Function.identity()));
+        this.notificationRegistry = notificationRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    public static CompositeNotificationOutbox disabled() {
+        return new CompositeNotificationOutbox(false, null, 0, 0, null, null, List.of(), null, null);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the members of the composite for every receiver which has not acknowledged them yet and starts
+     * their delivery right away, also if an older record of the receiver waits for a retry. The records are
+     * persisted in the background.
+     */
+    public void enqueue(String compositeId, Set<String> members) {
+        if (!enabled) {
+            throw new IllegalStateException("Composite notification outbox is disabled");
+        }
+        Set<String> toDeliver = new HashSet<>();
+        synchronized (this) {
+            if (!recovered) {
+                // records persisted before a restart must not replace this newer one later
+                recover();
+            }
+            boolean changed = false;
+            for (String xaasName : notifiers.keySet()) {
+                String key = recordKey(xaasName, compositeId);
+                OutboxRecord current = pending.get(key);
+                if (notificationRegistry.isAcknowledged(xaasName, compositeId, members)) {
+                    // a pending record for another member set is outdated now
+                    changed |= pending.remove(key) != null;
+                    continue;
+                }
+                if (current != null && current.sameContent(compositeId, members)) {
+                    continue;
+                }
+                pending.put(key, new OutboxRecord(compositeId, new TreeSet<>(members), ++sequence));
+                attempts.remove(key);
+                toDeliver.add(key);
+                changed = true;
+            }
+            if (changed) {
+                persist();
+            }
+        }
+        toDeliver.forEach(key -> schedule(key, 0));
+    }
+
+    /**
+     * Registers a listener called with the composite ID after members of the composite were delivered to a receiver.
+     */
+    public void addDeliveryListener(Consumer<String> listener) {
+        deliveryListeners.add(listener);
+    }
+
+    void onStart(@Observes StartupEvent event) {
+        if (enabled) {
+            recover();
+        }
+    }
+
+    /**
+     * Loads records persisted before a restart and schedules their delivery. A record already pending for the same
+     * receiver and composite is kept if it is newer.
+     */
+    synchronized void recover() {
+        recovered = true;
+        Map<String, String> data = configMapClient.getData(CONFIG_MAP_NAME, namespace);
+        Set<String> toDeliver = new HashSet<>();
+        data.forEach((dataKey, json) -> {
+            try {
+                OutboxRecord record = objectMapper.readValue(json, OutboxRecord.class);
+                // entries written before records were kept per composite are keyed by the receiver only
+                String key = dataKey.indexOf(KEY_SEPARATOR) < 0 ? recordKey(dataKey, record.compositeId()) : dataKey;
+                sequence = Math.max(sequence, record.sequence());
+                OutboxRecord current = pending.get(key);
+                if (current == null || current.sequence() < record.sequence()) {
+                    pending.put(key, record);
+                    toDeliver.add(key);
+                }
+            } catch (JsonProcessingException e) {
+                log.warn("Drop unreadable outbox record {}", dataKey, e);
+            }
+        });
+        log.info("Recovered {} pending composite structure notifications", toDeliver.size());
+        toDeliver.forEach(key -> schedule(key, 0));
+    }
+
+    /**
+     * Schedules the delivery of the record, unless a delivery of it is due sooner already. A delivery always sends
+     * the latest record, so a later one is replaced.
+     */
+    private synchronized void schedule(String key, long delayMs) {
+        if (shutdown) {
+            return;
+        }
+        ScheduledFuture<?> next = scheduled.get(key);
+        if (next != null && (next.getDelay(TimeUnit.MILLISECONDS) <= delayMs || !next.cancel(false))) {
+            return;
+        }
+        scheduled.put(key, workers.computeIfAbsent(receiverOf(key), CompositeNotificationOutbox::newWorker)
+                .schedule(() -> deliver(key), delayMs, TimeUnit.MILLISECONDS));
+    }
+
+    private static ScheduledExecutorService newWorker(String xaasName) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "composite-notification-outbox-" + xaasName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void deliver(String key) {
+        OutboxRecord record;
+        synchronized (this) {
+            scheduled.remove(key);
+            record = pending.get(key);
+        }
+        if (record == null) {
+            return;
+        }
+        String xaasName = receiverOf(key);
+        CompositeStructureUpdateNotifier notifier = notifiers.get(xaasName);
+        if (notifier == null) {
+            log.warn("{} is not a configured receiver anymore, drop its outbox record", xaasName);
+            complete(key, record);
+            return;
+        }
+
+        try {
+            notifier.notify(record.compositeId(), record.members());
+            notificationRegistry.acknowledge(xaasName, record.compositeId(), record.members());
+            log.info("Delivered members of composite '{}' to {} (record {})", record.compositeId(), xaasName, record.sequence());
+            complete(key, record);
+            deliveryListeners.forEach(listener -> listener.accept(record.compositeId()));
+        } catch (Exception e) {
+            failedDeliveries.incrementAndGet();
+            long delayMs;
+            synchronized (this) {
+                if (pending.get(key) != record) {
+                    // replaced during the delivery, the newer record is already scheduled
+                    log.warn("Failed to deliver outdated members of composite '{}' to {}", record.compositeId(), xaasName, e);
+                    return;
+                }
+                int failures = attempts.merge(key, 1, Integer::sum);
+                delayMs = Math.min(retryMaxMs, retryInitialMs << Math.min(failures - 1, 20));
+            }
+            log.warn("Failed to deliver members of composite '{}' to {}, retry in {} ms", record.compositeId(), xaasName, delayMs, e);
+            schedule(key, delayMs);
+        }
+    }
+
+    private synchronized void complete(String key, OutboxRecord record) {
+        // a newer record enqueued during the delivery stays pending
+        if (pending.get(key) == record) {
+            pending.remove(key);
+            attempts.remove(key);
+            persist();
+        }
+    }
+
+    static String recordKey(String xaasName, String compositeId) {
+        return xaasName + KEY_SEPARATOR + compositeId;
+    }
+
+    private static String receiverOf(String key) {
+        int separator = key.indexOf(KEY_SEPARATOR);
+        return separator < 0 ? key : key.substring(0, separator);
+    }
+
+    /**
+     * Hands a snapshot of the pending records over to {@link ConfigMapWriter}. Called under the monitor, so the
+     * snapshots reach the writer in the order they are taken; the write itself runs on the writer's threads.
+     */
+    private void persist() {
+        Map<String, String> data = new TreeMap<>();
+        try {
+            for (Map.Entry<String, OutboxRecord> entry : pending.entrySet()) {
+                data.put(entry.getKey(), objectMapper.writeValueAsString(entry.getValue()));
+            }
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize composite notification outbox", e);
+            return;
+        }
+        // records are still delivered from memory, only a restart before the next successful write loses them
+        configMapWriter.requestUpdate(CONFIG_MAP_NAME, data, null);
+    }
+
+    synchronized Map<String, OutboxRecord> getPending() {
+        return Map.copyOf(pending);
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("core.operator.composite.outbox.pending", this, CompositeNotificationOutbox::getPendingCount)
+                .description("Composite structure notifications waiting for delivery")
+                .register(registry);
+        FunctionCounter.builder("core.operator.composite.outbox.delivery.failures", failedDeliveries, AtomicLong::doubleValue)
+                .description("Failed deliveries of composite structure notifications")
+                .register(registry);
+    }
+
+    @PreDestroy
+    synchronized void shutdown() {
+        shutdown = true;
+        workers.values().forEach(ScheduledExecutorService::shutdownNow);
+    }
+
+    public record OutboxRecord(String compositeId, Set<String> members, long sequence) {
+        boolean sameContent(String compositeId, Set<String> members) {
+            return this.compositeId.equals(compositeId) && this.members.equals(members);
+        }
+    }
+}
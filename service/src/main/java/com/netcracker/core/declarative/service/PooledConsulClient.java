@@ -0,0 +1,111 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.cloud.consul.provider.common.TokenStorage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.vertx.ext.consul.ConsulClient;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Instance;
+import jakarta.inject.Inject;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jspecify.annotations.NonNull;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Application-wide vert.x Consul client, so Consul calls reuse one client and its connections
+ * instead of creating and closing a client per operation.
+ * <p>
+ * The ACL token is checked on every {@link #get()}: when {@link TokenStorage} returns a different token,
+ * a new client is created and the previous one is closed once requests still running on it have timed out.
+ * <p>
+ * Client creation and reuse are exported as {@code core.operator.consul.client.*} metrics.
+ */
+@ApplicationScoped
+@Slf4j
+public class PooledConsulClient implements MeterBinder {
+    private final ConsulClientFactory consulClientFactory;
+    private final Supplier<String> tokenSupplier;
+    private final long retireDelayMs;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    private ConsulClient client;
+    private String token;
+
+    @Inject
+    public PooledConsulClient(ConsulClientFactory consulClientFactory,
+                              Instance<TokenStorage> consulTokenStorage, // TokenStorage in Singleton scope. Lazy inject.
+                              @ConfigProperty(name = "cloud.composite.structure.consul.update-timeout") Long timeout) {
+        this(consulClientFactory, () -> consulTokenStorage.get().get(), timeout);
+    }
+
+    public PooledConsulClient(ConsulClientFactory consulClientFactory, Supplier<String> tokenSupplier, long retireDelayMs) {
+        this.consulClientFactory = consulClientFactory;
+        this.tokenSupplier = tokenSupplier;
+        this.retireDelayMs = retireDelayMs;
+    }
+
+    /**
+     * Returns the shared client for the current ACL token. The client must not be closed by the caller.
+     */
+    public synchronized ConsulClient get() {
+        String currentToken = tokenSupplier.get();
+        if (client != null && Objects.equals(token, currentToken)) {
+            reused.incrementAndGet();
+            return client;
+        }
+        ConsulClient previous = client;
+        client = consulClientFactory.create(currentToken);
+        token = currentToken;
+        created.incrementAndGet();
+        if (previous != null) {
+            log.info("Consul ACL token changed, replace Consul client");
+            retire(previous);
+        }
+        return client;
+    }
+
+    private void retire(ConsulClient previous) {
+        CompletableFuture.delayedExecutor(retireDelayMs, TimeUnit.MILLISECONDS).execute(() -> {
+            try {
+                previous.close();
+            } catch (Exception e) {
+                log.warn("Failed to close replaced Consul client", e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (client != null) {
+            client.close();
+            client = null;
+        }
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder("core.operator.consul.client.created", created, AtomicLong::doubleValue)
+                .description("Consul clients created, initially and on ACL token rotation")
+                .register(registry);
+        FunctionCounter.builder("core.operator.consul.client.reused", reused, AtomicLong::doubleValue)
+                .description("Consul operations served by an already open Consul client")
+                .register(registry);
+    }
+
+    long getCreated() {
+        return created.get();
+    }
+
+    long getReused() {
+        return reused.get();
+    }
+}
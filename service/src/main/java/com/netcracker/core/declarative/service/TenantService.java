@@ -1,87 +1,226 @@
 package com.netcracker.core.declarative.service;
 
 import com.netcracker.core.declarative.model.Tenant;
+import com.netcracker.core.declarative.model.TenantResult;
 import io.vertx.ext.consul.*;
 import jakarta.ws.rs.ServerErrorException;
 import lombok.extern.slf4j.Slf4j;
 import com.netcracker.cloud.consul.provider.common.TokenStorage;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class TenantService {
-    private final ConsulClientFactory consulClientFactory;
-    private final TokenStorage consulTokenStorage;
+    static final int MAX_TXN_OPERATIONS = 64;
+
+    private final PooledConsulClient consulClient;
+    private final CompositeMemberIndex memberIndex;
 
     public TenantService(ConsulClientFactory consulClientFactory, TokenStorage consulTokenStorage) {
-        this.consulClientFactory = consulClientFactory;
-        this.consulTokenStorage = consulTokenStorage;
+        this(new PooledConsulClient(consulClientFactory, consulTokenStorage::get, 0));
+    }
+
+    public TenantService(PooledConsulClient consulClient) {
+        this(consulClient, CompositeMemberIndex.disabled());
+    }
+
+    public TenantService(PooledConsulClient consulClient, CompositeMemberIndex memberIndex) {
+        this.consulClient = consulClient;
+        this.memberIndex = memberIndex;
     }
 
     public void add(Tenant tenant) throws ExecutionException, InterruptedException {
+        try {
+            addAsync(tenant).toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #add(Tenant)}: the composite id lookup and the Consul transaction are chained
+     * on the vert.x client callbacks, no thread waits for Consul.
+     */
+    public CompletionStage<Void> addAsync(Tenant tenant) {
         log.info("Add tenant: {}", tenant);
         if (tenant == null) {
-            throw new IllegalArgumentException("tenant must be not null");
+            return CompletableFuture.failedFuture(new IllegalArgumentException("tenant must be not null"));
         }
-        ConsulClient consulClient = consulClientFactory.create(consulTokenStorage.get());
-        try {
-            Optional<String> compositeId = getCompositeIdForMember(tenant.getNamespace());
-            if (compositeId.isEmpty()) {
-                String errMessage = "Composite id not found for namespace=%s".formatted(tenant.getNamespace());
-                log.info(errMessage);
-                throw new ServerErrorException(errMessage, 500);
+        return getCompositeIdForMemberAsync(tenant.getNamespace())
+                .thenCompose(compositeId -> {
+                    if (compositeId.isEmpty()) {
+                        String errMessage = "Composite id not found for namespace=%s".formatted(tenant.getNamespace());
+                        log.info(errMessage);
+                        throw new ServerErrorException(errMessage, 500);
+                    }
+                    log.info("Found composite_id={} for namespace={}", compositeId, tenant.getNamespace());
+                    TxnRequest txnRequest = new TxnRequest();
+                    tenantOperations(compositeId.get(), tenant).forEach(txnRequest::addOperation);
+                    return consulClient.get().transaction(txnRequest).toCompletionStage();
+                })
+                .thenAccept(txnResponse -> {
+                    if (txnResponse.getErrors() != null && !txnResponse.getErrors().isEmpty()) {
+                        var errors = "Error adding default tenant: %s".formatted(
+                                txnResponse.getErrors().stream().map(TxnError::getWhat).collect(Collectors.joining("\n"))
+                        );
+                        log.error(errors);
+                        throw new ServerErrorException(errors, 500);
+                    }
+                });
+    }
+
+    /**
+     * Registers default tenants of many composites at once. Composite ids are resolved with at most one Consul scan
+     * and the writes are packed into as few transactions as {@value #MAX_TXN_OPERATIONS} operations per transaction
+     * allow; the operations of one tenant never span two transactions. A failed transaction is rolled back by Consul,
+     * so every tenant of it is reported as failed.
+     * <p>
+     * A composite has a single default tenant, so only the first tenant of the request targeting a composite is written;
+     * the others are reported as failed.
+     *
+     * @return result per tenant, in request order
+     */
+    public List<TenantResult> addAll(List<Tenant> tenants) throws ExecutionException, InterruptedException {
+        if (tenants == null) {
+            throw new IllegalArgumentException("tenants must be not null");
+        }
+        log.info("Add {} tenants", tenants.size());
+        Map<String, String> compositeIds = resolveCompositeIds(tenants.stream()
+                .filter(Objects::nonNull)
+                .map(Tenant::getNamespace)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+
+        TenantResult[] results = new TenantResult[tenants.size()];
+        Map<String, Integer> tenantByComposite = new HashMap<>();
+        List<Integer> batch = new ArrayList<>();
+        TxnRequest txnRequest = new TxnRequest();
+        for (int i = 0; i < tenants.size(); i++) {
+            Tenant tenant = tenants.get(i);
+            if (tenant == null || tenant.getNamespace() == null) {
+                results[i] = new TenantResult(null, null, null, false, "tenant and its namespace must be not null");
+                continue;
             }
-            log.info("Found composite_id={} for namespace={}", compositeId, tenant.getNamespace());
-            String defaultTenantPath = "composite/%s/config/tenants/default".formatted(compositeId.get());
-            TxnRequest txnRequest = new TxnRequest();
-            txnRequest.addOperation(new TxnKVOperation()
-                    .setKey("%s/id".formatted(defaultTenantPath))
-                    .setValue(tenant.getTenantId())
-                    .setType(TxnKVVerb.SET)
-            );
-            if (tenant.getDefaultTenantVars() != null && !tenant.getDefaultTenantVars().isEmpty()) {
-                txnRequest.addOperation(new TxnKVOperation()
-                        .setKey("%s/default_tenant_vars".formatted(defaultTenantPath))
-                        .setValue(String.join(",", tenant.getDefaultTenantVars()))
-                        .setType(TxnKVVerb.SET)
-                );
+            String compositeId = compositeIds.get(tenant.getNamespace());
+            if (compositeId == null) {
+                results[i] = TenantResult.failure(tenant, null, "Composite id not found for namespace=%s".formatted(tenant.getNamespace()));
+                continue;
+            }
+            Integer previous = tenantByComposite.putIfAbsent(compositeId, i);
+            if (previous != null) {
+                results[i] = TenantResult.failure(tenant, compositeId,
+                        "Default tenant of composite %s is already set by tenant %s in this request".formatted(compositeId, tenants.get(previous).getTenantId()));
+                continue;
             }
-            TxnResponse txnResponse = consulClient.transaction(txnRequest).toCompletionStage().toCompletableFuture().get();
-            if (txnResponse.getErrors() != null && !txnResponse.getErrors().isEmpty()) {
-                var errors = "Error adding default tenant: %s".formatted(
-                        txnResponse.getErrors().stream().map(TxnError::getWhat).collect(Collectors.joining("\n"))
-                    );
-                log.error(errors);
-                throw new ServerErrorException(errors, 500);
+            List<TxnOperation> operations = tenantOperations(compositeId, tenant);
+            if (txnRequest.getOperations().size() + operations.size() > MAX_TXN_OPERATIONS) {
+                commit(txnRequest, batch, tenants, compositeIds, results);
+                txnRequest = new TxnRequest();
+                batch = new ArrayList<>();
             }
-        } finally {
-            consulClient.close();
+            operations.forEach(txnRequest::addOperation);
+            batch.add(i);
         }
+        commit(txnRequest, batch, tenants, compositeIds, results);
+        return List.of(results);
+    }
+
+    private void commit(TxnRequest txnRequest, List<Integer> batch, List<Tenant> tenants,
+                        Map<String, String> compositeIds, TenantResult[] results) throws ExecutionException, InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        TxnResponse txnResponse = consulClient.get().transaction(txnRequest).toCompletionStage().toCompletableFuture().get();
+        String error = null;
+        if (txnResponse.getErrors() != null && !txnResponse.getErrors().isEmpty()) {
+            error = "Error adding default tenant: %s".formatted(
+                    txnResponse.getErrors().stream().map(TxnError::getWhat).collect(Collectors.joining("\n")));
+            log.error("{}; {} tenants of the transaction are not added", error, batch.size());
+        }
+        for (int i : batch) {
+            Tenant tenant = tenants.get(i);
+            String compositeId = compositeIds.get(tenant.getNamespace());
+            results[i] = error == null ? TenantResult.success(tenant, compositeId) : TenantResult.failure(tenant, compositeId, error);
+        }
+    }
+
+    private Map<String, String> resolveCompositeIds(Set<String> namespaces) throws ExecutionException, InterruptedException {
+        Map<String, String> compositeIds = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String namespace : namespaces) {
+            memberIndex.lookup(namespace).ifPresentOrElse(compositeId -> compositeIds.put(namespace, compositeId), () -> missing.add(namespace));
+        }
+        if (!missing.isEmpty()) {
+            log.debug("{} namespaces are not in composite member index, scan Consul", missing.size());
+            List<String> keys = consulClient.get().getKeys("composite/").toCompletionStage().toCompletableFuture().get();
+            for (String namespace : missing) {
+                getCompositeIdForMember(keys, namespace).ifPresent(compositeId -> {
+                    compositeIds.put(namespace, compositeId);
+                    memberIndex.put(namespace, compositeId);
+                });
+            }
+        }
+        return compositeIds;
+    }
+
+    private static List<TxnOperation> tenantOperations(String compositeId, Tenant tenant) {
+        String defaultTenantPath = "composite/%s/config/tenants/default".formatted(compositeId);
+        List<TxnOperation> operations = new ArrayList<>();
+        operations.add(new TxnKVOperation()
+                .setKey("%s/id".formatted(defaultTenantPath))
+                .setValue(tenant.getTenantId())
+                .setType(TxnKVVerb.SET)
+        );
+        if (tenant.getDefaultTenantVars() != null && !tenant.getDefaultTenantVars().isEmpty()) {
+            operations.add(new TxnKVOperation()
+                    .setKey("%s/default_tenant_vars".formatted(defaultTenantPath))
+                    .setValue(String.join(",", tenant.getDefaultTenantVars()))
+                    .setType(TxnKVVerb.SET)
+            );
+        }
+        return operations;
     }
 
     protected Optional<String> getCompositeIdForMember(String namespace) throws ExecutionException, InterruptedException {
-        ConsulClient consulClient = consulClientFactory.create(consulTokenStorage.get());
-        try {
-            return consulClient.getKeys("composite/")
-                    .map(keys -> getCompositeIdForMember(keys, namespace))
-                    .toCompletionStage()
-                    .toCompletableFuture()
-                    .get();
-        } finally {
-            consulClient.close();
+        return getCompositeIdForMemberAsync(namespace).toCompletableFuture().get();
+    }
+
+    private CompletionStage<Optional<String>> getCompositeIdForMemberAsync(String namespace) {
+        Optional<String> indexed = memberIndex.lookup(namespace);
+        if (indexed.isPresent()) {
+            return CompletableFuture.completedFuture(indexed);
         }
+        log.debug("Namespace={} is not in composite member index, scan Consul", namespace);
+        return consulClient.get().getKeys("composite/")
+                .map(keys -> getCompositeIdForMember(keys, namespace))
+                .toCompletionStage()
+                .thenApply(scanned -> {
+                    scanned.ifPresent(compositeId -> memberIndex.put(namespace, compositeId));
+                    return scanned;
+                });
     }
 
     protected static Optional<String> getCompositeIdForMember(List<String> keys, String namespace) {
         return keys.stream()
-                .map(path -> path.split("/"))
-                .filter(chunks -> chunks.length > 3)
-                .filter(chunks -> chunks[3].equals(namespace))
+                .map(CompositeMemberIndex::memberOf)
+                .filter(Objects::nonNull)
+                .filter(member -> member.namespace().equals(namespace))
                 .findFirst()
-                .map(chunks -> chunks[1]);
+                .map(CompositeMemberIndex.Member::compositeId);
     }
 
 }
@@ -0,0 +1,146 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.core.declarative.resources.base.DeclarativeStatus;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Last member set of every composite acknowledged by every XaaS receiver, so an unchanged set is not sent again.
+ * <p>
+ * Kept in memory per receiver and composite. The acknowledgements of a composite are mirrored to the
+ * {@value #STATUS_PROPERTY} property of its Composite CR status, so they survive operator restarts:
+ * <pre>
+ * notifiedMembers:
+ *   MaaS: {compositeId: c-1, members: [ns-1, ns-2], version: 3}
+ * </pre>
+ * The version grows every time a receiver acknowledges a different member set. The Consul index the members were
+ * read at is kept in memory only, an acknowledgement is never replaced by members read at a lower index.
+ */
+@ApplicationScoped
+@Slf4j
+public class XaasNotificationRegistry {
+    public static final String STATUS_PROPERTY = "notifiedMembers";
+
+    private final Map<Key, Acknowledged> acknowledged = new HashMap<>();
+
+    /**
+     * @return {@code true} if the receiver already acknowledged exactly these members of the composite
+     */
+    public synchronized boolean isAcknowledged(String xaasName, String compositeId, Set<String> members) {
+        Acknowledged current = acknowledged.get(new Key(xaasName, compositeId));
+        return current != null && current.members().equals(members);
+    }
+
+    public synchronized Optional<Acknowledged> get(String xaasName, String compositeId) {
+        return Optional.ofNullable(acknowledged.get(new Key(xaasName, compositeId)));
+    }
+
+    /**
+     * @return {@code true} if the receiver already acknowledged members of the composite read at a higher Consul
+     * index than the given one; an unknown index ({@code 0}) is never outdated
+     */
+    public synchronized boolean isOutdated(String xaasName, String compositeId, long consulIndex) {
+        Acknowledged current = acknowledged.get(new Key(xaasName, compositeId));
+        return consulIndex > 0 && current != null && current.consulIndex() > consulIndex;
+    }
+
+    /**
+     * Records that the receiver accepted the members of the composite.
+     */
+    public Acknowledged acknowledge(String xaasName, String compositeId, Set<String> members) {
+        return acknowledge(xaasName, compositeId, members, 0);
+    }
+
+    /**
+     * Records that the receiver accepted the members of the composite read at the given Consul index, unless it
+     * already acknowledged members read at a higher index.
+     */
+    public synchronized Acknowledged acknowledge(String xaasName, String compositeId, Set<String> members, long consulIndex) {
+        Key key = new Key(xaasName, compositeId);
+        Acknowledged current = acknowledged.get(key);
+        if (current == null) {
+            Acknowledged first = new Acknowledged(compositeId, Set.copyOf(members), 1, consulIndex);
+            acknowledged.put(key, first);
+            return first;
+        }
+        if (consulIndex > 0 && consulIndex < current.consulIndex()) {
+            log.debug("Ignore outdated acknowledgement of composite '{}' by {} at index {}, current index {}",
+                    compositeId, xaasName, consulIndex, current.consulIndex());
+            return current;
+        }
+        long index = Math.max(consulIndex, current.consulIndex());
+        Acknowledged next = current.members().equals(members)
+                ? new Acknowledged(compositeId, current.members(), current.version(), index)
+                : new Acknowledged(compositeId, Set.copyOf(members), current.version() + 1, index);
+        acknowledged.put(key, next);
+        return next;
+    }
+
+    /**
+     * Takes acknowledgements from the CR status which are newer than the known ones, e.g. after a restart.
+     */
+    public synchronized void restore(DeclarativeStatus status) {
+        if (!(status.getAdditionalProperties().get(STATUS_PROPERTY) instanceof Map<?, ?> stored)) {
+            return;
+        }
+        stored.forEach((xaasName, value) -> {
+            Acknowledged restored = parse(value);
+            if (restored == null) {
+                log.warn("Ignore malformed '{}' entry for {} in status", STATUS_PROPERTY, xaasName);
+                return;
+            }
+            Key key = new Key(String.valueOf(xaasName), restored.compositeId());
+            Acknowledged current = acknowledged.get(key);
+            if (current == null || current.version() < restored.version()) {
+                acknowledged.put(key, restored);
+            }
+        });
+    }
+
+    /**
+     * Writes the acknowledgements of the composite to the status of its CR.
+     */
+    public synchronized void store(DeclarativeStatus status, String compositeId) {
+        Map<String, Object> stored = new TreeMap<>();
+        acknowledged.forEach((key, ack) -> {
+            if (!key.compositeId().equals(compositeId)) {
+                return;
+            }
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("compositeId", ack.compositeId());
+            entry.put("members", new TreeSet<>(ack.members()));
+            entry.put("version", ack.version());
+            stored.put(key.xaasName(), entry);
+        });
+        status.setAdditionalProperty(STATUS_PROPERTY, stored);
+    }
+
+    private static Acknowledged parse(Object value) {
+        if (!(value instanceof Map<?, ?> entry)
+                || !(entry.get("compositeId") instanceof String compositeId)
+                || !(entry.get("members") instanceof Collection<?> members)
+                || !(entry.get("version") instanceof Number version)) {
+            return null;
+        }
+        return new Acknowledged(compositeId,
+                members.stream().filter(Objects::nonNull).map(String::valueOf).collect(Collectors.toUnmodifiableSet()),
+                version.longValue(), 0);
+    }
+
+    public record Acknowledged(String compositeId, Set<String> members, long version, long consulIndex) {
+    }
+
+    private record Key(String xaasName, String compositeId) {
+    }
+}
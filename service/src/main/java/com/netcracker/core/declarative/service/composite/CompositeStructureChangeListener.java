@@ -4,7 +4,7 @@ import com.netcracker.core.declarative.resources.composite.Composite;
 import com.netcracker.core.declarative.service.CompositeCRHolder;
 import com.netcracker.core.declarative.service.composite.consul.CompositeStructureUpdateEvent;
 import com.netcracker.core.declarative.service.composite.model.CompositeStructure;
-import com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer;
+import com.netcracker.core.declarative.service.composite.model.transformation.IncrementalCompositeStructureTransformer;
 
 import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.NAME;
 import jakarta.enterprise.context.ApplicationScoped;
@@ -15,17 +15,21 @@ import lombok.extern.slf4j.Slf4j;
 /**
  * Handles {@link CompositeStructureUpdateEvent} by transforming Consul data into a
  * {@link CompositeStructure} and publishing it to the {@code topology} ConfigMap.
+ * <p>
+ * Only the composite of the Composite CR in the operator namespace is published, see {@link TopologyConfigMapPublisher}.
+ * <p>
+ * Consul data is transformed incrementally: only entries changed since the previous event of the composite are parsed.
  */
 @ApplicationScoped
 @Slf4j
 public class CompositeStructureChangeListener {
 
-    private final CompositeStructureTransformer compositeStructureTransformer;
+    private final IncrementalCompositeStructureTransformer compositeStructureTransformer;
     private final CompositeCRHolder compositeCRHolder;
     private final TopologyConfigMapPublisher topologyConfigMapPublisher;
 
     @Inject
-    public CompositeStructureChangeListener(CompositeStructureTransformer compositeStructureTransformer,
+    public CompositeStructureChangeListener(IncrementalCompositeStructureTransformer compositeStructureTransformer,
                                             CompositeCRHolder compositeCRHolder,
                                             TopologyConfigMapPublisher topologyConfigMapPublisher) {
         this.compositeStructureTransformer = compositeStructureTransformer;
@@ -36,16 +40,16 @@ public class CompositeStructureChangeListener {
     void onStructureUpdated(@Observes CompositeStructureUpdateEvent event) {
         log.info("Received composite structure update from Consul with {} entries", event.getValues().size());
         try {
-            CompositeStructure structure = compositeStructureTransformer.transform(event.getValues());
+            CompositeStructure structure = compositeStructureTransformer.transform(event.getCompositeId(), event.getValues());
 
-            Composite composite = compositeCRHolder.get();
+            Composite composite = compositeCRHolder.get(event.getCompositeId());
             if (composite == null) {
                 log.warn("Composite CR not available yet, skipping ConfigMap update. " +
                         "ConfigMap will be updated on next Consul change after CR reconciliation.");
                 return;
             }
 
-            topologyConfigMapPublisher.publish(structure, composite)
+            topologyConfigMapPublisher.publish(structure, composite, event.getConsulIndex())
                     .exceptionally(ex -> {
                         log.error("Failed to publish ConfigMap '{}' after all retries", NAME, ex);
                         return null;
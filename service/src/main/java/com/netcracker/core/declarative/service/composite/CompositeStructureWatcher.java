@@ -10,6 +10,9 @@ import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -17,15 +20,23 @@ import java.util.concurrent.TimeUnit;
 /**
  * Watches Consul for composite structure changes using long-polling.
  * <p>
- * Periodically checks if the {@value TopologyConfigMap#NAME} ConfigMap is managed by core-operator.
- * If managed, starts watching the Consul path {@code composite/{compositeId}/structure};
- * otherwise stops watching. This allows another operator to take over ConfigMap management when needed.
+ * Keeps one watch per composite ID: every started composite gets its own long-poll of the Consul path
+ * {@code composite/{compositeId}/structure}, until it is {@link #stop(String) stopped} after its CR is deleted.
+ * <p>
+ * Tracks whether the {@value TopologyConfigMap#NAME} ConfigMap is managed by core-operator.
+ * If managed, the composites are watched; otherwise all watches are stopped.
+ * This allows another operator to take over ConfigMap management when needed.
+ * <p>
+ * Ownership changes are taken from the ConfigMap informer of {@link ConfigMapClient}, so a handover is applied
+ * as soon as the ConfigMap changes. If the informer is not available, ownership is polled every
+ * {@code cloud.composite.structure.sync.check-interval} instead. Ownership tracking and the watch lifecycle of all
+ * composites share a single scheduler thread.
  * <p>
  * Structure updates are handled by {@link CompositeStructureChangeListener}.
  * <p>
  * The feature can be disabled via {@code cloud.composite.structure.sync.enabled=false}.
  * <p>
- * Call {@link #start(String)} to begin watching. This schedules periodic ownership checks.
+ * Call {@link #start(String)} to begin watching a composite.
  */
 @ApplicationScoped
 @Slf4j
@@ -39,8 +50,9 @@ public class CompositeStructureWatcher {
     private final boolean featureEnabled;
     private final long checkIntervalMs;
 
-    private LongPollSession longPollSession;
-    private boolean started;
+    // watched composite IDs and their long-poll sessions, null while the ConfigMap is managed by another operator
+    private final Map<String, LongPollSession> watches = new HashMap<>();
+    private boolean ownershipTracked;
 
     @Inject
     public CompositeStructureWatcher(
@@ -58,16 +70,12 @@ public class CompositeStructureWatcher {
     }
 
     /**
-     * Starts the watcher and schedules periodic ownership checks.
+     * Starts watching the composite. The first started composite also subscribes to ownership changes of the
+     * ConfigMap, or schedules periodic ownership checks.
      *
      * @param compositeId the composite ID to watch
      */
     public synchronized void start(String compositeId) {
-        if (started) {
-            log.debug("CompositeStructureWatcher already started, ignoring");
-            return;
-        }
-
         if (!featureEnabled) {
             log.info("Composite structure sync is disabled by configuration");
             return;
@@ -78,48 +86,107 @@ public class CompositeStructureWatcher {
             return;
         }
 
+        if (watches.containsKey(compositeId)) {
+            log.debug("CompositeStructureWatcher already watches compositeId={}, ignoring", compositeId);
+            return;
+        }
+
         log.info("Starting CompositeStructureWatcher for compositeId={}", compositeId);
-        started = true;
+        watches.put(compositeId, null);
 
+        if (ownershipTracked) {
+            scheduler.execute(this::ensureWatchState);
+            return;
+        }
+        ownershipTracked = true;
+        boolean informed = watchOwnership();
+        if (informed) {
+            // the informer reports only changes, the current state is checked once
+            scheduler.execute(this::ensureWatchState);
+            return;
+        }
         scheduler.scheduleAtFixedRate(
-                () -> ensureWatchState(compositeId),
+                this::ensureWatchState,
                 0,
                 checkIntervalMs,
                 TimeUnit.MILLISECONDS);
     }
 
-    private void ensureWatchState(String compositeId) {
+    /**
+     * Stops watching the composite, e.g. after its CR is deleted.
+     *
+     * @param compositeId the composite ID to stop watching
+     */
+    public synchronized void stop(String compositeId) {
+        if (compositeId == null || !watches.containsKey(compositeId)) {
+            return;
+        }
+        log.info("Stopping CompositeStructureWatcher for compositeId={}", compositeId);
+        stopLongPoll(compositeId);
+        watches.remove(compositeId);
+    }
+
+    public synchronized Set<String> getWatchedCompositeIds() {
+        return Set.copyOf(watches.keySet());
+    }
+
+    private boolean watchOwnership() {
+        try {
+            return configMapClient.watchOwnership(TopologyConfigMap.NAME, namespace,
+                    shouldManage -> scheduler.execute(() -> onOwnershipChanged(shouldManage)));
+        } catch (Exception ex) {
+            log.warn("Cannot watch ownership of '{}', falling back to periodic checks", TopologyConfigMap.NAME, ex);
+            return false;
+        }
+    }
+
+    private void ensureWatchState() {
+        try {
+            applyOwnership(configMapClient.shouldBeManagedByCoreOperator(TopologyConfigMap.NAME, namespace));
+        } catch (Exception ex) {
+            log.error("Unexpected error in CompositeStructureWatcher", ex);
+        }
+    }
+
+    private void onOwnershipChanged(boolean shouldManage) {
         try {
-            boolean shouldManage = configMapClient.shouldBeManagedByCoreOperator(TopologyConfigMap.NAME, namespace);
-            log.debug("Should core-operator manage '{}': {}", TopologyConfigMap.NAME, shouldManage);
+            applyOwnership(shouldManage);
+        } catch (Exception ex) {
+            log.error("Unexpected error in CompositeStructureWatcher", ex);
+        }
+    }
+
+    private synchronized void applyOwnership(boolean shouldManage) {
+        log.debug("Should core-operator manage '{}': {}", TopologyConfigMap.NAME, shouldManage);
+        for (String compositeId : Set.copyOf(watches.keySet())) {
             if (shouldManage) {
                 startLongPoll(compositeId);
             } else {
-                stopLongPoll();
+                stopLongPoll(compositeId);
             }
-        } catch (Exception ex) {
-            log.error("Unexpected error in CompositeStructureWatcher", ex);
         }
     }
 
     private void startLongPoll(String compositeId) {
-        if (isLongPollRunning()) {
+        if (isLongPollRunning(compositeId)) {
             return;
         }
         String compositeStructureKey = COMPOSITE_STRUCTURE_KEY_TEMPLATE.formatted(compositeId);
         log.info("Starting Consul long-poll for key '{}'", compositeStructureKey);
-        longPollSession = consulLongPoller.startWatch(compositeStructureKey, CompositeStructureUpdateEvent::new);
+        watches.put(compositeId, consulLongPoller.startWatch(compositeStructureKey,
+                (values, consulIndex) -> new CompositeStructureUpdateEvent(compositeId, values, consulIndex)));
     }
 
-    private void stopLongPoll() {
-        if (isLongPollRunning()) {
-            log.info("Stopping Consul long-poll for '{}'", TopologyConfigMap.NAME);
-            longPollSession.cancel();
-            longPollSession = null;
+    private void stopLongPoll(String compositeId) {
+        if (isLongPollRunning(compositeId)) {
+            log.info("Stopping Consul long-poll of compositeId={} for '{}'", compositeId, TopologyConfigMap.NAME);
+            watches.get(compositeId).cancel();
+            watches.put(compositeId, null);
         }
     }
 
-    private boolean isLongPollRunning() {
+    private boolean isLongPollRunning(String compositeId) {
+        LongPollSession longPollSession = watches.get(compositeId);
         return longPollSession != null && !longPollSession.isCancelled();
     }
 
@@ -130,7 +197,9 @@ public class CompositeStructureWatcher {
     @PreDestroy
     public void shutdown() {
         log.info("Shutting down CompositeStructureWatcher");
-        stopLongPoll();
+        synchronized (this) {
+            Set.copyOf(watches.keySet()).forEach(this::stopLongPoll);
+        }
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
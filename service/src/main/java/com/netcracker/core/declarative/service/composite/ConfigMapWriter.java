@@ -2,53 +2,250 @@ package com.netcracker.core.declarative.service.composite;
 
 import com.netcracker.core.declarative.client.k8s.ConfigMapClient;
 import io.fabric8.kubernetes.api.model.HasMetadata;
-import io.smallrye.faulttolerance.api.ExponentialBackoff;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
-import org.eclipse.microprofile.faulttolerance.Asynchronous;
-import org.eclipse.microprofile.faulttolerance.Retry;
+import org.jspecify.annotations.NonNull;
 
-import java.time.temporal.ChronoUnit;
+import java.time.Duration;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Asynchronously writes data to Kubernetes ConfigMaps with retry support.
  * <p>
+ * Every ConfigMap has a single slot: at most one write per ConfigMap is in flight, and a newer payload requested
+ * while a write is pending or waiting for a retry replaces it. A payload replacing a write that waits for its retry
+ * is written right away. Only the newest payload is retried, so an older payload can never land after a newer one.
+ * The future of a superseded request completes with the result of the write which replaced it.
+ * <p>
+ * Different ConfigMaps are written in parallel by a small pool, so a slow write of one does not hold back the others.
+ * <p>
  * Uses exponential backoff (3s -> 6s -> 12s -> 24s -> 30s max) for retries
- * on failure, up to 10 attempts.
+ * on failure, up to 10 retries within 5 minutes.
+ * <p>
+ * Writes waiting in slots and superseded requests are exported as {@code core.operator.configmap.writer.*} metrics.
  */
 @ApplicationScoped
 @Slf4j
-public class ConfigMapWriter {
+public class ConfigMapWriter implements MeterBinder {
+    private static final int WRITER_THREADS = 4;
+
     private final ConfigMapClient configMapClient;
     private final String namespace;
+    private final Duration initialDelay;
+    private final Duration maxDelay;
+    private final int maxRetries;
+    private final Duration maxDuration;
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final AtomicLong superseded = new AtomicLong();
 
     @Inject
     public ConfigMapWriter(ConfigMapClient configMapClient,
                            @ConfigProperty(name = "cloud.microservice.namespace") String namespace) {
+        this(configMapClient, namespace, Duration.ofSeconds(3), Duration.ofSeconds(30), 10, Duration.ofMinutes(5));
+    }
+
+    ConfigMapWriter(ConfigMapClient configMapClient, String namespace,
+                    Duration initialDelay, Duration maxDelay, int maxRetries, Duration maxDuration) {
         this.configMapClient = configMapClient;
         this.namespace = namespace;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.maxRetries = maxRetries;
+        this.maxDuration = maxDuration;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(WRITER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "config-map-writer-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    @Asynchronous
-    @Retry(maxRetries = 10, delay = 3000, maxDuration = 5, durationUnit = ChronoUnit.MINUTES)
-    @ExponentialBackoff(maxDelay = 30, maxDelayUnit = ChronoUnit.SECONDS)
     public CompletionStage<Void> requestUpdate(String configMapName, Map<String, String> payload, HasMetadata owner) {
+        return requestUpdate(configMapName, payload, Map.of(), owner);
+    }
+
+    /**
+     * Same as {@link #requestUpdate(String, Map, HasMetadata)}, additionally writing base64-encoded
+     * {@code binaryPayload} to the {@code binaryData} of the ConfigMap.
+     */
+    public CompletionStage<Void> requestUpdate(String configMapName, Map<String, String> payload,
+                                               Map<String, String> binaryPayload, HasMetadata owner) {
         Objects.requireNonNull(configMapName, "configMapName");
         Objects.requireNonNull(payload, "payload");
+        Objects.requireNonNull(binaryPayload, "binaryPayload");
+
+        Write write = new Write(payload, binaryPayload, owner, new CompletableFuture<>());
+        Slot slot = slots.computeIfAbsent(configMapName, Slot::new);
+        boolean start;
+        synchronized (slot) {
+            if (slot.pending != null) {
+                supersede(slot.pending, write);
+            }
+            slot.pending = write;
+            start = !slot.running;
+            slot.running = true;
+            if (slot.retry != null && slot.retry.cancel(false)) {
+                // do not leave the newest payload waiting for the backoff of the one it replaces
+                slot.retry = null;
+                start = true;
+            }
+        }
+        if (start) {
+            executor.execute(() -> process(slot));
+        }
+        return write.result;
+    }
+
+    private void process(Slot slot) {
+        Write write;
+        synchronized (slot) {
+            slot.retry = null;
+            if (slot.pending != null) {
+                if (slot.current != null) {
+                    // the newest payload replaces a write waiting for its retry
+                    supersede(slot.current, slot.pending);
+                }
+                slot.current = slot.pending;
+                slot.pending = null;
+            }
+            write = slot.current;
+            if (write == null) {
+                slot.running = false;
+                return;
+            }
+        }
 
         try {
-            configMapClient.createOrUpdate(configMapName, namespace, payload, owner);
-            log.debug("Successfully updated config map '{}'", configMapName);
-            return CompletableFuture.completedFuture(null);
+            if (write.binaryPayload.isEmpty()) {
+                configMapClient.createOrUpdate(slot.name, namespace, write.payload, write.owner);
+            } else {
+                configMapClient.createOrUpdate(slot.name, namespace, write.payload, write.binaryPayload, write.owner);
+            }
+            log.debug("Successfully updated config map '{}'", slot.name);
+            finish(slot, write);
+            write.result.complete(null);
         } catch (RuntimeException ex) {
-            log.warn("Failed to update config map '{}', will retry with backoff", configMapName, ex);
-            throw ex;
+            write.attempts++;
+            boolean exhausted = write.attempts > maxRetries
+                    || System.nanoTime() - write.startedNanos >= maxDuration.toNanos();
+            if (exhausted) {
+                log.error("Failed to update config map '{}' after {} attempts", slot.name, write.attempts, ex);
+                finish(slot, write);
+                write.result.completeExceptionally(ex);
+                return;
+            }
+            long delayMs = Math.min(maxDelay.toMillis(), initialDelay.toMillis() << Math.min(write.attempts - 1, 20));
+            log.warn("Failed to update config map '{}', will retry in {}", slot.name, Duration.ofMillis(delayMs), ex);
+            synchronized (slot) {
+                if (slot.pending != null) {
+                    // a newer payload arrived during the write, continue with it right away
+                    executor.execute(() -> process(slot));
+                } else {
+                    slot.retry = executor.schedule(() -> process(slot), delayMs, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears the finished write and continues with a payload requested meanwhile, if any.
+     */
+    private void finish(Slot slot, Write write) {
+        synchronized (slot) {
+            if (slot.current == write) {
+                slot.current = null;
+            }
+        }
+        executor.execute(() -> process(slot));
+    }
+
+    private void supersede(Write older, Write newer) {
+        superseded.incrementAndGet();
+        newer.result.whenComplete((ignored, ex) -> {
+            if (ex == null) {
+                older.result.complete(null);
+            } else {
+                older.result.completeExceptionally(ex);
+            }
+        });
+    }
+
+    /**
+     * @return writes waiting in all slots, including writes waiting for a retry
+     */
+    int getQueueDepth() {
+        int depth = 0;
+        for (Slot slot : slots.values()) {
+            synchronized (slot) {
+                depth += (slot.pending != null ? 1 : 0) + (slot.current != null ? 1 : 0);
+            }
+        }
+        return depth;
+    }
+
+    long getSuperseded() {
+        return superseded.get();
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        Gauge.builder("core.operator.configmap.writer.queue.depth", this, ConfigMapWriter::getQueueDepth)
+                .description("ConfigMap writes waiting to be applied or retried")
+                .register(registry);
+        FunctionCounter.builder("core.operator.configmap.writer.superseded", superseded, AtomicLong::doubleValue)
+                .description("ConfigMap writes dropped because a newer payload for the same ConfigMap was requested")
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static final class Slot {
+        private final String name;
+        private Write current;
+        private Write pending;
+        private boolean running;
+        private ScheduledFuture<?> retry;
+
+        private Slot(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class Write {
+        private final Map<String, String> payload;
+        private final Map<String, String> binaryPayload;
+        private final HasMetadata owner;
+        private final CompletableFuture<Void> result;
+        private final long startedNanos = System.nanoTime();
+        private int attempts;
+
+        private Write(Map<String, String> payload, Map<String, String> binaryPayload, HasMetadata owner,
+                      CompletableFuture<Void> result) {
+            this.payload = payload;
+            this.binaryPayload = binaryPayload;
+            this.owner = owner;
+            this.result = result;
         }
     }
 }
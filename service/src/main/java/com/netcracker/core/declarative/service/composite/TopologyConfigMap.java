@@ -5,7 +5,7 @@ package com.netcracker.core.declarative.service.composite;
  * <p>
  * Shared by every component that reads or writes it ({@link CompositeStructureWatcher},
  * {@link CompositeStructureChangeListener}, {@link TopologyConfigMapPublisher}) so the
- * name and data key are defined in exactly one place.
+ * name and data keys are defined in exactly one place.
  */
 public final class TopologyConfigMap {
 
@@ -15,6 +15,43 @@ public final class TopologyConfigMap {
     /** Key under {@code data} holding the serialized topology JSON payload. */
     public static final String DATA_KEY = "data";
 
+    /** Key under {@code data} holding the {@link Format} of the ConfigMap, absent for {@link Format#JSON}. */
+    public static final String FORMAT_KEY = "format";
+
+    /** Key under {@code data} holding the version of the topology, growing with every change of it. */
+    public static final String VERSION_KEY = "version";
+
+    /** Key under {@code data} holding the Consul index the topology was read at. */
+    public static final String CONSUL_INDEX_KEY = "consulIndex";
+
+    /** Key under {@code binaryData} holding the gzip'ed topology JSON payload in {@link Format#GZIP}. */
+    public static final String GZIP_DATA_KEY = "data.gz";
+
+    /** Key under {@code data} holding the cloud provider and the baseline in {@link Format#SHARDED}. */
+    public static final String BASELINE_KEY = "baseline";
+
+    /** Prefix of the keys under {@code data} holding the satellite shards in {@link Format#SHARDED}. */
+    public static final String SATELLITES_KEY_PREFIX = "satellites-";
+
+    /** Key under {@code data} holding the version of every other key in {@link Format#SHARDED}. */
+    public static final String VERSIONS_KEY = "versions";
+
+    /**
+     * Layout of the topology in the ConfigMap, configured by {@code cloud.composite.structure.topology.format}.
+     */
+    public enum Format {
+        /** The whole payload as JSON under {@value #DATA_KEY}. */
+        JSON,
+        /** The whole payload as gzip'ed JSON under binaryData {@value #GZIP_DATA_KEY}. */
+        GZIP,
+        /** The baseline under {@value #BASELINE_KEY} and the satellites spread over {@value #SATELLITES_KEY_PREFIX}N keys. */
+        SHARDED;
+
+        public String getValue() {
+            return name().toLowerCase();
+        }
+    }
+
     private TopologyConfigMap() {
     }
 }
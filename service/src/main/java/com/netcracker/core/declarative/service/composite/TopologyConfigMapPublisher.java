@@ -1,66 +1,304 @@
 package com.netcracker.core.declarative.service.composite;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netcracker.core.declarative.client.k8s.ConfigMapClient;
 import com.netcracker.core.declarative.resources.composite.Composite;
 import com.netcracker.core.declarative.service.CloudProviderResolver;
+import com.netcracker.core.declarative.service.composite.TopologyConfigMap.Format;
 import com.netcracker.core.declarative.service.composite.model.CompositeStructure;
+import com.netcracker.core.declarative.service.composite.model.CompositeStructure.NamespaceRoles;
 import com.netcracker.core.declarative.service.composite.model.CompositeStructureConfigMapPayload;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.BASELINE_KEY;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.CONSUL_INDEX_KEY;
 import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.DATA_KEY;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.FORMAT_KEY;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.GZIP_DATA_KEY;
 import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.NAME;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.SATELLITES_KEY_PREFIX;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.VERSIONS_KEY;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.VERSION_KEY;
 
 /**
  * Writes the {@value TopologyConfigMap#NAME} ConfigMap from a {@link CompositeStructure}.
  * <p>
  * Stamps the resolved cloud provider onto the structure, serializes the payload, and persists it
  * via {@link ConfigMapWriter}.
+ * <p>
+ * There is a single ConfigMap in the operator namespace, so only the composite of the Composite CR in that namespace
+ * is published; an owner reference can not point to a CR in another namespace either. Composites of CRs in other
+ * namespaces are still watched, but their topology is not written.
+ * <p>
+ * By default the payload is written as JSON under {@value TopologyConfigMap#DATA_KEY}. For composites with many
+ * satellites, {@code cloud.composite.structure.topology.format} switches to a {@link Format#GZIP gzip'ed} payload
+ * in binaryData or to {@link Format#SHARDED shards} of satellites under separate keys. Both carry the topology
+ * {@value TopologyConfigMap#VERSION_KEY}, which grows whenever the content changes, and the
+ * {@value TopologyConfigMap#CONSUL_INDEX_KEY} it was read at. Sharded ConfigMaps also carry the version in which
+ * every key last changed, so consumers can skip unchanged shards.
+ * <p>
+ * Versions are compared with the last ConfigMap written successfully, which is recorded once its write completes.
+ * A version is never handed out twice, also when its write fails; a failed write makes the next publish read the
+ * ConfigMap again.
  */
 @ApplicationScoped
 @Slf4j
 public class TopologyConfigMapPublisher {
+    private static final TypeReference<Map<String, Long>> VERSIONS_TYPE = new TypeReference<>() {
+    };
+    private static final Comparator<NamespaceRoles> SATELLITE_ORDER = Comparator.comparing(
+            TopologyConfigMapPublisher::satelliteName, Comparator.nullsFirst(Comparator.naturalOrder()));
 
     private final ConfigMapWriter configMapWriter;
+    private final ConfigMapClient configMapClient;
     private final ObjectMapper objectMapper;
     private final CloudProviderResolver cloudProviderResolver;
+    private final String namespace;
+    private final Format format;
+    private final int shards;
+
+    private boolean loaded;
+    // the last version handed to a write, written or not
+    private long allocatedVersion;
+    // the last successfully written ConfigMap
+    private long version;
+    private long consulIndex;
+    private Map<String, String> publishedParts = Map.of();
+    private Map<String, Long> partVersions = Map.of();
 
-    @Inject
     public TopologyConfigMapPublisher(ConfigMapWriter configMapWriter,
                                       ObjectMapper objectMapper,
                                       CloudProviderResolver cloudProviderResolver) {
+        this(configMapWriter, null, objectMapper, cloudProviderResolver, null, Format.JSON.getValue(), 1);
+    }
+
+    @Inject
+    public TopologyConfigMapPublisher(ConfigMapWriter configMapWriter,
+                                      ConfigMapClient configMapClient,
+                                      ObjectMapper objectMapper,
+                                      CloudProviderResolver cloudProviderResolver,
+                                      @ConfigProperty(name = "cloud.microservice.namespace") String namespace,
+                                      @ConfigProperty(name = "cloud.composite.structure.topology.format", defaultValue = "json") String format,
+                                      @ConfigProperty(name = "cloud.composite.structure.topology.shards", defaultValue = "16") int shards) {
         this.configMapWriter = configMapWriter;
+        this.configMapClient = configMapClient;
         this.objectMapper = objectMapper;
         this.cloudProviderResolver = cloudProviderResolver;
+        this.namespace = namespace;
+        this.format = Format.valueOf(format.toUpperCase());
+        this.shards = Math.max(1, shards);
+    }
+
+    /**
+     * Same as {@link #publish(CompositeStructure, Composite, Long)} for a structure not read from Consul.
+     */
+    public CompletionStage<Void> publish(CompositeStructure structure, Composite owner) {
+        return publish(structure, owner, null);
     }
 
     /**
      * Stamps the cloud provider onto {@code structure}, serializes it, and writes it to the
      * {@value TopologyConfigMap#NAME} ConfigMap owned by {@code owner}.
      *
-     * @param structure the composite structure (may be {@code null} when there is no topology)
-     * @param owner     the Composite CR set as owner of the ConfigMap
+     * @param structure   the composite structure (may be {@code null} when there is no topology)
+     * @param owner       the Composite CR set as owner of the ConfigMap
+     * @param consulIndex the Consul index the structure was read at, {@code null} keeps the last known one
      * @return a future that completes when the ConfigMap is written, or fails after all retries
      * @throws RuntimeException if the payload cannot be serialized
      */
-    public CompletionStage<Void> publish(CompositeStructure structure, Composite owner) {
-        CompositeStructureConfigMapPayload payload =
-                new CompositeStructureConfigMapPayload(cloudProviderResolver.get().getValue(), structure);
-        log.info("Publishing '{}' ConfigMap: {}", NAME, payload);
+    public CompletionStage<Void> publish(CompositeStructure structure, Composite owner, Long consulIndex) {
+        if (!isPublishedFor(owner)) {
+            log.debug("Composite CR is not in namespace '{}', skip publishing '{}' ConfigMap for it", namespace, NAME);
+            return CompletableFuture.completedFuture(null);
+        }
+        String cloudProvider = cloudProviderResolver.get().getValue();
+        CompositeStructureConfigMapPayload payload = new CompositeStructureConfigMapPayload(cloudProvider, structure);
+        log.info("Publishing '{}' ConfigMap in {} format: {}", NAME, format.getValue(), payload);
+
+        CompletionStage<Void> written = switch (format) {
+            case JSON -> configMapWriter.requestUpdate(NAME, Map.of(DATA_KEY, serialize(payload)), owner);
+            case GZIP -> writeVersioned(Map.of(DATA_KEY, serialize(payload)), consulIndex, owner);
+            case SHARDED -> writeVersioned(shard(cloudProvider, structure), consulIndex, owner);
+        };
+        return written.thenRun(() -> log.info("Successfully published ConfigMap '{}'", NAME));
+    }
+
+    /**
+     * @return {@code true} if the topology of the composite of {@code owner} is published, i.e. the CR is in the
+     * operator namespace or its namespace is unknown
+     */
+    public boolean isPublishedFor(Composite owner) {
+        if (namespace == null || owner == null || owner.getMetadata() == null || owner.getMetadata().getNamespace() == null) {
+            return true;
+        }
+        return namespace.equals(owner.getMetadata().getNamespace());
+    }
+
+    /**
+     * Splits the structure into the baseline part and the satellite shards. A satellite always lands in the same
+     * shard, so adding or removing one changes a single shard only.
+     */
+    private Map<String, String> shard(String cloudProvider, CompositeStructure structure) {
+        Map<String, Object> baseline = new LinkedHashMap<>();
+        baseline.put("cloudProvider", cloudProvider);
+        if (structure != null && structure.baseline() != null) {
+            baseline.put(BASELINE_KEY, structure.baseline());
+        }
+        Map<String, String> parts = new TreeMap<>();
+        parts.put(BASELINE_KEY, serialize(baseline));
+
+        List<NamespaceRoles> satellites = structure == null || structure.satellites() == null
+                ? List.of() : structure.satellites();
+        Map<Integer, List<NamespaceRoles>> byShard = new TreeMap<>();
+        for (NamespaceRoles satellite : satellites) {
+            int shard = Math.floorMod(Objects.hashCode(satelliteName(satellite)), shards);
+            byShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(satellite);
+        }
+        byShard.forEach((shard, members) -> {
+            members.sort(SATELLITE_ORDER);
+            parts.put(shardKey(shard), serialize(members));
+        });
+        return parts;
+    }
 
-        String json;
+    private String shardKey(int shard) {
+        int width = String.valueOf(shards - 1).length();
+        return SATELLITES_KEY_PREFIX + String.format("%0" + width + "d", shard);
+    }
+
+    private static String satelliteName(NamespaceRoles satellite) {
+        return Stream.of(satellite.origin(), satellite.controller(), satellite.peer())
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Writes the parts with the topology version, which is raised if any part changed since the last successful
+     * write. While another write is in flight, its content may land first, so the version is raised anyway and
+     * every part gets the new version.
+     */
+    private synchronized CompletionStage<Void> writeVersioned(Map<String, String> parts, Long consulIndex, Composite owner) {
+        loadPublished();
+        boolean settled = allocatedVersion == version;
+        boolean changed = !settled || !parts.keySet().equals(publishedParts.keySet());
+        for (Map.Entry<String, String> part : parts.entrySet()) {
+            changed |= !part.getValue().equals(publishedParts.get(part.getKey()));
+        }
+        long writeVersion = changed ? ++allocatedVersion : version;
+        Map<String, Long> versions = new TreeMap<>();
+        parts.forEach((key, value) -> versions.put(key, settled && value.equals(publishedParts.get(key))
+                ? partVersions.getOrDefault(key, writeVersion) : writeVersion));
+        long writeConsulIndex = consulIndex != null ? consulIndex : this.consulIndex;
+
+        Map<String, String> data = new TreeMap<>();
+        data.put(FORMAT_KEY, format.getValue());
+        data.put(VERSION_KEY, String.valueOf(writeVersion));
+        if (writeConsulIndex > 0) {
+            data.put(CONSUL_INDEX_KEY, String.valueOf(writeConsulIndex));
+        }
+        CompletionStage<Void> written;
+        if (format == Format.GZIP) {
+            written = configMapWriter.requestUpdate(NAME, data, Map.of(GZIP_DATA_KEY, gzip(parts.get(DATA_KEY))), owner);
+        } else {
+            data.putAll(parts);
+            data.put(VERSIONS_KEY, serialize(versions));
+            written = configMapWriter.requestUpdate(NAME, data, owner);
+        }
+        return written.whenComplete((ignored, error) -> onWritten(writeVersion, parts, versions, writeConsulIndex, error));
+    }
+
+    /**
+     * Records a successfully written ConfigMap, unless a newer one was recorded already; a write superseded by a
+     * newer one completes with the result of the newer write. After a failure the next publish reads the ConfigMap
+     * again, as the write may still have been applied.
+     */
+    private synchronized void onWritten(long writeVersion, Map<String, String> parts, Map<String, Long> versions,
+                                        long writeConsulIndex, Throwable error) {
+        if (error != null) {
+            loaded = false;
+            return;
+        }
+        if (writeVersion >= version) {
+            version = writeVersion;
+            publishedParts = parts;
+            partVersions = versions;
+            consulIndex = writeConsulIndex;
+        }
+    }
+
+    /**
+     * Continues the versions of the existing ConfigMap after a restart, so they never go back.
+     */
+    private void loadPublished() {
+        if (loaded) {
+            return;
+        }
+        Map<String, String> existing = configMapClient.getData(NAME, namespace);
+        version = parseLong(existing.get(VERSION_KEY));
+        allocatedVersion = Math.max(allocatedVersion, version);
+        consulIndex = parseLong(existing.get(CONSUL_INDEX_KEY));
+        if (format == Format.SHARDED && format.getValue().equals(existing.get(FORMAT_KEY))
+                && existing.get(VERSIONS_KEY) != null) {
+            try {
+                Map<String, Long> versions = objectMapper.readValue(existing.get(VERSIONS_KEY), VERSIONS_TYPE);
+                Map<String, String> parts = new TreeMap<>();
+                versions.keySet().stream()
+                        .filter(existing::containsKey)
+                        .forEach(key -> parts.put(key, existing.get(key)));
+                publishedParts = parts;
+                partVersions = versions;
+            } catch (IOException e) {
+                log.warn("Ignore unreadable '{}' of ConfigMap '{}', all shards get a new version", VERSIONS_KEY, NAME, e);
+            }
+        }
+        loaded = true;
+        log.info("Continue '{}' ConfigMap from version {} at Consul index {}", NAME, version, consulIndex);
+    }
+
+    private static long parseLong(String value) {
         try {
-            json = objectMapper.writeValueAsString(payload);
+            return value == null ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private String serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
         } catch (Exception e) {
             throw new RuntimeException("Failed to serialize topology payload for ConfigMap '" + NAME + "'", e);
         }
+    }
 
-        Map<String, String> data = Map.of(DATA_KEY, json);
-        return configMapWriter.requestUpdate(NAME, data, owner)
-                .thenRun(() -> log.info("Successfully published ConfigMap '{}'", NAME));
+    private static String gzip(String json) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to compress topology payload for ConfigMap '" + NAME + "'", e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
     }
 }
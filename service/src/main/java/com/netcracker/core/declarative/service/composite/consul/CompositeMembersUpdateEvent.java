@@ -0,0 +1,20 @@
+package com.netcracker.core.declarative.service.composite.consul;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulUpdateEvent;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Event fired when anything under the {@code composite/} prefix changes in Consul.
+ * <p>
+ * Contains the full snapshot of entries of all composites.
+ */
+@Getter
+public class CompositeMembersUpdateEvent extends ConsulUpdateEvent {
+
+    public CompositeMembersUpdateEvent(List<GetValue> values, long consulIndex) {
+        super(values, consulIndex);
+    }
+}
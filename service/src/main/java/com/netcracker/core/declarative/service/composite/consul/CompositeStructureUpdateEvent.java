@@ -9,12 +9,19 @@ import java.util.List;
 /**
  * Event fired when the composite structure data changes in Consul.
  * <p>
- * Contains the full snapshot of structure entries under the watched prefix.
+ * Contains the full snapshot of structure entries under the watched prefix and the ID of the watched composite,
+ * if known.
  */
 @Getter
 public class CompositeStructureUpdateEvent extends ConsulUpdateEvent {
+    private final String compositeId;
 
     public CompositeStructureUpdateEvent(List<GetValue> values, long consulIndex) {
+        this(null, values, consulIndex);
+    }
+
+    public CompositeStructureUpdateEvent(String compositeId, List<GetValue> values, long consulIndex) {
         super(values, consulIndex);
+        this.compositeId = compositeId;
     }
 }
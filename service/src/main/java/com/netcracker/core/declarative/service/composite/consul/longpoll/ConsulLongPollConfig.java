@@ -12,6 +12,7 @@ public interface ConsulLongPollConfig {
 
     /**
      * Delay (ms) before retrying after a failed poll or empty response.
+     * With adaptive scheduling, the upper bound of the error backoff.
      */
     @WithDefault("20000")
     @WithName("retry-time")
@@ -19,8 +20,40 @@ public interface ConsulLongPollConfig {
 
     /**
      * Delay (ms) before the next poll after a successful response with data.
+     * Not used with adaptive scheduling.
      */
     @WithDefault("3000")
     @WithName("on-success-delay-time")
     int onSuccessDelayTime();
+
+    /**
+     * Threads of the scheduler running all watches; non-positive values fall back to 2.
+     */
+    @WithDefault("2")
+    @WithName("scheduler-threads")
+    int schedulerThreads();
+
+    /**
+     * Adaptive scheduling: re-poll right after every response (the blocking query itself is the wait),
+     * back off exponentially with jitter on errors. When disabled, the fixed delays above are used.
+     */
+    @WithDefault("true")
+    @WithName("adaptive")
+    boolean adaptive();
+
+    /**
+     * Minimal time (ms) between the starts of two polls of one watch, so a flapping key can not cause a tight loop.
+     * Non-positive values fall back to 250.
+     */
+    @WithDefault("250")
+    @WithName("min-poll-interval")
+    int minPollInterval();
+
+    /**
+     * First error backoff delay (ms) of adaptive scheduling, doubled on every further error up to {@code retry-time}.
+     * Non-positive values fall back to 1000.
+     */
+    @WithDefault("1000")
+    @WithName("backoff-initial")
+    int backoffInitial();
 }
@@ -6,35 +6,99 @@ import com.netcracker.cloud.quarkus.consul.client.ConsulSourceConfig;
 import com.netcracker.cloud.quarkus.consul.client.http.QueryParams;
 import com.netcracker.cloud.quarkus.consul.client.http.Response;
 import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Event;
 import jakarta.enterprise.inject.Instance;
 import jakarta.inject.Inject;
 import lombok.extern.slf4j.Slf4j;
+import org.jspecify.annotations.NonNull;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Continuously long-polls a Consul KV path for changes.
+ * Continuously long-polls Consul KV paths for changes.
+ * <p>
+ * Watches are multiplexed: subscribers whose roots share a prefix are served by one blocking query on the
+ * shortest of those roots, and each subscriber only receives the entries under its own root. Physical watches
+ * are added and removed as subscribers come and go. All poll loops run on one small dedicated scheduler
+ * ({@code cloud.consul-long-poll.scheduler-threads}).
  * <p>
  * On each successful poll with updated data, fires a CDI event via {@link ConsulUpdateEventFactory}.
+ * Blocking queries also return when the index moved without a visible change (writes of equal values, changes of
+ * sibling keys of a shared watch) or when the wait time expired, so an event is only fired when the digest of the
+ * subscriber's {@code (key, ModifyIndex, value)} entries differs from the last fired one. A subscriber whose entries
+ * were all removed gets one event with an empty snapshot, so it can drop what it derived from them. If the Consul
+ * index goes backwards (e.g. after a Consul restore), the watch continues from the new index and the current state,
+ * also an empty one, is delivered again.
  * Automatically retries with a delay on errors.
  * <p>
+ * With adaptive scheduling ({@code cloud.consul-long-poll.adaptive}, the default) the next blocking query is sent
+ * right after a response, limited to one poll start per {@code min-poll-interval} per watch, and errors are retried
+ * with exponential backoff and jitter from {@code backoff-initial} up to {@code retry-time}, so pods do not retry in
+ * lockstep after a Consul outage. Otherwise the fixed {@code on-success-delay-time} and {@code retry-time} are used.
+ * <p>
+ * {@code core.operator.consul.longpoll.propagation} estimates the time from a Consul change to the delivery of its
+ * event: from the response for changes seen by a blocking query, from the previous response for changes which
+ * happened while no query was pending.
+ * <p>
+ * Per watch, {@code core.operator.consul.longpoll.lag} reports the time since the last successful response and
+ * {@code core.operator.consul.longpoll.index} the last Consul index.
+ * <p>
  * Returns a {@link LongPollSession} that can be used to cancel the watch loop.
  */
 @Slf4j
 @ApplicationScoped
-public class ConsulLongPoller {
+public class ConsulLongPoller implements MeterBinder {
+    private static final int DEFAULT_SCHEDULER_THREADS = 2;
+    private static final int DEFAULT_MIN_POLL_INTERVAL_MS = 250;
+    private static final int DEFAULT_BACKOFF_INITIAL_MS = 1000;
+    // a blocking query answered faster than this did not block: the change happened before it was sent
+    private static final long IMMEDIATE_RESPONSE_MS = 50;
+    private static final String EMPTY_DIGEST = digest(List.of());
+    // never equal to a digest, so the current state is delivered again, even an empty one
+    private static final String REDELIVER_DIGEST = "";
 
     private final TokenStorage tokenStorage;
     private final ConsulClient consulClient;
     private final ConsulSourceConfig consulSourceConfig;
     private final ConsulLongPollConfig consulLongPollConfig;
     private final Event<ConsulUpdateEvent> event;
+    private final ScheduledExecutorService scheduler;
+    private final boolean adaptive;
+    private final long minPollIntervalMs;
+    private final long backoffInitialMs;
+
+    private final List<Subscription<?>> subscriptions = new ArrayList<>();
+    private final Map<String, Watch> watches = new HashMap<>();
+    private final AtomicLong firedEvents = new AtomicLong();
+    private final AtomicLong suppressedEvents = new AtomicLong();
+    private volatile MeterRegistry meterRegistry;
 
     @Inject
     public ConsulLongPoller(Instance<TokenStorage> tokenStorage,
@@ -47,6 +111,11 @@ public class ConsulLongPoller {
         this.consulSourceConfig = consulSourceConfig;
         this.consulLongPollConfig = consulLongPollConfig;
         this.event = event;
+        int threads = consulLongPollConfig.schedulerThreads() > 0 ? consulLongPollConfig.schedulerThreads() : DEFAULT_SCHEDULER_THREADS;
+        this.scheduler = Executors.newScheduledThreadPool(threads, daemonThreads());
+        this.adaptive = consulLongPollConfig.adaptive();
+        this.minPollIntervalMs = consulLongPollConfig.minPollInterval() > 0 ? consulLongPollConfig.minPollInterval() : DEFAULT_MIN_POLL_INTERVAL_MS;
+        this.backoffInitialMs = consulLongPollConfig.backoffInitial() > 0 ? consulLongPollConfig.backoffInitial() : DEFAULT_BACKOFF_INITIAL_MS;
     }
 
     /**
@@ -61,51 +130,90 @@ public class ConsulLongPoller {
                                                                     ConsulUpdateEventFactory<T> factory) {
         log.info("Starting Consul long-poll watch for '/kv/{}'", root);
         LongPollSession longPollSession = new LongPollSession();
+        Subscription<T> subscription = new Subscription<>(root, factory, longPollSession);
+        synchronized (this) {
+            subscriptions.add(subscription);
+            rebalance();
+        }
+        longPollSession.onCancel(() -> unsubscribe(subscription));
+        return longPollSession;
+    }
 
-        LongPollParameters<T> longPollParameters = new LongPollParameters<>(root,
-                factory,
-                consulSourceConfig.waitTime(),
-                consulLongPollConfig.retryTime(),
-                consulLongPollConfig.onSuccessDelayTime());
+    private synchronized void unsubscribe(Subscription<?> subscription) {
+        if (subscriptions.remove(subscription)) {
+            log.debug("Watch for '{}' was cancelled", subscription.root);
+            rebalance();
+        }
+    }
 
-        pollLoop(longPollParameters, 0, longPollSession);
+    /**
+     * Recomputes the physical watches: one per subscriber root not covered by another subscriber root.
+     */
+    private void rebalance() {
+        Set<String> roots = new HashSet<>();
+        for (Subscription<?> subscription : subscriptions) {
+            boolean covered = subscriptions.stream()
+                    .anyMatch(other -> !other.root.equals(subscription.root) && subscription.root.startsWith(other.root));
+            if (!covered) {
+                roots.add(subscription.root);
+            }
+        }
 
-        return longPollSession;
+        watches.values().removeIf(watch -> {
+            if (roots.contains(watch.root)) {
+                return false;
+            }
+            log.info("Stopping Consul long-poll for '/kv/{}'", watch.root);
+            watch.stopped = true;
+            unregisterMeters(watch);
+            return true;
+        });
+        for (String root : roots) {
+            if (!watches.containsKey(root)) {
+                Watch watch = new Watch(root,
+                        consulSourceConfig.waitTime(),
+                        consulLongPollConfig.retryTime(),
+                        consulLongPollConfig.onSuccessDelayTime());
+                watches.put(root, watch);
+                registerMeters(watch);
+                if (roots.size() < subscriptions.size()) {
+                    log.info("Consul long-poll for '/kv/{}' is shared by nested watches", root);
+                }
+                scheduleNextPoll(watch, 0);
+            }
+        }
+        for (Watch watch : watches.values()) {
+            watch.subscribers = subscriptions.stream()
+                    .filter(subscription -> subscription.root.startsWith(watch.root))
+                    .toList();
+        }
     }
 
-    private <T extends ConsulUpdateEvent> void pollLoop(LongPollParameters<T> param,
-                                                        long index,
-                                                        LongPollSession longPollSession) {
-        if (longPollSession.isCancelled()) {
-            log.debug("Watch for '{}' was cancelled, stopping poll loop", param.root);
+    private void pollLoop(Watch watch) {
+        if (watch.stopped) {
+            log.debug("Watch for '{}' was cancelled, stopping poll loop", watch.root);
             return;
         }
 
-        CompletableFuture.supplyAsync(tokenStorage::get)
-                .whenCompleteAsync((String token, Throwable tokenEx) -> {
-                    if (longPollSession.isCancelled()) {
-                        log.debug("Watch for '{}' was cancelled after token fetch", param.root);
-                        return;
-                    }
-
-                    if (tokenEx != null) {
-                        log.warn("Failed to obtain token from TokenStorage. Error: {}. Retrying after {}",
-                                tokenEx.getMessage(), Duration.ofMillis(param.consulRetryTimeMs));
-                        scheduleNextPoll(param, index, longPollSession, param.consulRetryTimeMs);
-                    } else {
-                        executePoll(param, index, longPollSession, token);
-                    }
-                });
+        watch.lastPollStartMillis = System.currentTimeMillis();
+        String token;
+        try {
+            token = tokenStorage.get();
+        } catch (Exception tokenEx) {
+            long retryTimeMs = errorDelay(watch);
+            log.warn("Failed to obtain token from TokenStorage. Error: {}. Retrying after {}",
+                    tokenEx.getMessage(), Duration.ofMillis(retryTimeMs));
+            scheduleNextPoll(watch, retryTimeMs);
+            return;
+        }
+        executePoll(watch, token);
     }
 
-    private <T extends ConsulUpdateEvent> void executePoll(LongPollParameters<T> param,
-                                                           long index,
-                                                           LongPollSession longPollSession,
-                                                           String token) {
-        consulClient.getKVValuesAsync(param.root, token, new QueryParams(param.waitTimeSecs, index))
+    private void executePoll(Watch watch, String token) {
+        consulClient.getKVValuesAsync(watch.root, token, new QueryParams(watch.waitTimeSecs, watch.index))
                 .whenCompleteAsync((response, ex) -> {
-                    if (longPollSession.isCancelled()) {
-                        log.debug("Watch for '{}' was cancelled after poll response", param.root);
+                    if (watch.stopped) {
+                        log.debug("Watch for '{}' was cancelled after poll response", watch.root);
                         return;
                     }
 
@@ -114,51 +222,237 @@ public class ConsulLongPoller {
                             .orElse(0L);
                     long retryTimeMs;
 
+                    if (ex == null && response != null && nextIndex < watch.index) {
+                        // continue from the new, lower index and re-deliver the current state to every subscriber
+                        log.info("Consul index of '/kv/{}' went backwards from {} to {}, reset watch", watch.root, watch.index, nextIndex);
+                        watch.subscribers.forEach(subscription -> subscription.lastDigest = REDELIVER_DIGEST);
+                    }
+
                     if (ex != null) {
-                        retryTimeMs = param.consulRetryTimeMs;
+                        nextIndex = watch.index;
+                        retryTimeMs = errorDelay(watch);
                         log.warn("Error on long polling request to /kv/{}. Error: {}. Retrying after {}",
-                                param.root, ex.getMessage(), Duration.ofMillis(retryTimeMs));
+                                watch.root, ex.getMessage(), Duration.ofMillis(retryTimeMs));
                     } else {
+                        long previousResponseMillis = watch.lastResponseMillis;
+                        long responseMillis = System.currentTimeMillis();
+                        watch.lastResponseMillis = responseMillis;
+                        watch.failures = 0;
                         List<GetValue> values = Optional.ofNullable(response)
                                 .map(Response::getValue)
                                 .orElse(null);
 
                         if (values != null && !values.isEmpty()) {
-                            retryTimeMs = param.onSuccessDelayTimeMs;
-                            log.debug("Got update at '/kv/{}' with {} keys", param.root, values.size());
-                            fireEvent(values, nextIndex, param.factory);
+                            retryTimeMs = adaptive ? 0 : watch.onSuccessDelayTimeMs;
+                            log.debug("Got update at '/kv/{}' with {} keys", watch.root, values.size());
+                            boolean fired = dispatch(watch, values, nextIndex, nextIndex != watch.index);
+                            if (fired && watch.index > 0) {
+                                boolean blocked = responseMillis - watch.lastPollStartMillis >= IMMEDIATE_RESPONSE_MS;
+                                recordPropagation(watch, blocked ? responseMillis : previousResponseMillis);
+                            }
+                        } else if (adaptive && response != null) {
+                            dispatchEmpty(watch, nextIndex);
+                            // an empty prefix is still a valid blocking query
+                            retryTimeMs = 0;
+                            log.debug("No data at '/kv/{}'", watch.root);
                         } else {
-                            retryTimeMs = param.consulRetryTimeMs;
-                            log.debug("No data at '/kv/{}', will retry after {}", param.root, Duration.ofMillis(retryTimeMs));
+                            if (response != null) {
+                                dispatchEmpty(watch, nextIndex);
+                            }
+                            retryTimeMs = adaptive ? errorDelay(watch) : watch.consulRetryTimeMs;
+                            log.debug("No data at '/kv/{}', will retry after {}", watch.root, Duration.ofMillis(retryTimeMs));
                         }
                     }
 
+                    watch.index = nextIndex;
                     log.debug("Scheduling next poll for '/kv/{}' with index {} after {}",
-                            param.root, nextIndex, Duration.ofMillis(retryTimeMs));
-                    scheduleNextPoll(param, nextIndex, longPollSession, retryTimeMs);
-                });
+                            watch.root, nextIndex, Duration.ofMillis(retryTimeMs));
+                    scheduleNextPoll(watch, retryTimeMs);
+                }, scheduler);
+    }
+
+    /**
+     * Delivers an empty snapshot to the subscribers whose entries were removed, e.g. the last member of a composite.
+     */
+    private void dispatchEmpty(Watch watch, long consulIndex) {
+        dispatch(watch, List.of(), consulIndex, consulIndex != watch.index);
+    }
+
+    private boolean dispatch(Watch watch, List<GetValue> values, long consulIndex, boolean indexChanged) {
+        boolean fired = false;
+        for (Subscription<?> subscription : watch.subscribers) {
+            if (subscription.session.isCancelled() || !indexChanged && subscription.lastDigest != null) {
+                continue;
+            }
+            List<GetValue> subscribed = subscription.root.equals(watch.root)
+                    ? values
+                    : values.stream().filter(value -> value.getKey() != null && value.getKey().startsWith(subscription.root)).toList();
+            if (subscribed.isEmpty()) {
+                if (subscription.lastDigest == null || EMPTY_DIGEST.equals(subscription.lastDigest)) {
+                    log.debug("No data at '/kv/{}' in update of '/kv/{}'", subscription.root, watch.root);
+                    continue;
+                }
+                log.info("Entries under '/kv/{}' were removed at index {}, fire empty update", subscription.root, consulIndex);
+            }
+            String digest = digest(subscribed);
+            if (digest.equals(subscription.lastDigest)) {
+                suppressedEvents.incrementAndGet();
+                log.debug("Entries under '/kv/{}' did not change at index {}, skip event", subscription.root, consulIndex);
+                continue;
+            }
+            subscription.lastDigest = digest;
+            try {
+                firedEvents.incrementAndGet();
+                fired = true;
+                event.fire(subscription.factory.create(subscribed, consulIndex));
+            } catch (Exception e) {
+                log.error("Failed to handle Consul update of '/kv/{}'", subscription.root, e);
+            }
+        }
+        return fired;
+    }
+
+    /**
+     * Delay before retrying a failed poll: fixed {@code retry-time}, or exponential backoff with equal jitter.
+     */
+    private long errorDelay(Watch watch) {
+        if (!adaptive) {
+            return watch.consulRetryTimeMs;
+        }
+        int failures = watch.failures++;
+        long cap = watch.consulRetryTimeMs > 0 ? watch.consulRetryTimeMs : backoffInitialMs;
+        long initial = Math.min(backoffInitialMs, cap);
+        long backoff = Math.min(cap, initial << Math.min(failures, 20));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
     }
 
-    private <T extends ConsulUpdateEvent> void scheduleNextPoll(LongPollParameters<T> param,
-                                                                long index,
-                                                                LongPollSession longPollSession,
-                                                                long delayMs) {
-        CompletableFuture.runAsync(
-                () -> pollLoop(param, index, longPollSession),
-                CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS)
-        );
+    private void recordPropagation(Watch watch, long changeSeenFromMillis) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Timer.builder("core.operator.consul.longpoll.propagation")
+                .description("Estimated time from a Consul change to the delivery of its event")
+                .tag("root", watch.root)
+                .register(meterRegistry)
+                .record(Math.max(0, System.currentTimeMillis() - changeSeenFromMillis), TimeUnit.MILLISECONDS);
     }
 
-    private <T extends ConsulUpdateEvent> void fireEvent(List<GetValue> values,
-                                                         long consulIndex,
-                                                         ConsulUpdateEventFactory<T> factory) {
-        event.fire(factory.create(values, consulIndex));
+    static String digest(List<GetValue> values) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (GetValue value : values) {
+            digest.update(String.valueOf(value.getKey()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(value.getModifyIndex()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(value.getValue()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        return HexFormat.of().formatHex(digest.digest());
     }
 
-    private record LongPollParameters<T extends ConsulUpdateEvent>(String root,
-                                                                   ConsulUpdateEventFactory<T> factory,
-                                                                   int waitTimeSecs,
-                                                                   int consulRetryTimeMs,
-                                                                   int onSuccessDelayTimeMs) {
+    private void scheduleNextPoll(Watch watch, long delayMs) {
+        if (scheduler.isShutdown()) {
+            return;
+        }
+        if (adaptive) {
+            delayMs = Math.max(delayMs, minPollIntervalMs - (System.currentTimeMillis() - watch.lastPollStartMillis));
+        }
+        scheduler.schedule(() -> pollLoop(watch), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void bindTo(@NonNull MeterRegistry registry) {
+        this.meterRegistry = registry;
+        Gauge.builder("core.operator.consul.longpoll.watches", watches, Map::size)
+                .description("Blocking queries currently held against Consul")
+                .register(registry);
+        Gauge.builder("core.operator.consul.longpoll.subscribers", subscriptions, List::size)
+                .description("Consul watches requested by operator components")
+                .register(registry);
+        FunctionCounter.builder("core.operator.consul.longpoll.events.fired", firedEvents, AtomicLong::doubleValue)
+                .description("Consul update events fired to subscribers")
+                .register(registry);
+        FunctionCounter.builder("core.operator.consul.longpoll.events.suppressed", suppressedEvents, AtomicLong::doubleValue)
+                .description("Long-poll responses without changes under the subscribed root")
+                .register(registry);
+        watches.values().forEach(this::registerMeters);
+    }
+
+    private void registerMeters(Watch watch) {
+        if (meterRegistry == null) {
+            return;
+        }
+        watch.meters.add(TimeGauge.builder("core.operator.consul.longpoll.lag", watch,
+                        TimeUnit.MILLISECONDS, w -> System.currentTimeMillis() - w.lastResponseMillis)
+                .description("Time since the last successful long-poll response of the watch")
+                .tag("root", watch.root)
+                .register(meterRegistry));
+        watch.meters.add(Gauge.builder("core.operator.consul.longpoll.index", watch, w -> w.index)
+                .description("Last Consul index seen by the watch")
+                .tag("root", watch.root)
+                .register(meterRegistry));
+    }
+
+    private void unregisterMeters(Watch watch) {
+        if (meterRegistry != null) {
+            watch.meters.forEach(meterRegistry::remove);
+        }
+        watch.meters.clear();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        synchronized (this) {
+            watches.values().forEach(watch -> watch.stopped = true);
+        }
+        scheduler.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "consul-long-poll-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Subscription<T extends ConsulUpdateEvent> {
+        private final String root;
+        private final ConsulUpdateEventFactory<T> factory;
+        private final LongPollSession session;
+        private volatile String lastDigest;
+
+        private Subscription(String root, ConsulUpdateEventFactory<T> factory, LongPollSession session) {
+            this.root = root;
+            this.factory = factory;
+            this.session = session;
+        }
+    }
+
+    private static final class Watch {
+        private final String root;
+        private final int waitTimeSecs;
+        private final int consulRetryTimeMs;
+        private final int onSuccessDelayTimeMs;
+        private final List<Meter> meters = new ArrayList<>();
+        private volatile List<Subscription<?>> subscribers = List.of();
+        private volatile boolean stopped;
+        private volatile long index;
+        private volatile long lastResponseMillis = System.currentTimeMillis();
+        private volatile long lastPollStartMillis;
+        private volatile int failures;
+
+        private Watch(String root, int waitTimeSecs, int consulRetryTimeMs, int onSuccessDelayTimeMs) {
+            this.root = root;
+            this.waitTimeSecs = waitTimeSecs;
+            this.consulRetryTimeMs = consulRetryTimeMs;
+            this.onSuccessDelayTimeMs = onSuccessDelayTimeMs;
+        }
     }
 }
@@ -12,12 +12,25 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class LongPollSession {
     private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private volatile Runnable onCancel;
 
     public void cancel() {
-        cancelled.set(true);
+        if (cancelled.compareAndSet(false, true) && onCancel != null) {
+            onCancel.run();
+        }
     }
 
     public boolean isCancelled() {
         return cancelled.get();
     }
+
+    /**
+     * Registers the action run once when the session is cancelled; runs it immediately if already cancelled.
+     */
+    void onCancel(Runnable action) {
+        onCancel = action;
+        if (cancelled.get()) {
+            action.run();
+        }
+    }
 }
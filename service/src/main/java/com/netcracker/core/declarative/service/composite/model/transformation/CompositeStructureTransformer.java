@@ -46,7 +46,7 @@ public class CompositeStructureTransformer {
                 .toList();
     }
 
-    private Namespace buildNamespace(String name, Map<String, String> attrs) {
+    static Namespace buildNamespace(String name, Map<String, String> attrs) {
         return new Namespace(
                 name,
                 parseEnum(CompositeRole.class, attrs.get("compositeRole"), "composite role"),
@@ -55,7 +55,7 @@ public class CompositeStructureTransformer {
         );
     }
 
-    private <T extends Enum<T>> T parseEnum(Class<T> enumClass, String value, String description) {
+    private static <T extends Enum<T>> T parseEnum(Class<T> enumClass, String value, String description) {
         if (value == null || value.isBlank()) {
             return null;
         }
@@ -79,7 +79,7 @@ public class CompositeStructureTransformer {
         return namespaces.stream()
                 .filter(entry -> entry.compositeRole() == CompositeRole.SATELLITE)
                 .collect(Collectors.groupingBy(
-                        this::resolveSatelliteKey,
+                        CompositeStructureTransformer::resolveSatelliteKey,
                         TreeMap::new,
                         Collectors.toList()))
                 .values().stream()
@@ -87,7 +87,7 @@ public class CompositeStructureTransformer {
                 .toList();
     }
 
-    private String resolveSatelliteKey(Namespace entry) {
+    static String resolveSatelliteKey(Namespace entry) {
         if (entry.blueGreenRole() == BlueGreenRole.CONTROLLER) {
             return entry.name();
         }
@@ -98,7 +98,7 @@ public class CompositeStructureTransformer {
         return entry.name();
     }
 
-    private Optional<CompositeStructure.NamespaceRoles> buildNamespaceRoles(Collection<Namespace> namespaceEntries) {
+    static Optional<CompositeStructure.NamespaceRoles> buildNamespaceRoles(Collection<Namespace> namespaceEntries) {
         if (namespaceEntries.isEmpty()) {
             return Optional.empty();
         }
@@ -118,7 +118,7 @@ public class CompositeStructureTransformer {
         return Optional.of(new CompositeStructure.NamespaceRoles(controller, origin, peer));
     }
 
-    private String findNamespaceByBlueGreenRole(Collection<Namespace> namespaces, BlueGreenRole blueGreenRole) {
+    private static String findNamespaceByBlueGreenRole(Collection<Namespace> namespaces, BlueGreenRole blueGreenRole) {
         return namespaces.stream()
                 .filter(entry -> entry.blueGreenRole() == blueGreenRole)
                 .map(Namespace::name)
@@ -126,8 +126,12 @@ public class CompositeStructureTransformer {
     }
 
     private static ParsedEntry getParsedEntry(GetValue gv) {
-        Matcher m = COMPOSITE_STRUCTURE_ENTRY_PATTERN.matcher(gv.getKey());
-        return m.matches() ? new ParsedEntry(m.group("namespace"), m.group("attribute"), gv.getDecodedValue()) : null;
+        return parseEntry(gv.getKey(), gv.getDecodedValue());
+    }
+
+    static ParsedEntry parseEntry(String key, String value) {
+        Matcher m = COMPOSITE_STRUCTURE_ENTRY_PATTERN.matcher(key);
+        return m.matches() ? new ParsedEntry(m.group("namespace"), m.group("attribute"), value) : null;
     }
 
     private static Collector<String, ?, String> toUniqueOrNull(String errorMessage) {
@@ -139,20 +143,19 @@ public class CompositeStructureTransformer {
         });
     }
 
-
-    private record ParsedEntry(String namespace, String attribute, String value) {
+    record ParsedEntry(String namespace, String attribute, String value) {
     }
 
-    private record Namespace(String name, CompositeRole compositeRole,
+    record Namespace(String name, CompositeRole compositeRole,
                              BlueGreenRole blueGreenRole, String controllerNamespace) {
     }
 
-    private enum CompositeRole {
+    enum CompositeRole {
         BASELINE,
         SATELLITE
     }
 
-    private enum BlueGreenRole {
+    enum BlueGreenRole {
         CONTROLLER,
         ORIGIN,
         PEER
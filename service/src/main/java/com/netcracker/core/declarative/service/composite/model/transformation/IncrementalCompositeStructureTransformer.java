@@ -0,0 +1,202 @@
+package com.netcracker.core.declarative.service.composite.model.transformation;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.model.CompositeStructure;
+import com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer.CompositeRole;
+import com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer.Namespace;
+import com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer.ParsedEntry;
+import jakarta.enterprise.context.ApplicationScoped;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer.buildNamespace;
+import static com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer.buildNamespaceRoles;
+import static com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer.parseEntry;
+import static com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer.resolveSatelliteKey;
+
+/**
+ * Incremental variant of {@link CompositeStructureTransformer} for the snapshots of the composite structure long-poll.
+ * <p>
+ * Keeps the parsed namespaces of every composite between snapshots. An entry is parsed again only if its
+ * ModifyIndex changed, and only the namespaces and satellite groups touched by changed or removed entries are
+ * rebuilt. The result is the same {@link CompositeStructure} as a full transformation of the snapshot.
+ * <p>
+ * If a snapshot can not be transformed, the kept model of the composite is dropped and the next snapshot is
+ * transformed in full.
+ */
+@ApplicationScoped
+@Slf4j
+public class IncrementalCompositeStructureTransformer {
+    private static final String NO_COMPOSITE_ID = "";
+
+    private final Map<String, Model> models = new ConcurrentHashMap<>();
+
+    /**
+     * @param compositeId the composite the snapshot belongs to, models of different composites are kept apart
+     * @param values      all structure entries of the composite
+     * @throws com.netcracker.core.declarative.service.composite.model.CompositeStructureParseException if an entry is invalid
+     */
+    public CompositeStructure transform(String compositeId, List<GetValue> values) {
+        Model model = models.computeIfAbsent(Objects.requireNonNullElse(compositeId, NO_COMPOSITE_ID), key -> new Model());
+        synchronized (model) {
+            try {
+                return model.apply(values);
+            } catch (RuntimeException e) {
+                model.clear();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Drops the kept model of the composite, e.g. after it is not watched anymore.
+     */
+    public void remove(String compositeId) {
+        models.remove(Objects.requireNonNullElse(compositeId, NO_COMPOSITE_ID));
+    }
+
+    private static final class Model {
+        // every known key, including keys not matching the structure pattern (with null namespace)
+        private final Map<String, Entry> entries = new HashMap<>();
+        private final Map<String, Map<String, String>> attributes = new HashMap<>();
+        private final Map<String, Namespace> namespaces = new HashMap<>();
+        private final Set<String> baseline = new HashSet<>();
+        private final Map<String, String> satelliteGroupOf = new HashMap<>();
+        private final Map<String, Set<String>> satelliteGroups = new HashMap<>();
+        private final TreeMap<String, CompositeStructure.NamespaceRoles> satelliteRoles = new TreeMap<>();
+        private CompositeStructure.NamespaceRoles baselineRoles;
+        private List<CompositeStructure.NamespaceRoles> satellites = List.of();
+
+        private CompositeStructure apply(List<GetValue> values) {
+            Set<String> dirtyNamespaces = new HashSet<>();
+            Set<String> seen = new HashSet<>(values.size() * 2);
+            for (GetValue value : values) {
+                String key = value.getKey();
+                seen.add(key);
+                Entry known = entries.get(key);
+                long modifyIndex = value.getModifyIndex();
+                if (known != null && modifyIndex > 0 && known.modifyIndex() == modifyIndex) {
+                    continue;
+                }
+                applyEntry(key, known, modifyIndex, value.getDecodedValue(), dirtyNamespaces);
+            }
+            if (seen.size() != entries.size()) {
+                removeMissing(seen, dirtyNamespaces);
+            }
+            if (dirtyNamespaces.isEmpty()) {
+                return new CompositeStructure(baselineRoles, satellites);
+            }
+
+            log.debug("Applying {} changed namespaces of {} known", dirtyNamespaces.size(), namespaces.size());
+            boolean baselineDirty = false;
+            Set<String> dirtyGroups = new HashSet<>();
+            for (String name : dirtyNamespaces) {
+                baselineDirty |= rebuildNamespace(name, dirtyGroups);
+            }
+            if (baselineDirty) {
+                baselineRoles = buildNamespaceRoles(baseline.stream().map(namespaces::get).toList()).orElse(null);
+            }
+            if (!dirtyGroups.isEmpty()) {
+                for (String group : dirtyGroups) {
+                    Set<String> members = satelliteGroups.getOrDefault(group, Set.of());
+                    buildNamespaceRoles(members.stream().map(namespaces::get).toList())
+                            .ifPresentOrElse(roles -> satelliteRoles.put(group, roles), () -> satelliteRoles.remove(group));
+                }
+                satellites = List.copyOf(satelliteRoles.values());
+            }
+            return new CompositeStructure(baselineRoles, satellites);
+        }
+
+        private void applyEntry(String key, Entry known, long modifyIndex, String value, Set<String> dirtyNamespaces) {
+            if (known == null) {
+                ParsedEntry parsed = parseEntry(key, value);
+                known = parsed == null
+                        ? new Entry(modifyIndex, null, null, null)
+                        : new Entry(modifyIndex, parsed.namespace(), parsed.attribute(), null);
+            }
+            entries.put(key, new Entry(modifyIndex, known.namespace(), known.attribute(), value));
+            if (known.namespace() == null || (known.value() != null && known.value().equals(value))) {
+                return;
+            }
+            attributes.computeIfAbsent(known.namespace(), name -> new HashMap<>()).put(known.attribute(), value);
+            dirtyNamespaces.add(known.namespace());
+        }
+
+        private void removeMissing(Set<String> seen, Set<String> dirtyNamespaces) {
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> removed = iterator.next();
+                if (seen.contains(removed.getKey())) {
+                    continue;
+                }
+                iterator.remove();
+                Entry entry = removed.getValue();
+                if (entry.namespace() == null) {
+                    continue;
+                }
+                Map<String, String> namespaceAttributes = attributes.get(entry.namespace());
+                if (namespaceAttributes != null) {
+                    namespaceAttributes.remove(entry.attribute());
+                    if (namespaceAttributes.isEmpty()) {
+                        attributes.remove(entry.namespace());
+                    }
+                }
+                dirtyNamespaces.add(entry.namespace());
+            }
+        }
+
+        /**
+         * Moves the namespace to the group of its current attributes.
+         *
+         * @return {@code true} if the baseline group changed
+         */
+        private boolean rebuildNamespace(String name, Set<String> dirtyGroups) {
+            boolean baselineDirty = baseline.remove(name);
+            String oldGroup = satelliteGroupOf.remove(name);
+            if (oldGroup != null) {
+                Set<String> members = satelliteGroups.get(oldGroup);
+                members.remove(name);
+                if (members.isEmpty()) {
+                    satelliteGroups.remove(oldGroup);
+                }
+                dirtyGroups.add(oldGroup);
+            }
+
+            Map<String, String> namespaceAttributes = attributes.get(name);
+            if (namespaceAttributes == null) {
+                namespaces.remove(name);
+                return baselineDirty;
+            }
+            Namespace namespace = buildNamespace(name, namespaceAttributes);
+            namespaces.put(name, namespace);
+            if (namespace.compositeRole() == CompositeRole.BASELINE) {
+                baseline.add(name);
+                return true;
+            }
+            if (namespace.compositeRole() == CompositeRole.SATELLITE) {
+                String group = resolveSatelliteKey(namespace);
+                satelliteGroupOf.put(name, group);
+                satelliteGroups.computeIfAbsent(group, key -> new HashSet<>()).add(name);
+                dirtyGroups.add(group);
+            }
+            return baselineDirty;
+        }
+
+        private void clear() {
+            entries.clear();
+            attributes.clear();
+            namespaces.clear();
+            baseline.clear();
+            satelliteGroupOf.clear();
+            satelliteGroups.clear();
+            satelliteRoles.clear();
+            baselineRoles = null;
+            satellites = List.of();
+        }
+    }
+
+    private record Entry(long modifyIndex, String namespace, String attribute, String value) {
+    }
+}
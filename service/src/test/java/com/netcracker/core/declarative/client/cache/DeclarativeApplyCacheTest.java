@@ -0,0 +1,78 @@
+package com.netcracker.core.declarative.client.cache;
+
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeclarativeApplyCacheTest {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void identicalRequestIsRecentlyAppliedWithinTtl() throws Exception {
+        DeclarativeApplyCache cache = new DeclarativeApplyCache(true, Duration.ofMinutes(1), 10, now::get);
+        String key = cache.keyOf(request("http://maas/api/declarations/v1/apply", "{\"a\":1}"));
+
+        assertFalse(cache.isRecentlyApplied(key));
+        cache.recordApplied(key);
+        assertTrue(cache.isRecentlyApplied(key));
+        assertEquals(key, cache.keyOf(request("http://maas/api/declarations/v1/apply", "{\"a\":1}")));
+    }
+
+    @Test
+    void differentBodyOrUrlProducesDifferentKey() throws Exception {
+        DeclarativeApplyCache cache = new DeclarativeApplyCache(true, Duration.ofMinutes(1), 10, now::get);
+        String key = cache.keyOf(request("http://maas/api/declarations/v1/apply", "{\"a\":1}"));
+
+        assertNotEquals(key, cache.keyOf(request("http://maas/api/declarations/v1/apply", "{\"a\":2}")));
+        assertNotEquals(key, cache.keyOf(request("http://dbaas/api/declarations/v1/apply", "{\"a\":1}")));
+    }
+
+    @Test
+    void entryExpiresAfterTtl() throws Exception {
+        DeclarativeApplyCache cache = new DeclarativeApplyCache(true, Duration.ofSeconds(10), 10, now::get);
+        String key = cache.keyOf(request("http://maas/api/declarations/v1/apply", "{}"));
+        cache.recordApplied(key);
+
+        now.addAndGet(Duration.ofSeconds(11).toNanos());
+
+        assertFalse(cache.isRecentlyApplied(key));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvictedWhenFull() {
+        DeclarativeApplyCache cache = new DeclarativeApplyCache(true, Duration.ofMinutes(1), 2, now::get);
+        cache.recordApplied("first");
+        cache.recordApplied("second");
+        assertTrue(cache.isRecentlyApplied("first"));
+
+        cache.recordApplied("third");
+
+        assertEquals(2, cache.size());
+        assertTrue(cache.isRecentlyApplied("first"));
+        assertFalse(cache.isRecentlyApplied("second"));
+        assertTrue(cache.isRecentlyApplied("third"));
+    }
+
+    @Test
+    void invalidateRemovesEntry() {
+        DeclarativeApplyCache cache = new DeclarativeApplyCache(true, Duration.ofMinutes(1), 10, now::get);
+        cache.recordApplied("key");
+
+        cache.invalidate("key");
+
+        assertFalse(cache.isRecentlyApplied("key"));
+    }
+
+    private static Request request(String url, String body) {
+        return new Request.Builder().url(url).post(RequestBody.create(body, JSON)).build();
+    }
+}
@@ -6,21 +6,31 @@ import io.fabric8.kubernetes.api.model.ConfigMapList;
 import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.dsl.*;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.cache.Store;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class ConfigMapClientTest {
@@ -154,6 +164,217 @@ class ConfigMapClientTest {
         assertFalse(applyResult.wasApplied().get());
     }
 
+    @Test
+    void shouldStoreDataHashAnnotation() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        ApplyResult applyResult = prepareConfigMapMocks(client, null);
+        Map<String, String> data = Map.of("k", "v");
+
+        new ConfigMapClient(client).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, data);
+
+        ConfigMap appliedConfigMap = applyResult.appliedConfigMapRef().get();
+        assertEquals(ConfigMapClient.dataHash(data, null),
+                appliedConfigMap.getMetadata().getAnnotations().get(ConfigMapClient.DATA_HASH_ANNOTATION));
+    }
+
+    @Test
+    void shouldSkipUpdateWhenDataHashMatches() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        Map<String, String> data = Map.of("k", "v");
+        ApplyResult applyResult = prepareConfigMapMocks(client, managedConfigMap(ConfigMapClient.dataHash(data, null)));
+
+        new ConfigMapClient(client).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, data);
+
+        assertFalse(applyResult.wasApplied().get());
+    }
+
+    @Test
+    void shouldUpdateWhenDataChanged() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        ApplyResult applyResult = prepareConfigMapMocks(client, managedConfigMap(ConfigMapClient.dataHash(Map.of("k", "old"), null)));
+
+        new ConfigMapClient(client).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, Map.of("k", "new"));
+
+        assertTrue(applyResult.wasApplied().get());
+    }
+
+    @Test
+    void shouldUpdateWhenManagedByLabelIsMissing() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        Map<String, String> data = Map.of("k", "v");
+        ConfigMap existingConfigMap = new ConfigMapBuilder()
+                .withNewMetadata()
+                .withAnnotations(Map.of(ConfigMapClient.DATA_HASH_ANNOTATION, ConfigMapClient.dataHash(data, null)))
+                .endMetadata()
+                .build();
+        ApplyResult applyResult = prepareConfigMapMocks(client, existingConfigMap);
+
+        new ConfigMapClient(client).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, data);
+
+        assertTrue(applyResult.wasApplied().get());
+    }
+
+    @Test
+    void dataHashDependsOnContentAndOwnerOnly() {
+        ConfigMap owner = new ConfigMapBuilder().withNewMetadata().withUid("uid-1").endMetadata().build();
+        ConfigMap otherOwner = new ConfigMapBuilder().withNewMetadata().withUid("uid-2").endMetadata().build();
+        Map<String, String> data = new LinkedHashMap<>();
+        data.put("a", "1");
+        data.put("b", "2");
+        Map<String, String> reordered = new LinkedHashMap<>();
+        reordered.put("b", "2");
+        reordered.put("a", "1");
+
+        assertEquals(ConfigMapClient.dataHash(data, owner), ConfigMapClient.dataHash(reordered, owner));
+        assertNotEquals(ConfigMapClient.dataHash(data, owner), ConfigMapClient.dataHash(data, otherOwner));
+        assertNotEquals(ConfigMapClient.dataHash(data, owner), ConfigMapClient.dataHash(Map.of("a", "1"), owner));
+    }
+
+    @Test
+    void shouldApplyBinaryDataAndIncludeItInDataHash() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        ApplyResult applyResult = prepareConfigMapMocks(client, null);
+        Map<String, String> data = Map.of("version", "1");
+        Map<String, String> binaryData = Map.of("data.gz", "H4sIAAAAAAAA");
+
+        new ConfigMapClient(client).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, data, binaryData, null);
+
+        ConfigMap appliedConfigMap = applyResult.appliedConfigMapRef().get();
+        assertEquals(data, appliedConfigMap.getData());
+        assertEquals(binaryData, appliedConfigMap.getBinaryData());
+        assertEquals(ConfigMapClient.dataHash(data, binaryData, null),
+                appliedConfigMap.getMetadata().getAnnotations().get(ConfigMapClient.DATA_HASH_ANNOTATION));
+        assertNotEquals(ConfigMapClient.dataHash(data, null), ConfigMapClient.dataHash(data, binaryData, null));
+        assertEquals(ConfigMapClient.dataHash(data, null), ConfigMapClient.dataHash(data, Map.of(), null));
+    }
+
+    private static ConfigMap managedConfigMap(String dataHash) {
+        return new ConfigMapBuilder()
+                .withNewMetadata()
+                .withLabels(Map.of(ConfigMapClient.LABEL_MANAGED_BY, ConfigMapClient.MANAGED_BY_CORE_OPERATOR,
+                        ConfigMapClient.LABEL_PART_OF, ConfigMapClient.PART_OF_CLOUD_CORE))
+                .withAnnotations(Map.of(ConfigMapClient.DATA_HASH_ANNOTATION, dataHash))
+                .withResourceVersion("7")
+                .endMetadata()
+                .build();
+    }
+
+    @Test
+    void shouldReadConfigMapFromSyncedInformer() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        ConfigMap cachedConfigMap = new ConfigMapBuilder()
+                .withNewMetadata()
+                .withLabels(Map.of(ConfigMapClient.LABEL_MANAGED_BY, "topology-operator"))
+                .endMetadata()
+                .build();
+        prepareConfigMapMocks(client, null);
+        SharedIndexInformer<ConfigMap> informer = prepareInformerMocks(client, cachedConfigMap);
+        ConfigMapClient configMapClient = new ConfigMapClient(client, KubernetesWriteRateLimiter.unlimited(), true);
+
+        assertFalse(configMapClient.shouldBeManagedByCoreOperator(CONFIG_MAP_NAME, NAMESPACE));
+        assertFalse(configMapClient.shouldBeManagedByCoreOperator(CONFIG_MAP_NAME, NAMESPACE));
+
+        verify(client.configMaps().inNamespace(NAMESPACE).withName(CONFIG_MAP_NAME), never()).get();
+        verify(client.configMaps().inNamespace(NAMESPACE), times(1)).withField("metadata.name", CONFIG_MAP_NAME);
+        verify(informer, times(2)).getStore();
+    }
+
+    @Test
+    void shouldReadConfigMapDirectlyWhenInformerLagsBehindOwnApply() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        Map<String, String> first = Map.of("k", "a");
+        Map<String, String> second = Map.of("k", "b");
+        prepareConfigMapMocks(client, managedConfigMap(ConfigMapClient.dataHash(second, null)));
+        // the informer still shows the first payload, although the second one was applied since
+        SharedIndexInformer<ConfigMap> informer = prepareInformerMocks(client, managedConfigMap(ConfigMapClient.dataHash(first, null)));
+        Resource<ConfigMap> applied = client.configMaps().inNamespace(NAMESPACE).resource(new ConfigMap());
+        when(applied.serverSideApply()).thenReturn(new ConfigMapBuilder().withNewMetadata().withResourceVersion("8").endMetadata().build());
+        ConfigMapClient configMapClient = new ConfigMapClient(client, KubernetesWriteRateLimiter.unlimited(), true);
+
+        configMapClient.createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, second);
+        configMapClient.createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, first);
+
+        verify(applied, times(2)).serverSideApply();
+        verify(client.configMaps().inNamespace(NAMESPACE).withName(CONFIG_MAP_NAME), times(1)).get();
+        verify(informer, times(2)).getStore();
+    }
+
+    @Test
+    void resourceVersionsAreComparedNumerically() {
+        assertTrue(ConfigMapClient.isAtLeast("10", "9"));
+        assertTrue(ConfigMapClient.isAtLeast("abc", "abc"));
+        assertFalse(ConfigMapClient.isAtLeast("9", "10"));
+        assertFalse(ConfigMapClient.isAtLeast(null, "10"));
+        assertFalse(ConfigMapClient.isAtLeast("abc", "10"));
+    }
+
+    @Test
+    void shouldFallBackToGetWhenInformerCanNotStart() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        prepareConfigMapMocks(client, null);
+        when(client.configMaps().inNamespace(NAMESPACE).withField("metadata.name", CONFIG_MAP_NAME))
+                .thenThrow(new IllegalStateException("forbidden"));
+        ConfigMapClient configMapClient = new ConfigMapClient(client, KubernetesWriteRateLimiter.unlimited(), true);
+
+        assertTrue(configMapClient.shouldBeManagedByCoreOperator(CONFIG_MAP_NAME, NAMESPACE));
+        assertTrue(configMapClient.shouldBeManagedByCoreOperator(CONFIG_MAP_NAME, NAMESPACE));
+
+        verify(client.configMaps().inNamespace(NAMESPACE).withName(CONFIG_MAP_NAME), times(2)).get();
+        verify(client.configMaps().inNamespace(NAMESPACE), times(1)).withField("metadata.name", CONFIG_MAP_NAME);
+        assertFalse(configMapClient.watchOwnership(CONFIG_MAP_NAME, NAMESPACE, managed -> {}));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void watchOwnershipShouldReportInformerEvents() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        prepareConfigMapMocks(client, null);
+        SharedIndexInformer<ConfigMap> informer = prepareInformerMocks(client, null);
+        ConfigMapClient configMapClient = new ConfigMapClient(client, KubernetesWriteRateLimiter.unlimited(), true);
+        AtomicReference<Boolean> managed = new AtomicReference<>();
+        Consumer<Boolean> listener = managed::set;
+
+        assertTrue(configMapClient.watchOwnership(CONFIG_MAP_NAME, NAMESPACE, listener));
+
+        ArgumentCaptor<ResourceEventHandler<ConfigMap>> handler = ArgumentCaptor.forClass(ResourceEventHandler.class);
+        verify(informer).addEventHandler(handler.capture());
+        ConfigMap foreign = new ConfigMapBuilder()
+                .withNewMetadata()
+                .withLabels(Map.of(ConfigMapClient.LABEL_MANAGED_BY, "topology-operator"))
+                .endMetadata()
+                .build();
+        handler.getValue().onUpdate(null, foreign);
+        assertEquals(Boolean.FALSE, managed.get());
+        handler.getValue().onDelete(foreign, false);
+        assertEquals(Boolean.TRUE, managed.get());
+    }
+
+    @Test
+    void closeShouldStopInformers() {
+        KubernetesClient client = mock(KubernetesClient.class);
+        prepareConfigMapMocks(client, null);
+        SharedIndexInformer<ConfigMap> informer = prepareInformerMocks(client, null);
+        ConfigMapClient configMapClient = new ConfigMapClient(client, KubernetesWriteRateLimiter.unlimited(), true);
+        configMapClient.shouldBeManagedByCoreOperator(CONFIG_MAP_NAME, NAMESPACE);
+
+        configMapClient.close();
+
+        verify(informer).stop();
+    }
+
+    @SuppressWarnings("unchecked")
+    private SharedIndexInformer<ConfigMap> prepareInformerMocks(KubernetesClient client, ConfigMap cachedConfigMap) {
+        FilterWatchListDeletable<ConfigMap, ConfigMapList, Resource<ConfigMap>> filtered = mock(FilterWatchListDeletable.class);
+        SharedIndexInformer<ConfigMap> informer = mock(SharedIndexInformer.class);
+        Store<ConfigMap> store = mock(Store.class);
+        when(client.configMaps().inNamespace(NAMESPACE).withField("metadata.name", CONFIG_MAP_NAME)).thenReturn(filtered);
+        when(filtered.inform()).thenReturn(informer);
+        when(informer.hasSynced()).thenReturn(true);
+        when(informer.getStore()).thenReturn(store);
+        when(store.getByKey(NAMESPACE + "/" + CONFIG_MAP_NAME)).thenReturn(cachedConfigMap);
+        return informer;
+    }
+
     @Test
     void shouldBeManagedByCoreOperator_returnsTrue_whenConfigMapIsNull() {
         KubernetesClient client = mock(KubernetesClient.class);
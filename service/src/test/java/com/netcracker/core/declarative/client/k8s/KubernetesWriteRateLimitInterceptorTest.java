@@ -0,0 +1,72 @@
+package com.netcracker.core.declarative.client.k8s;
+
+import io.fabric8.kubernetes.client.http.HttpRequest;
+import io.fabric8.kubernetes.client.http.HttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.netcracker.core.declarative.client.k8s.KubernetesWriteRateLimiter.Priority.HIGH;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class KubernetesWriteRateLimitInterceptorTest {
+    private static final String STATUS_PATH = "/apis/core.netcracker.com/v1/namespaces/test/composites/c/status";
+
+    private final AtomicLong now = new AtomicLong();
+    private final KubernetesWriteRateLimiter limiter =
+            new KubernetesWriteRateLimiter(true, 10, 1, 1, 0, Duration.ofMillis(500), now::get);
+    private final KubernetesWriteRateLimitInterceptor interceptor = new KubernetesWriteRateLimitInterceptor(limiter);
+
+    @Test
+    void statusWriteTakesPermit() {
+        interceptor.before(null, request("PATCH", STATUS_PATH), null);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.reserve(HIGH));
+    }
+
+    @Test
+    void otherRequestsAreNotLimited() {
+        interceptor.before(null, request("GET", STATUS_PATH), null);
+        interceptor.before(null, request("PATCH", "/api/v1/namespaces/test/configmaps/topology"), null);
+
+        assertEquals(0, limiter.reserve(HIGH));
+    }
+
+    @Test
+    void throttledStatusWriteSlowsDownLimiter() {
+        HttpResponse<?> response = mock(HttpResponse.class);
+        when(response.code()).thenReturn(429);
+        when(response.header("Retry-After")).thenReturn("3");
+
+        interceptor.after(request("PUT", STATUS_PATH), response, null);
+
+        assertEquals(5, limiter.getCurrentRate());
+        assertTrue(limiter.reserve(HIGH) >= TimeUnit.SECONDS.toNanos(3));
+    }
+
+    @Test
+    void successfulStatusWriteRestoresRate() {
+        limiter.onThrottled(Duration.ofSeconds(1));
+        HttpResponse<?> response = mock(HttpResponse.class);
+        when(response.code()).thenReturn(200);
+        when(response.isSuccessful()).thenReturn(true);
+
+        for (int i = 0; i < 20; i++) {
+            interceptor.after(request("PATCH", STATUS_PATH), response, null);
+        }
+
+        assertEquals(10, limiter.getCurrentRate());
+    }
+
+    private static HttpRequest request(String method, String path) {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.method()).thenReturn(method);
+        when(request.uri()).thenReturn(URI.create("https://kubernetes.default" + path));
+        return request;
+    }
+}
@@ -0,0 +1,80 @@
+package com.netcracker.core.declarative.client.k8s;
+
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.netcracker.core.declarative.client.k8s.KubernetesWriteRateLimiter.Priority.HIGH;
+import static com.netcracker.core.declarative.client.k8s.KubernetesWriteRateLimiter.Priority.LOW;
+import static org.junit.jupiter.api.Assertions.*;
+
+class KubernetesWriteRateLimiterTest {
+    private final AtomicLong now = new AtomicLong();
+
+    private KubernetesWriteRateLimiter limiter(double qps, int burst) {
+        return new KubernetesWriteRateLimiter(true, qps, 1, burst, 0.5, Duration.ofMillis(500), now::get);
+    }
+
+    @Test
+    void burstIsServedWithoutWaiting() {
+        KubernetesWriteRateLimiter limiter = limiter(10, 4);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, limiter.reserve(HIGH));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), limiter.reserve(HIGH));
+    }
+
+    @Test
+    void lowPriorityCannotUseReserveAndIsDroppedWhenWaitIsTooLong() {
+        KubernetesWriteRateLimiter limiter = limiter(2, 4);
+        assertEquals(0, limiter.reserve(LOW));
+        assertEquals(0, limiter.reserve(LOW));
+        // remaining two tokens are reserved for status writes
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), limiter.reserve(LOW));
+        assertEquals(-1, limiter.reserve(LOW));
+        assertTrue(limiter.reserve(HIGH) >= 0);
+    }
+
+    @Test
+    void throttlingHalvesRateAndPausesWrites() {
+        KubernetesWriteRateLimiter limiter = limiter(10, 4);
+        limiter.onThrottled(Duration.ofSeconds(3));
+
+        assertEquals(5, limiter.getCurrentRate());
+        assertTrue(limiter.reserve(HIGH) >= TimeUnit.SECONDS.toNanos(3));
+        assertEquals(-1, limiter.reserve(LOW));
+
+        for (int i = 0; i < 20; i++) {
+            limiter.onSuccess();
+        }
+        assertEquals(10, limiter.getCurrentRate());
+    }
+
+    @Test
+    void executeReportsThrottlingFromApiServer() {
+        KubernetesWriteRateLimiter limiter = limiter(10, 4);
+        KubernetesClientException throttled = new KubernetesClientException(new StatusBuilder()
+                .withCode(429)
+                .withNewDetails().withRetryAfterSeconds(2).endDetails()
+                .build());
+
+        assertThrows(KubernetesClientException.class, () -> limiter.execute(HIGH, () -> {
+            throw throttled;
+        }));
+        assertEquals(5, limiter.getCurrentRate());
+        assertTrue(limiter.reserve(HIGH) >= TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    void unlimitedNeverWaits() {
+        KubernetesWriteRateLimiter limiter = KubernetesWriteRateLimiter.unlimited();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.reserve(LOW));
+        }
+        assertEquals("ok", limiter.execute(HIGH, () -> "ok").orElseThrow());
+    }
+}
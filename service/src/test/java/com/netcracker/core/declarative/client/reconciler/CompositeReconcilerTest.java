@@ -1,20 +1,30 @@
 package com.netcracker.core.declarative.client.reconciler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netcracker.core.declarative.client.rest.ProcessStatus;
 import com.netcracker.core.declarative.resources.base.CoreCondition;
 import com.netcracker.core.declarative.resources.base.CoreResource;
+import com.netcracker.core.declarative.resources.base.Phase;
 import com.netcracker.core.declarative.resources.composite.Composite;
 import com.netcracker.core.declarative.service.CompositeConsulUpdater;
 import com.netcracker.core.declarative.service.CompositeSpec;
 import com.netcracker.core.declarative.service.CompositeCRHolder;
+import com.netcracker.core.declarative.service.CompositeMembershipSnapshot;
+import com.netcracker.core.declarative.service.CompositeNotificationOutbox;
 import com.netcracker.core.declarative.service.CompositeStructureUpdateNotifier;
 import com.netcracker.core.declarative.service.NoopCompositeConsulUpdaterImpl;
+import com.netcracker.core.declarative.service.XaasNotificationRegistry;
 import com.netcracker.core.declarative.service.composite.CompositeStructureWatcher;
 import com.netcracker.core.declarative.service.composite.TopologyConfigMapPublisher;
 import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
 import io.fabric8.kubernetes.api.model.runtime.RawExtension;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.dsl.NamespaceableResource;
+import io.javaoperatorsdk.operator.api.reconciler.UpdateControl;
+import io.javaoperatorsdk.operator.processing.event.EventHandler;
+import io.javaoperatorsdk.operator.processing.event.ResourceID;
+import io.javaoperatorsdk.operator.processing.event.source.EventSource;
 import okhttp3.Call;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -23,11 +33,15 @@ import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static com.netcracker.core.declarative.client.reconciler.CompositeReconciler.DBAAS_NAME;
 import static com.netcracker.core.declarative.client.reconciler.CompositeReconciler.MAAS_NAME;
@@ -35,10 +49,16 @@ import static com.netcracker.core.declarative.client.reconciler.CompositeReconci
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class CompositeReconcilerTest {
@@ -270,6 +290,306 @@ class CompositeReconcilerTest {
         assertEquals("[MAAS-0600][47f79f65-82a0-4401-8321-d31abb3bd07d] test message", maaSUpdated.getReason());
     }
 
+    @Test
+    void reconcileInternal_publishInProgress_doesNotBlock() throws Exception {
+        CompositeConsulUpdater compositeConsulUpdater = mock(CompositeConsulUpdater.class);
+        TopologyConfigMapPublisher publisher = mock(TopologyConfigMapPublisher.class);
+        CompletableFuture<Void> publish = new CompletableFuture<>();
+        when(publisher.publish(any(), any())).thenReturn(publish);
+
+        CompositeReconciler compositeReconciler = new CompositeReconciler(
+                mock(KubernetesClient.class),
+                compositeConsulUpdater,
+                List.of(),
+                mock(CompositeStructureWatcher.class),
+                new CompositeCRHolder(),
+                publisher
+        );
+        EventHandler eventHandler = mock(EventHandler.class);
+        EventSource<?, Composite> publishEventSource = compositeReconciler.prepareEventSources(null).getFirst();
+        publishEventSource.setEventHandler(eventHandler);
+        publishEventSource.start();
+
+        Composite composite = new Composite();
+        composite.setSpec(new RawExtension(new CompositeSpec("C", "O", "P", new CompositeSpec.CompositeSpecBaseline("BC", "BS", "BP"))));
+
+        UpdateControl<Composite> first = compositeReconciler.reconcileInternal(composite);
+        assertTrue(first.isPatchStatus());
+        assertEquals(Phase.WAITING_FOR_DEPENDS, composite.getStatus().getPhase());
+        CoreCondition inProgress = findConditionByType(composite, "CompositeStructureUpdated");
+        assertNotNull(inProgress);
+        assertEquals(ProcessStatus.IN_PROGRESS, inProgress.getState());
+        assertFalse(inProgress.getStatus());
+
+        UpdateControl<Composite> second = compositeReconciler.reconcileInternal(composite);
+        assertTrue(second.isNoUpdate());
+        assertFalse(second.getScheduleDelay().isPresent());
+        verify(compositeConsulUpdater, never()).updateCompositeStructureInConsul(any());
+        verify(eventHandler, never()).handleEvent(any());
+
+        publish.complete(null);
+        verify(eventHandler).handleEvent(argThat(event -> ResourceID.fromResource(composite).equals(event.getRelatedCustomResourceID())));
+        compositeReconciler.reconcileInternal(composite);
+
+        assertTrue(findConditionByType(composite, "CompositeStructureUpdated").getStatus());
+        assertEquals(Phase.UPDATED_PHASE, composite.getStatus().getPhase());
+        verify(publisher, times(1)).publish(any(), any());
+        verify(compositeConsulUpdater).updateCompositeStructureInConsul(any());
+    }
+
+    @Test
+    void reconcileInternal_fail_publish() throws Exception {
+        KubernetesClient kubernetesClient = mock(KubernetesClient.class);
+        NamespaceableResource namespaceableResource = mock(NamespaceableResource.class);
+        when(namespaceableResource.updateStatus()).thenReturn(mock(CoreResource.class));
+        when(kubernetesClient.resource(any(HasMetadata.class))).thenReturn(namespaceableResource);
+
+        TopologyConfigMapPublisher publisher = mock(TopologyConfigMapPublisher.class);
+        when(publisher.publish(any(), any())).thenReturn(CompletableFuture.failedFuture(new RuntimeException("apiserver unavailable")));
+
+        CompositeReconciler compositeReconciler = new CompositeReconciler(
+                kubernetesClient,
+                mock(CompositeConsulUpdater.class),
+                List.of(),
+                mock(CompositeStructureWatcher.class),
+                new CompositeCRHolder(),
+                publisher
+        );
+
+        Composite composite = new Composite();
+        composite.setSpec(new RawExtension(new CompositeSpec("C", "O", "P", new CompositeSpec.CompositeSpecBaseline("BC", "BS", "BP"))));
+        compositeReconciler.reconcileInternal(composite);
+
+        CoreCondition compositeStructureUpdated = findConditionByType(composite, "CompositeStructureUpdated");
+        assertNotNull(compositeStructureUpdated);
+        assertFalse(compositeStructureUpdated.getStatus());
+        assertEquals("apiserver unavailable", compositeStructureUpdated.getReason());
+        assertEquals(Phase.BACKING_OFF, composite.getStatus().getPhase());
+    }
+
+    @Test
+    void reconcileInternal_notifiesXaasesConcurrently() throws Exception {
+        CompositeReconciler compositeReconciler = new CompositeReconciler(
+                mock(KubernetesClient.class),
+                mock(CompositeConsulUpdater.class),
+                List.of(
+                        notifier(MAAS_NAME, mockSlowClient(buildOkHttpResponse(204, null), 700)),
+                        notifier(DBAAS_NAME, mockSlowClient(buildOkHttpResponse(204, null), 700))
+                ),
+                mock(CompositeStructureWatcher.class),
+                new CompositeCRHolder(),
+                mockPublisher()
+        );
+
+        Composite composite = new Composite();
+        composite.setSpec(new RawExtension(new CompositeSpec("C", "O", "P", new CompositeSpec.CompositeSpecBaseline("BC", "BS", "BP"))));
+        long started = System.nanoTime();
+        compositeReconciler.reconcileInternal(composite);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertTrue(findConditionByType(composite, XAAS_UPDATED_STEP_NAME.apply(MAAS_NAME)).getStatus());
+        assertTrue(findConditionByType(composite, XAAS_UPDATED_STEP_NAME.apply(DBAAS_NAME)).getStatus());
+        assertTrue(elapsedMs < 1400, "notifications took " + elapsedMs + " ms");
+    }
+
+    @Test
+    void reconcileInternal_slowXaasFailsOnlyItsOwnStep() throws Exception {
+        KubernetesClient kubernetesClient = mock(KubernetesClient.class);
+        NamespaceableResource namespaceableResource = mock(NamespaceableResource.class);
+        when(namespaceableResource.updateStatus()).thenReturn(mock(CoreResource.class));
+        when(kubernetesClient.resource(any(HasMetadata.class))).thenReturn(namespaceableResource);
+
+        CompositeReconciler compositeReconciler = new CompositeReconciler(
+                kubernetesClient,
+                mock(CompositeConsulUpdater.class),
+                List.of(
+                        notifier(MAAS_NAME, mockSlowClient(buildOkHttpResponse(204, null), 2000)),
+                        notifier(DBAAS_NAME, mockClient(buildOkHttpResponse(204, null)))
+                ),
+                mock(CompositeStructureWatcher.class),
+                new CompositeCRHolder(),
+                mockPublisher()
+        );
+        compositeReconciler.notifyDeadlineMs = 200;
+
+        Composite composite = new Composite();
+        composite.setSpec(new RawExtension(new CompositeSpec("C", "O", "P", new CompositeSpec.CompositeSpecBaseline("BC", "BS", "BP"))));
+        compositeReconciler.reconcileInternal(composite);
+
+        CoreCondition maaSUpdated = findConditionByType(composite, "MaaSUpdated");
+        assertNotNull(maaSUpdated);
+        assertFalse(maaSUpdated.getStatus());
+        assertEquals("no response within the notification deadline", maaSUpdated.getReason());
+        assertTrue(findConditionByType(composite, "DBaaSUpdated").getStatus());
+        assertEquals(Phase.BACKING_OFF, composite.getStatus().getPhase());
+    }
+
+    @Test
+    void reconcileInternal_doesNotResendNotificationStillInFlight() throws Exception {
+        KubernetesClient kubernetesClient = mock(KubernetesClient.class);
+        NamespaceableResource namespaceableResource = mock(NamespaceableResource.class);
+        when(namespaceableResource.updateStatus()).thenReturn(mock(CoreResource.class));
+        when(kubernetesClient.resource(any(HasMetadata.class))).thenReturn(namespaceableResource);
+        OkHttpClient client = mockSlowClient(buildOkHttpResponse(204, null), 1000);
+
+        CompositeReconciler compositeReconciler = new CompositeReconciler(
+                kubernetesClient,
+                mock(CompositeConsulUpdater.class),
+                List.of(notifier(MAAS_NAME, client)),
+                mock(CompositeStructureWatcher.class),
+                new CompositeCRHolder(),
+                mockPublisher()
+        );
+        compositeReconciler.notifyDeadlineMs = 200;
+
+        Composite composite = new Composite();
+        composite.setSpec(new RawExtension(new CompositeSpec("C", "O", "P", new CompositeSpec.CompositeSpecBaseline("BC", "BS", "BP"))));
+        compositeReconciler.reconcileInternal(composite);
+        assertFalse(findConditionByType(composite, "MaaSUpdated").getStatus());
+
+        compositeReconciler.notifyDeadlineMs = 5000;
+        compositeReconciler.reconcileInternal(composite);
+
+        assertTrue(findConditionByType(composite, "MaaSUpdated").getStatus());
+        verify(client, times(1)).newCall(any());
+    }
+
+    @Test
+    void reconcileInternal_skipsXaasWithAcknowledgedMembers() throws Exception {
+        OkHttpClient client = mockClient(buildOkHttpResponse(204, null));
+        CompositeConsulUpdater compositeConsulUpdater = mock(CompositeConsulUpdater.class);
+        when(compositeConsulUpdater.getCompositeMembers(any())).thenReturn(Set.of("O", "P"));
+
+        CompositeReconciler compositeReconciler = new CompositeReconciler(
+                mock(KubernetesClient.class),
+                compositeConsulUpdater,
+                List.of(notifier(MAAS_NAME, client)),
+                mock(CompositeStructureWatcher.class),
+                new CompositeCRHolder(),
+                mockPublisher()
+        );
+
+        Composite composite = new Composite();
+        composite.setSpec(new RawExtension(new CompositeSpec("C", "O", "P", new CompositeSpec.CompositeSpecBaseline("BC", "BS", "BP"))));
+        compositeReconciler.reconcileInternal(composite);
+        assertNotNull(composite.getStatus().getAdditionalProperties().get(XaasNotificationRegistry.STATUS_PROPERTY));
+
+        // conditions are cleared e.g. on operator upgrade, the acknowledged members are restored from status
+        composite.getStatus().getConditions().clear();
+        CompositeReconciler restarted = new CompositeReconciler(
+                mock(KubernetesClient.class),
+                compositeConsulUpdater,
+                List.of(notifier(MAAS_NAME, client)),
+                mock(CompositeStructureWatcher.class),
+                new CompositeCRHolder(),
+                mockPublisher()
+        );
+        restarted.reconcileInternal(composite);
+
+        assertTrue(findConditionByType(composite, XAAS_UPDATED_STEP_NAME.apply(MAAS_NAME)).getStatus());
+        verify(client, times(1)).newCall(any());
+
+        when(compositeConsulUpdater.getCompositeMembers(any())).thenReturn(Set.of("O", "P", "S"));
+        composite.getStatus().getConditions().clear();
+        restarted.reconcileInternal(composite);
+
+        verify(client, times(2)).newCall(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void reconcileInternal_queuesNotificationsToOutbox() throws Exception {
+        OkHttpClient client = mockClient(buildOkHttpResponse(204, null));
+        CompositeConsulUpdater compositeConsulUpdater = mock(CompositeConsulUpdater.class);
+        when(compositeConsulUpdater.getCompositeMembers(any())).thenReturn(Set.of("O", "P"));
+        CompositeNotificationOutbox outbox = mock(CompositeNotificationOutbox.class);
+        when(outbox.isEnabled()).thenReturn(true);
+        XaasNotificationRegistry registry = new XaasNotificationRegistry();
+
+        CompositeReconciler compositeReconciler = new CompositeReconciler(
+                mock(KubernetesClient.class),
+                compositeConsulUpdater,
+                List.of(notifier(MAAS_NAME, client), notifier(DBAAS_NAME, client)),
+                mock(CompositeStructureWatcher.class),
+                new CompositeCRHolder(),
+                mockPublisher()
+        );
+        compositeReconciler.setNotificationRegistry(registry);
+        compositeReconciler.setNotificationOutbox(outbox);
+        ArgumentCaptor<Consumer<String>> deliveryListener = ArgumentCaptor.forClass(Consumer.class);
+        verify(outbox).addDeliveryListener(deliveryListener.capture());
+        EventHandler eventHandler = mock(EventHandler.class);
+        EventSource<?, Composite> reconcileTrigger = compositeReconciler.prepareEventSources(null).getFirst();
+        reconcileTrigger.setEventHandler(eventHandler);
+        reconcileTrigger.start();
+
+        Composite composite = new Composite();
+        composite.setSpec(new RawExtension(new CompositeSpec("C", "O", "P", new CompositeSpec.CompositeSpecBaseline("BC", "BS", "BP"))));
+        compositeReconciler.reconcileInternal(composite);
+
+        verify(outbox).enqueue(any(), eq(Set.of("O", "P")));
+        verify(client, never()).newCall(any());
+        CoreCondition queued = findConditionByType(composite, XAAS_UPDATED_STEP_NAME.apply(MAAS_NAME));
+        assertEquals(ProcessStatus.IN_PROGRESS, queued.getState());
+        assertFalse(queued.getStatus());
+        assertEquals(ProcessStatus.IN_PROGRESS, findConditionByType(composite, XAAS_UPDATED_STEP_NAME.apply(DBAAS_NAME)).getState());
+        assertEquals(Phase.WAITING_FOR_DEPENDS, composite.getStatus().getPhase());
+
+        // the outbox delivers to MaaS only
+        registry.acknowledge(MAAS_NAME, "BS", Set.of("O", "P"));
+        deliveryListener.getValue().accept("BS");
+        verify(eventHandler).handleEvent(argThat(event -> ResourceID.fromResource(composite).equals(event.getRelatedCustomResourceID())));
+        compositeReconciler.reconcileInternal(composite);
+
+        assertTrue(findConditionByType(composite, XAAS_UPDATED_STEP_NAME.apply(MAAS_NAME)).getStatus());
+        assertFalse(findConditionByType(composite, XAAS_UPDATED_STEP_NAME.apply(DBAAS_NAME)).getStatus());
+        assertEquals(Phase.WAITING_FOR_DEPENDS, composite.getStatus().getPhase());
+
+        registry.acknowledge(DBAAS_NAME, "BS", Set.of("O", "P"));
+        compositeReconciler.reconcileInternal(composite);
+
+        assertTrue(findConditionByType(composite, XAAS_UPDATED_STEP_NAME.apply(DBAAS_NAME)).getStatus());
+        assertEquals(Phase.UPDATED_PHASE, composite.getStatus().getPhase());
+    }
+
+    @Test
+    void cleanup_stopsWatcherWhenLastCompositeCRIsDeleted() {
+        CompositeStructureWatcher watcher = mock(CompositeStructureWatcher.class);
+        CompositeCRHolder holder = new CompositeCRHolder();
+        CompositeReconciler compositeReconciler = new CompositeReconciler(
+                mock(KubernetesClient.class),
+                mock(CompositeConsulUpdater.class),
+                List.of(),
+                watcher,
+                holder,
+                mockPublisher()
+        );
+        CompositeMembershipSnapshot snapshot = new CompositeMembershipSnapshot();
+        snapshot.update("BO", 10, Set.of("BO", "sat-1", "sat-2"));
+        compositeReconciler.setMembershipSnapshot(snapshot);
+        Composite first = satellite("sat-1");
+        Composite second = satellite("sat-2");
+        compositeReconciler.onReconciliationCompleted(first);
+        compositeReconciler.onReconciliationCompleted(second);
+        verify(watcher, times(2)).start("BO");
+
+        assertTrue(compositeReconciler.cleanup(first, null).isRemoveFinalizer());
+        verify(watcher, never()).stop(any());
+        assertNotNull(holder.get("BO"));
+
+        compositeReconciler.cleanup(second, null);
+        verify(watcher).stop("BO");
+        assertNull(holder.get("BO"));
+        assertEquals(0, snapshot.getIndex("BO"));
+    }
+
+    private static Composite satellite(String namespace) {
+        Composite composite = new Composite();
+        composite.setMetadata(new ObjectMetaBuilder().withName("composite").withNamespace(namespace).build());
+        composite.setSpec(new RawExtension(new CompositeSpec(null, namespace, null, new CompositeSpec.CompositeSpecBaseline("BC", "BO", "BP"))));
+        return composite;
+    }
+
     @Test
     void fromResource() {
         Composite c = new Composite();
@@ -298,6 +618,17 @@ class CompositeReconcilerTest {
         return client;
     }
 
+    private static OkHttpClient mockSlowClient(Response response, long delayMs) throws IOException {
+        OkHttpClient client = mock(OkHttpClient.class);
+        Call call = mock(Call.class);
+        when(client.newCall(any())).thenReturn(call);
+        when(call.execute()).thenAnswer(invocation -> {
+            Thread.sleep(delayMs);
+            return response;
+        });
+        return client;
+    }
+
     private static OkHttpClient mockClientThrowing(Throwable throwable) throws IOException {
         OkHttpClient client = mock(OkHttpClient.class);
         Call call = mock(Call.class);
@@ -1,33 +1,35 @@
 package com.netcracker.core.declarative.client.reconciler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import jakarta.enterprise.inject.Instance;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
-import com.netcracker.cloud.consul.provider.common.TokenStorage;
+import com.netcracker.core.declarative.client.rest.auth.M2MTokenProvider;
+import com.netcracker.core.declarative.client.rest.pool.HttpClientResources;
 import com.netcracker.core.declarative.service.*;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import static com.netcracker.core.declarative.client.reconciler.CompositeReconciler.DBAAS_NAME;
 import static com.netcracker.core.declarative.client.reconciler.CompositeReconciler.MAAS_NAME;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 class ConfigurationTest {
 
     @Test
     void compositeConsulUpdater_consul_enabled() {
         Configuration configuration = new Configuration();
-        Instance<TokenStorage> tokenStorageInstance = mock(Instance.class);
-        TokenStorage tokenStorage = mock(TokenStorage.class);
-        when(tokenStorageInstance.get()).thenReturn(tokenStorage);
         CompositeConsulUpdater compositeConsulUpdater = configuration.compositeConsulUpdater(
                 "test-namespace",
                 true,
-                mock(ConsulClientFactory.class),
-                tokenStorageInstance
+                new PooledConsulClient(mock(ConsulClientFactory.class), () -> "token", 0),
+                "cas",
+                3,
+                new SimpleMeterRegistry(),
+                new CompositeMembershipSnapshot()
         );
         assertInstanceOf(CompositeConsulUpdaterImpl.class, compositeConsulUpdater);
     }
@@ -39,6 +41,9 @@ class ConfigurationTest {
                 "test-namespace",
                 false,
                 null,
+                "legacy",
+                3,
+                null,
                 null
         );
         assertInstanceOf(NoopCompositeConsulUpdaterImpl.class, compositeConsulUpdater);
@@ -52,7 +57,9 @@ class ConfigurationTest {
                 List.of("maas", "dbaas"),
                 1000L,
                 2000L,
-                new ObjectMapper()
+                new ObjectMapper(),
+                httpClientResources(),
+                mock(M2MTokenProvider.class)
         );
         assertEquals(2, compositeStructureUpdateNotifiers.size());
         assertTrue(compositeStructureUpdateNotifiers.stream().anyMatch(n -> MAAS_NAME.equals(n.getXaasName())));
@@ -67,7 +74,9 @@ class ConfigurationTest {
                 List.of(),
                 1000L,
                 2000L,
-                new ObjectMapper()
+                new ObjectMapper(),
+                httpClientResources(),
+                mock(M2MTokenProvider.class)
         );
         assertEquals(0, compositeStructureUpdateNotifiers.size());
     }
@@ -80,7 +89,9 @@ class ConfigurationTest {
                 List.of("maas"),
                 1000L,
                 2000L,
-                new ObjectMapper()
+                new ObjectMapper(),
+                httpClientResources(),
+                mock(M2MTokenProvider.class)
         );
         assertEquals(1, compositeStructureUpdateNotifiers.size());
         assertTrue(compositeStructureUpdateNotifiers.stream().anyMatch(n -> MAAS_NAME.equals(n.getXaasName())));
@@ -94,7 +105,9 @@ class ConfigurationTest {
                 List.of("MaAs", "DbAaS"),
                 1000L,
                 2000L,
-                new ObjectMapper()
+                new ObjectMapper(),
+                httpClientResources(),
+                mock(M2MTokenProvider.class)
         );
         assertEquals(2, compositeStructureUpdateNotifiers.size());
         assertTrue(compositeStructureUpdateNotifiers.stream().anyMatch(n -> MAAS_NAME.equals(n.getXaasName())));
@@ -109,9 +122,15 @@ class ConfigurationTest {
                 List.of("keymanager"),
                 1000L,
                 2000L,
-                new ObjectMapper()
+                new ObjectMapper(),
+                httpClientResources(),
+                mock(M2MTokenProvider.class)
         );
         assertEquals(1, compositeStructureUpdateNotifiers.size());
         assertEquals("KeyManager", compositeStructureUpdateNotifiers.getFirst().getXaasName());
     }
+
+    private static HttpClientResources httpClientResources() {
+        return new HttpClientResources(5, Duration.ofMinutes(5), 64, 16, Duration.ofSeconds(30), Optional.empty());
+    }
 }
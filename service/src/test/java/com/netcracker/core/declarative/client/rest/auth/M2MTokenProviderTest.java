@@ -0,0 +1,180 @@
+package com.netcracker.core.declarative.client.rest.auth;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class M2MTokenProviderTest {
+    private final MutableClock clock = new MutableClock(Instant.parse("2026-01-01T00:00:00Z"));
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private M2MTokenProvider provider;
+
+    @AfterEach
+    void tearDown() {
+        if (provider != null) {
+            provider.stop();
+        }
+    }
+
+    @Test
+    void tokenIsFetchedOnceAndCached() {
+        provider = provider(() -> "token-" + fetches.incrementAndGet());
+
+        assertThat(provider.get()).isEqualTo("token-1");
+        assertThat(provider.get()).isEqualTo("token-1");
+        assertThat(fetches.get()).isEqualTo(1);
+        assertThat(registry.find("core.operator.m2m.token.refresh").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void tokenIsRefreshedInBackgroundBeforeJwtExpiry() {
+        Instant expiry = clock.instant().plusSeconds(120);
+        provider = provider(() -> jwt(expiry, fetches.incrementAndGet()));
+        String first = provider.get();
+
+        clock.advance(Duration.ofSeconds(61));
+
+        // still valid, so the cached token is returned while a refresh runs in the background
+        assertThat(provider.get()).isEqualTo(first);
+        await().untilAsserted(() -> assertThat(provider.get()).isNotEqualTo(first));
+        assertThat(fetches.get()).isEqualTo(2);
+    }
+
+    @Test
+    void expiredTokenIsFetchedSynchronously() {
+        provider = provider(() -> "token-" + fetches.incrementAndGet());
+        provider.get();
+
+        clock.advance(Duration.ofMinutes(6));
+
+        assertThat(provider.get()).isEqualTo("token-2");
+    }
+
+    @Test
+    void concurrentCallersShareSingleFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        provider = provider(() -> {
+            fetches.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "token";
+        });
+
+        List<CompletableFuture<String>> callers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            callers.add(CompletableFuture.supplyAsync(provider));
+        }
+        release.countDown();
+
+        for (CompletableFuture<String> caller : callers) {
+            assertThat(caller.get(5, TimeUnit.SECONDS)).isEqualTo("token");
+        }
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test
+    void scheduledRefreshIsSkippedWhileTokenIsFresh() {
+        provider = provider(() -> "token-" + fetches.incrementAndGet());
+        provider.get();
+
+        provider.scheduledRefresh();
+
+        assertThat(fetches.get()).isEqualTo(1);
+    }
+
+    @Test
+    void onlyLatestFetchKeepsRefreshScheduled() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        provider = provider(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("idp is down");
+            }
+            return "token-" + fetches.incrementAndGet();
+        });
+        assertThatThrownBy(provider::get).isInstanceOf(IllegalStateException.class);
+        await().until(() -> provider.scheduledRefresh != null);
+        ScheduledFuture<?> retry = provider.scheduledRefresh;
+
+        // a caller fetches the token within the retry window
+        assertThat(provider.refresh().get(5, TimeUnit.SECONDS).value()).isEqualTo("token-1");
+
+        await().untilAsserted(() -> {
+            assertThat(retry.isCancelled()).isTrue();
+            assertThat(provider.scheduledRefresh).isNotSameAs(retry);
+        });
+        assertThat(provider.scheduledRefresh.isDone()).isFalse();
+    }
+
+    @Test
+    void failedFetchIsCounted() {
+        provider = provider(() -> {
+            throw new IllegalStateException("idp is down");
+        });
+
+        assertThatThrownBy(provider::get).isInstanceOf(IllegalStateException.class).hasMessage("idp is down");
+        assertThat(registry.find("core.operator.m2m.token.refresh.failures").counter().count()).isEqualTo(1);
+    }
+
+    private M2MTokenProvider provider(Supplier<String> fetcher) {
+        return new M2MTokenProvider(fetcher, Duration.ofSeconds(60), Duration.ofMinutes(5), clock, registry);
+    }
+
+    private static String jwt(Instant exp, int serial) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        String header = encoder.encodeToString("{\"alg\":\"none\"}".getBytes(StandardCharsets.UTF_8));
+        String payload = encoder.encodeToString("{\"exp\":%d,\"jti\":\"%d\"}".formatted(exp.getEpochSecond(), serial)
+                .getBytes(StandardCharsets.UTF_8));
+        return header + "." + payload + ".";
+    }
+
+    private static class MutableClock extends Clock {
+        private volatile Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
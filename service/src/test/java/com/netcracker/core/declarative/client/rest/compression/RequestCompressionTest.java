@@ -0,0 +1,103 @@
+package com.netcracker.core.declarative.client.rest.compression;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.GzipSource;
+import okio.Okio;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCompressionTest {
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final String LARGE_BODY = "{\"routes\":[" + "{\"path\":\"/api/v1/route\"},".repeat(200) + "{}]}";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RequestCompression compression = new RequestCompression(Optional.of(List.of("Mesh")), 1024, registry);
+    private final List<Request> sent = new ArrayList<>();
+
+    @Test
+    void largeBodyIsGzippedForEnabledBackend() throws IOException {
+        OkHttpClient client = client("mesh", 200);
+
+        execute(client, LARGE_BODY);
+
+        Request request = sent.getFirst();
+        assertThat(request.header("Content-Encoding")).isEqualTo("gzip");
+        assertThat(gunzip(request.body())).isEqualTo(LARGE_BODY);
+        double uncompressed = registry.get("core.operator.http.compression.uncompressed.bytes").tag("backend", "mesh").counter().count();
+        double compressed = registry.get("core.operator.http.compression.compressed.bytes").tag("backend", "mesh").counter().count();
+        assertThat(uncompressed).isEqualTo(LARGE_BODY.length());
+        assertThat(compressed).isLessThan(uncompressed);
+    }
+
+    @Test
+    void smallBodyIsSentAsIs() throws IOException {
+        execute(client("mesh", 200), "{}");
+
+        assertThat(sent.getFirst().header("Content-Encoding")).isNull();
+    }
+
+    @Test
+    void backendWithoutCompressionIsNotAffected() throws IOException {
+        execute(client("maas", 200), LARGE_BODY);
+
+        assertThat(sent.getFirst().header("Content-Encoding")).isNull();
+    }
+
+    @Test
+    void unsupportedMediaTypeFallsBackToPlainBodyAndDisablesCompression() throws IOException {
+        OkHttpClient client = client("mesh", 415, 200, 200);
+
+        try (Response response = execute(client, LARGE_BODY)) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+        execute(client, LARGE_BODY);
+
+        assertThat(sent).hasSize(3);
+        assertThat(sent.get(0).header("Content-Encoding")).isEqualTo("gzip");
+        assertThat(sent.get(1).header("Content-Encoding")).isNull();
+        assertThat(sent.get(2).header("Content-Encoding")).isNull();
+    }
+
+    private OkHttpClient client(String backend, int... codes) {
+        OkHttpClient.Builder builder = compression.apply(new OkHttpClient.Builder(), backend);
+        return builder.addInterceptor(chain -> {
+            sent.add(chain.request());
+            int code = codes[Math.min(sent.size(), codes.length) - 1];
+            return new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .message("stub")
+                    .code(code)
+                    .body(ResponseBody.create("", JSON))
+                    .build();
+        }).build();
+    }
+
+    private static Response execute(OkHttpClient client, String body) throws IOException {
+        Request request = new Request.Builder()
+                .url("http://mesh:8080/api/v3/apply-config")
+                .post(RequestBody.create(body, JSON))
+                .build();
+        return client.newCall(request).execute();
+    }
+
+    private static String gunzip(RequestBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        return Okio.buffer(new GzipSource(buffer)).readUtf8();
+    }
+}
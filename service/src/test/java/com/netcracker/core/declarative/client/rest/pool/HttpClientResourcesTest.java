@@ -0,0 +1,53 @@
+package com.netcracker.core.declarative.client.rest.pool;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpClientResourcesTest {
+
+    private final HttpClientResources resources = new HttpClientResources(
+            5, Duration.ofMinutes(5), 64, 8, Duration.ofSeconds(30), Optional.of(List.of("Mesh")));
+
+    @Test
+    void clientsShareConnectionPoolAndDispatcher() {
+        OkHttpClient maas = resources.share(new OkHttpClient(), "maas").build();
+        OkHttpClient dbaas = resources.share(new OkHttpClient(), "dbaas").build();
+
+        assertSame(resources.getConnectionPool(), maas.connectionPool());
+        assertSame(maas.connectionPool(), dbaas.connectionPool());
+        assertSame(resources.getDispatcher(), maas.dispatcher());
+        assertSame(maas.dispatcher(), dbaas.dispatcher());
+        assertEquals(8, resources.getDispatcher().getMaxRequestsPerHost());
+        assertEquals(64, resources.getDispatcher().getMaxRequests());
+    }
+
+    @Test
+    void h2cIsUsedOnlyForConfiguredBackends() {
+        OkHttpClient mesh = resources.share(new OkHttpClient(), "mesh").build();
+        OkHttpClient maas = resources.share(new OkHttpClient(), "maas").build();
+
+        assertEquals(List.of(Protocol.H2_PRIOR_KNOWLEDGE), mesh.protocols());
+        assertTrue(maas.protocols().contains(Protocol.HTTP_1_1));
+    }
+
+    @Test
+    void metricsAreBound() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        resources.bindTo(registry);
+
+        assertNotNull(registry.find("core.operator.http.pool.connections").gauge());
+        assertNotNull(registry.find("core.operator.http.pool.idle.connections").gauge());
+        assertNotNull(registry.find("core.operator.http.dispatcher.running").gauge());
+        assertNotNull(registry.find("core.operator.http.dispatcher.queued").gauge());
+        assertEquals(0, registry.find("core.operator.http.connections.acquired").functionCounter().count());
+        assertEquals(0, registry.find("core.operator.http.connections.created").functionCounter().count());
+    }
+}
@@ -0,0 +1,41 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.core.declarative.resources.composite.Composite;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompositeCRHolderTest {
+
+    @Test
+    void holdsCompositesByCompositeId() {
+        CompositeCRHolder holder = new CompositeCRHolder();
+        Composite first = new Composite();
+        Composite second = new Composite();
+
+        holder.set("c-1", first);
+        holder.set("c-2", second);
+
+        assertThat(holder.get("c-1")).isSameAs(first);
+        assertThat(holder.get("c-2")).isSameAs(second);
+        assertThat(holder.get()).isSameAs(second);
+        assertThat(holder.get(null)).isSameAs(second);
+        assertThat(holder.getCompositeIds()).containsExactlyInAnyOrder("c-1", "c-2");
+    }
+
+    @Test
+    void removeForgetsComposite() {
+        CompositeCRHolder holder = new CompositeCRHolder();
+        Composite first = new Composite();
+        Composite second = new Composite();
+        holder.set("c-1", first);
+        holder.set("c-2", second);
+
+        holder.remove("c-2");
+
+        assertThat(holder.get("c-2")).isNull();
+        assertThat(holder.get()).isNull();
+        assertThat(holder.get("c-1")).isSameAs(first);
+        assertThat(holder.getCompositeIds()).containsExactly("c-1");
+    }
+}
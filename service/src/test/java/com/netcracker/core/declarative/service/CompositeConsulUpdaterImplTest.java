@@ -1,5 +1,6 @@
 package com.netcracker.core.declarative.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import io.vertx.core.Future;
 import io.vertx.ext.consul.*;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,12 +8,16 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 import com.netcracker.cloud.consul.provider.common.TokenStorage;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -22,12 +27,15 @@ class CompositeConsulUpdaterImplTest {
 
     private ConsulClient consulClient;
     private ConsulClientFactory consulClientFactory;
+    private final CompositeMembershipSnapshot snapshot = new CompositeMembershipSnapshot();
 
     @BeforeEach
     void setUp() {
         consulClientFactory = mock(ConsulClientFactory.class);
         consulClient = mock(ConsulClient.class);
         when(consulClientFactory.create(any())).thenReturn(consulClient);
+        // Consul answers a missing key with an empty value
+        when(consulClient.getValue(anyString())).thenReturn(Future.succeededFuture(new KeyValue()));
     }
 
     @Test
@@ -115,6 +123,20 @@ class CompositeConsulUpdaterImplTest {
         ));
     }
 
+    @Test
+    void consulClientIsReusedAcrossOperations() throws InterruptedException, ExecutionException {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(Collections.emptyList())));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(mock(TxnResponse.class)));
+        when(consulClient.getKeys(anyString())).thenReturn(Future.succeededFuture(List.of("composite/BO/structure/BO/compositeRole")));
+
+        CompositeConsulUpdater compositeConsulUpdater = new CompositeConsulUpdaterImpl("BO", consulClientFactory, mock(TokenStorage.class));
+        compositeConsulUpdater.updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+        compositeConsulUpdater.getCompositeMembers("BO");
+
+        verify(consulClientFactory, times(1)).create(any());
+        verify(consulClient, never()).close();
+    }
+
     @Test
     void compositeStructureUpdateStep_BO() throws InterruptedException, ExecutionException {
         when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(Collections.emptyList())));
@@ -252,6 +274,228 @@ class CompositeConsulUpdaterImplTest {
         assertEquals(Set.of("first", "second", "third"), compositeMembers);
     }
 
+    @Test
+    void casModeGuardsDeletesAndWritesWithReadIndexes() throws ExecutionException, InterruptedException {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setIndex(42).setList(List.of(
+                new KeyValue().setKey("composite/BO/structure/BO/compositeRole").setValue("baseline").setModifyIndex(10),
+                new KeyValue().setKey("composite/BO/structure/SO/compositeRole").setValue("satellite").setModifyIndex(11)
+        ))));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        CompositeConsulUpdater compositeConsulUpdater = casUpdater("BO", registry);
+        compositeConsulUpdater.updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+
+        ArgumentCaptor<TxnRequest> captor = ArgumentCaptor.forClass(TxnRequest.class);
+        verify(consulClient).transaction(captor.capture());
+        List<TxnKVOperation> operations = captor.getValue().getOperations().stream().map(TxnKVOperation.class::cast).toList();
+        assertThat(operations).extracting(TxnKVOperation::getType, TxnKVOperation::getKey, TxnKVOperation::getIndex).containsExactly(
+                tuple(TxnKVVerb.CAS, "composite/BO/version", 0L),
+                tuple(TxnKVVerb.CHECK_INDEX, "composite/BO/structure/BO/compositeRole", 10L),
+                tuple(TxnKVVerb.DELETE_TREE, "composite/BO/structure/BO/", 0L),
+                tuple(TxnKVVerb.SET, "config/BO/application/composite/structureRef", 0L),
+                tuple(TxnKVVerb.CAS, "composite/BO/structure/BO/compositeRole", 0L));
+        assertThat(registry.get("core.operator.consul.txn").tag("mode", "cas").tag("outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void casModeKeepsIndexOfUntouchedExistingKey() throws ExecutionException, InterruptedException {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(List.of(
+                new KeyValue().setKey("composite/BO/structure/SO/compositeRole").setValue("satellite").setModifyIndex(11)
+        ))));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()));
+
+        casUpdater("SO", new SimpleMeterRegistry()).updateCompositeStructureInConsul(new CompositeSpec(null, "SO", null,
+                new CompositeSpec.CompositeSpecBaseline(null, "BO", null)));
+
+        ArgumentCaptor<TxnRequest> captor = ArgumentCaptor.forClass(TxnRequest.class);
+        verify(consulClient).transaction(captor.capture());
+        TxnKVOperation roleWrite = (TxnKVOperation) captor.getValue().getOperations().getLast();
+        assertEquals("composite/BO/structure/SO/compositeRole", roleWrite.getKey());
+        assertEquals(TxnKVVerb.CAS, roleWrite.getType());
+        assertEquals(11L, roleWrite.getIndex());
+    }
+
+    @Test
+    void casModeRetriesOnConflictWithFreshRead() throws ExecutionException, InterruptedException {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(List.of())));
+        TxnResponse conflict = new TxnResponse().addError(new TxnError().setOpIndex(1).setWhat("failed to set key: index is stale"));
+        when(consulClient.transaction(any()))
+                .thenReturn(Future.succeededFuture(conflict))
+                .thenReturn(Future.succeededFuture(new TxnResponse()));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        casUpdater("BO", registry).updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+
+        verify(consulClient, times(2)).getValues(anyString());
+        verify(consulClient, times(2)).transaction(any());
+        assertThat(registry.get("core.operator.consul.txn").tag("outcome", "conflict").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void casModeGivesUpAfterConfiguredRetries() {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(List.of())));
+        TxnResponse conflict = new TxnResponse().addError(new TxnError().setWhat("index is stale"));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(conflict));
+
+        CompositeConsulUpdater compositeConsulUpdater = casUpdater("BO", new SimpleMeterRegistry());
+
+        assertThrows(RuntimeException.class,
+                () -> compositeConsulUpdater.updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null)));
+        verify(consulClient, times(3)).transaction(any());
+    }
+
+    @Test
+    void casModeDoesNotRetryOtherErrors() {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(List.of())));
+        TxnResponse denied = new TxnResponse().addError(new TxnError().setOpIndex(1).setWhat("Permission denied"));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(denied));
+
+        CompositeConsulUpdater compositeConsulUpdater = casUpdater("BO", new SimpleMeterRegistry());
+
+        assertThrows(RuntimeException.class,
+                () -> compositeConsulUpdater.updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null)));
+        verify(consulClient, times(1)).transaction(any());
+    }
+
+    @Test
+    void casModeBumpsReadVersion() throws ExecutionException, InterruptedException {
+        when(consulClient.getValue("composite/BO/version"))
+                .thenReturn(Future.succeededFuture(new KeyValue().setKey("composite/BO/version").setValue("7").setModifyIndex(30)));
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(List.of())));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()));
+
+        casUpdater("BO", new SimpleMeterRegistry()).updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+
+        ArgumentCaptor<TxnRequest> captor = ArgumentCaptor.forClass(TxnRequest.class);
+        verify(consulClient).transaction(captor.capture());
+        TxnKVOperation versionWrite = (TxnKVOperation) captor.getValue().getOperations().getFirst();
+        assertThat(versionWrite).extracting(TxnKVOperation::getType, TxnKVOperation::getKey, TxnKVOperation::getValue, TxnKVOperation::getIndex)
+                .containsExactly(TxnKVVerb.CAS, "composite/BO/version", "8", 30L);
+    }
+
+    @Test
+    void casModeGuardsEveryChunkOfTooLargeUpdate() throws ExecutionException, InterruptedException {
+        List<KeyValue> struct = new ArrayList<>();
+        struct.add(new KeyValue().setKey("composite/BO/structure/BO/controllerNamespace").setValue("BC").setModifyIndex(1));
+        for (int i = 0; i < 100; i++) {
+            struct.add(new KeyValue().setKey("composite/BO/structure/N%d/controllerNamespace".formatted(i)).setValue("BC").setModifyIndex(i + 2));
+        }
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(struct)));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()
+                .addResult(new KeyValue().setKey("composite/BO/version").setModifyIndex(200))));
+
+        casUpdater("BO", new SimpleMeterRegistry()).updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+
+        ArgumentCaptor<TxnRequest> captor = ArgumentCaptor.forClass(TxnRequest.class);
+        verify(consulClient, atLeast(2)).transaction(captor.capture());
+        List<TxnKVOperation> versionGuards = captor.getAllValues().stream()
+                .map(request -> (TxnKVOperation) request.getOperations().getFirst())
+                .toList();
+        assertThat(versionGuards.getFirst()).extracting(TxnKVOperation::getType, TxnKVOperation::getKey)
+                .containsExactly(TxnKVVerb.CAS, "composite/BO/version");
+        assertThat(versionGuards.subList(1, versionGuards.size()))
+                .extracting(TxnKVOperation::getType, TxnKVOperation::getKey, TxnKVOperation::getIndex)
+                .containsOnly(tuple(TxnKVVerb.CHECK_INDEX, "composite/BO/version", 200L));
+        // the checks of a deleted tree are sent with its delete
+        for (TxnRequest request : captor.getAllValues()) {
+            List<TxnKVOperation> operations = request.getOperations().stream().map(TxnKVOperation.class::cast).toList();
+            operations.stream()
+                    .filter(operation -> operation.getType() == TxnKVVerb.DELETE_TREE)
+                    .forEach(delete -> assertThat(operations)
+                            .anyMatch(check -> check.getType() == TxnKVVerb.CHECK_INDEX && check.getKey().startsWith(delete.getKey())));
+        }
+    }
+
+    @Test
+    void casModeRetriesTooLargeUpdateWhenLaterChunkConflicts() throws ExecutionException, InterruptedException {
+        List<KeyValue> struct = new ArrayList<>();
+        struct.add(new KeyValue().setKey("composite/BO/structure/BO/controllerNamespace").setValue("BC").setModifyIndex(1));
+        for (int i = 0; i < 100; i++) {
+            struct.add(new KeyValue().setKey("composite/BO/structure/N%d/controllerNamespace".formatted(i)).setValue("BC").setModifyIndex(i + 2));
+        }
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(struct)));
+        TxnResponse written = new TxnResponse().addResult(new KeyValue().setKey("composite/BO/version").setModifyIndex(200));
+        TxnResponse versionChanged = new TxnResponse().addError(new TxnError().setOpIndex(0).setWhat("current modify index 201 does not match 200"));
+        when(consulClient.transaction(any()))
+                .thenReturn(Future.succeededFuture(written))
+                .thenReturn(Future.succeededFuture(versionChanged))
+                .thenReturn(Future.succeededFuture(written));
+
+        casUpdater("BO", new SimpleMeterRegistry()).updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+
+        verify(consulClient, times(2)).getValue("composite/BO/version");
+        verify(consulClient, times(2)).getValues(anyString());
+    }
+
+    @Test
+    void largeCleanUpIsSplitIntoChunks() throws ExecutionException, InterruptedException {
+        List<KeyValue> struct = new ArrayList<>();
+        struct.add(new KeyValue().setKey("composite/BO/structure/BO/controllerNamespace").setValue("BC").setModifyIndex(1));
+        for (int i = 0; i < 100; i++) {
+            struct.add(new KeyValue().setKey("composite/BO/structure/N%d/controllerNamespace".formatted(i)).setValue("BC").setModifyIndex(i + 2));
+        }
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(struct)));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()
+                .addResult(new KeyValue().setKey("composite/BO/version").setModifyIndex(200))));
+
+        casUpdater("BO", new SimpleMeterRegistry()).updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+
+        ArgumentCaptor<TxnRequest> captor = ArgumentCaptor.forClass(TxnRequest.class);
+        verify(consulClient, atLeast(2)).transaction(captor.capture());
+        assertThat(captor.getAllValues()).allMatch(request -> request.getOperations().size() <= CompositeConsulUpdaterImpl.MAX_TXN_OPERATIONS);
+        assertThat(captor.getAllValues().stream().mapToInt(request -> request.getOperations().size()).sum())
+                .isGreaterThan(CompositeConsulUpdaterImpl.MAX_TXN_OPERATIONS);
+    }
+
+    @Test
+    void membersAreServedFromOwnWriteWithoutReadingConsul() throws ExecutionException, InterruptedException {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(List.of(
+                new KeyValue().setKey("composite/BO/structure/BO/compositeRole").setValue("baseline").setModifyIndex(10)
+        ))));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()
+                .addResult(new KeyValue().setKey("composite/BO/structure/SO/compositeRole").setModifyIndex(20))));
+
+        CompositeConsulUpdater compositeConsulUpdater = casUpdater("SO", new SimpleMeterRegistry());
+        compositeConsulUpdater.updateCompositeStructureInConsul(new CompositeSpec(null, "SO", null,
+                new CompositeSpec.CompositeSpecBaseline(null, "BO", null)));
+
+        assertEquals(Set.of("BO", "SO"), compositeConsulUpdater.getCompositeMembers("BO"));
+        verify(consulClient, never()).getKeys(anyString());
+    }
+
+    @Test
+    void olderLongPollSnapshotDoesNotHideOwnWrite() throws ExecutionException, InterruptedException {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(List.of())));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()
+                .addResult(new KeyValue().setKey("composite/BO/structure/BO/compositeRole").setModifyIndex(20))));
+
+        CompositeConsulUpdater compositeConsulUpdater = casUpdater("BO", new SimpleMeterRegistry());
+        compositeConsulUpdater.updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+        snapshot.update("BO", 15, Set.of("OLD"));
+
+        assertEquals(Set.of("BO"), compositeConsulUpdater.getCompositeMembers("BO"));
+    }
+
+    @Test
+    void membersAreReadFromConsulWhenWriteIndexIsUnknown() throws ExecutionException, InterruptedException {
+        when(consulClient.getValues(anyString())).thenReturn(Future.succeededFuture(new KeyValueList().setList(List.of())));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()));
+        when(consulClient.getKeys("composite/BO/structure"))
+                .thenReturn(Future.succeededFuture(List.of("composite/BO/structure/BO/compositeRole")));
+
+        CompositeConsulUpdater compositeConsulUpdater = casUpdater("BO", new SimpleMeterRegistry());
+        compositeConsulUpdater.updateCompositeStructureInConsul(new CompositeSpec(null, "BO", null, null));
+
+        assertEquals(Set.of("BO"), compositeConsulUpdater.getCompositeMembers("BO"));
+        verify(consulClient).getKeys("composite/BO/structure");
+    }
+
+    private CompositeConsulUpdater casUpdater(String namespace, SimpleMeterRegistry registry) {
+        PooledConsulClient pooledConsulClient = new PooledConsulClient(consulClientFactory, () -> "token", 0);
+        return new CompositeConsulUpdaterImpl(namespace, pooledConsulClient, CompositeConsulUpdaterImpl.UpdateMode.CAS, 2, registry, snapshot);
+    }
+
     private void verifyConsulValueSetTxn(List<TxnOperation> ops, List<String> kvs) {
         for (int i = 0, j = 0; i < kvs.size() / 2; i++, j += 2) {
             TxnKVOperation op = (TxnKVOperation) ops.get(i);
@@ -0,0 +1,74 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.consul.CompositeMembersUpdateEvent;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulLongPoller;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.LongPollSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CompositeMemberIndexTest {
+    private ConsulLongPoller consulLongPoller;
+    private CompositeMemberIndex index;
+
+    @BeforeEach
+    void setUp() {
+        consulLongPoller = mock(ConsulLongPoller.class);
+        when(consulLongPoller.startWatch(eq("composite/"), any())).thenReturn(new LongPollSession());
+        index = new CompositeMemberIndex(consulLongPoller, true);
+    }
+
+    @Test
+    void firstLookupStartsWatchOnce() {
+        index.lookup("first");
+        index.lookup("second");
+
+        verify(consulLongPoller, times(1)).startWatch(eq("composite/"), any());
+    }
+
+    @Test
+    void eventReplacesIndex() {
+        index.put("stale", "old");
+        index.onCompositesUpdated(new CompositeMembersUpdateEvent(List.of(
+                value("composite/first/structure/first/compositeRole"),
+                value("composite/first/structure/second/compositeRole"),
+                value("composite/first/config/tenants/default/id")), 5));
+
+        assertThat(index.lookup("second")).contains("first");
+        assertThat(index.lookup("tenants")).isEmpty();
+        assertThat(index.lookup("stale")).isEmpty();
+    }
+
+    @Test
+    void buildSkipsNonStructureKeys() {
+        assertThat(CompositeMemberIndex.build(List.of(
+                "composite/first",
+                "composite/first/structure",
+                "composite/first/structure/ns-1/compositeRole",
+                "composite/second/config/tenants/default/id"
+        ))).isEqualTo(Map.of("ns-1", "first"));
+    }
+
+    @Test
+    void disabledIndexNeverWatchesNorCaches() {
+        CompositeMemberIndex disabled = new CompositeMemberIndex(consulLongPoller, false);
+        disabled.put("first", "first");
+
+        assertThat(disabled.lookup("first")).isEmpty();
+        verifyNoInteractions(consulLongPoller);
+    }
+
+    private static GetValue value(String key) {
+        GetValue value = mock(GetValue.class);
+        when(value.getKey()).thenReturn(key);
+        return value;
+    }
+}
@@ -0,0 +1,130 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.consul.CompositeStructureUpdateEvent;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulLongPoller;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.netcracker.core.declarative.service.ConsulLongPollerMocks.response;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CompositeMembershipNotifierTest {
+    private CompositeStructureUpdateNotifier maas;
+    private CompositeStructureUpdateNotifier dbaas;
+    private XaasNotificationRegistry registry;
+    private CompositeMembershipNotifier membershipNotifier;
+
+    @BeforeEach
+    void setUp() {
+        maas = mock(CompositeStructureUpdateNotifier.class);
+        dbaas = mock(CompositeStructureUpdateNotifier.class);
+        when(maas.getXaasName()).thenReturn("MaaS");
+        when(dbaas.getXaasName()).thenReturn("DBaaS");
+        registry = new XaasNotificationRegistry();
+        membershipNotifier = new CompositeMembershipNotifier(List.of(maas, dbaas), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        membershipNotifier.shutdown();
+    }
+
+    @Test
+    void onlyReceiversWithOutdatedMembersAreNotified() {
+        registry.acknowledge("MaaS", "c-1", Set.of("ns-1", "ns-2"));
+
+        membershipNotifier.notifyChanged("c-1", Set.of("ns-1", "ns-2"), 10).join();
+
+        verify(maas, never()).notify(any(), any());
+        verify(dbaas).notify("c-1", Set.of("ns-1", "ns-2"));
+        assertThat(registry.isAcknowledged("DBaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue();
+    }
+
+    @Test
+    void failedNotificationIsNotAcknowledged() {
+        doThrow(new RuntimeException("unavailable")).when(maas).notify(any(), any());
+
+        membershipNotifier.notifyChanged("c-1", Set.of("ns-1"), 10).join();
+
+        assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1"))).isFalse();
+        assertThat(registry.isAcknowledged("DBaaS", "c-1", Set.of("ns-1"))).isTrue();
+    }
+
+    @Test
+    void structureUpdateEventTriggersNotification() {
+        membershipNotifier.onStructureUpdated(new CompositeStructureUpdateEvent("c-1", List.of(
+                value("composite/c-1/structure/ns-1/compositeRole"),
+                value("composite/c-1/structure/ns-2/compositeRole")), 10));
+
+        verify(maas, timeout(1000)).notify("c-1", Set.of("ns-1", "ns-2"));
+        verify(dbaas, timeout(1000)).notify("c-1", Set.of("ns-1", "ns-2"));
+    }
+
+    @Test
+    void emptiedCompositeIsSent() {
+        ConsulLongPoller poller = ConsulLongPollerMocks.replay("composite/c-1/structure", List.of(
+                response(List.of(value("composite/c-1/structure/ns-1/compositeRole")), 10),
+                response(null, 11)), event -> membershipNotifier.onStructureUpdated((CompositeStructureUpdateEvent) event));
+
+        poller.startWatch("composite/c-1/structure", (values, index) -> new CompositeStructureUpdateEvent("c-1", values, index));
+
+        verify(maas, timeout(3000)).notify("c-1", Set.of("ns-1"));
+        verify(maas, timeout(3000)).notify("c-1", Set.of());
+        verify(dbaas, timeout(3000)).notify("c-1", Set.of());
+        poller.shutdown();
+    }
+
+    @Test
+    void membersReadBeforeAcknowledgedOnesAreNotSent() {
+        registry.acknowledge("MaaS", "c-1", Set.of("ns-1", "ns-2"), 20);
+
+        membershipNotifier.send(maas, "c-1", Set.of("ns-1"), 10).join();
+
+        verify(maas, never()).notify(any(), any());
+        assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue();
+    }
+
+    @Test
+    void notificationsOfReceiverAreSentInOrder() throws Exception {
+        CountDownLatch sending = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            sending.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(maas).notify("c-1", Set.of("ns-1", "ns-2"));
+
+        CompletableFuture<Void> newer = membershipNotifier.send(maas, "c-1", Set.of("ns-1", "ns-2"), 20);
+        assertThat(sending.await(5, TimeUnit.SECONDS)).isTrue();
+        // e.g. a reconcile which read the members before the long-poll got the newer ones
+        CompletableFuture<Void> older = membershipNotifier.send(maas, "c-1", Set.of("ns-1"), 10);
+        assertThat(older).isNotDone();
+        release.countDown();
+
+        CompletableFuture.allOf(newer, older).get(5, TimeUnit.SECONDS);
+        verify(maas, never()).notify("c-1", Set.of("ns-1"));
+        assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue();
+    }
+
+    private static GetValue value(String key) {
+        GetValue value = mock(GetValue.class);
+        when(value.getKey()).thenReturn(key);
+        return value;
+    }
+}
@@ -0,0 +1,89 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.consul.CompositeStructureUpdateEvent;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulLongPoller;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static com.netcracker.core.declarative.service.ConsulLongPollerMocks.response;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CompositeMembershipSnapshotTest {
+    private final CompositeMembershipSnapshot snapshot = new CompositeMembershipSnapshot();
+
+    @Test
+    void longPollEventIsIndexedByComposite() {
+        snapshot.onStructureUpdated(new CompositeStructureUpdateEvent(List.of(
+                value("composite/BO/structure/BO/compositeRole"),
+                value("composite/BO/structure/SO/compositeRole"),
+                value("composite/BO/structure/SO/bluegreenRole")), 7));
+
+        assertThat(snapshot.get("BO")).contains(Set.of("BO", "SO"));
+        assertThat(snapshot.get("other")).isEmpty();
+    }
+
+    @Test
+    void emptiedStructureClearsMembers() {
+        ConsulLongPoller poller = ConsulLongPollerMocks.replay("composite/BO/structure", List.of(
+                response(List.of(value("composite/BO/structure/BO/compositeRole"), value("composite/BO/structure/SO/compositeRole")), 7),
+                response(null, 8)), event -> snapshot.onStructureUpdated((CompositeStructureUpdateEvent) event));
+
+        poller.startWatch("composite/BO/structure", (values, index) -> new CompositeStructureUpdateEvent("BO", values, index));
+
+        await().atMost(Duration.ofSeconds(3)).untilAsserted(() -> assertThat(snapshot.getIndex("BO")).isEqualTo(8));
+        poller.shutdown();
+        assertThat(snapshot.get("BO")).contains(Set.of());
+    }
+
+    @Test
+    void olderIndexDoesNotReplaceNewerSnapshot() {
+        snapshot.update("BO", 10, Set.of("BO", "SO"));
+        snapshot.update("BO", 9, Set.of("BO"));
+
+        assertThat(snapshot.get("BO")).contains(Set.of("BO", "SO"));
+    }
+
+    @Test
+    void removedCompositeIsForgotten() {
+        snapshot.update("BO", 10, Set.of("BO", "SO"));
+
+        snapshot.remove("BO");
+
+        assertThat(snapshot.get("BO")).isEmpty();
+        assertThat(snapshot.getIndex("BO")).isZero();
+    }
+
+    @Test
+    void invalidatedSnapshotAcceptsOnlyNewerIndex() {
+        snapshot.update("BO", 10, Set.of("BO"));
+        snapshot.invalidate("BO");
+        assertThat(snapshot.get("BO")).isEmpty();
+
+        snapshot.update("BO", 10, Set.of("BO"));
+        assertThat(snapshot.get("BO")).isEmpty();
+
+        snapshot.update("BO", 11, Set.of("BO", "SO"));
+        assertThat(snapshot.get("BO")).contains(Set.of("BO", "SO"));
+    }
+
+    @Test
+    void membersOfIgnoresFolderKeys() {
+        assertThat(CompositeMembershipSnapshot.membersOf(List.of(
+                "composite/BO/structure/",
+                "composite/BO/structure/BO/",
+                "composite/BO/structure/SO/compositeRole"))).containsExactly("SO");
+    }
+
+    private static GetValue value(String key) {
+        GetValue value = mock(GetValue.class);
+        when(value.getKey()).thenReturn(key);
+        return value;
+    }
+}
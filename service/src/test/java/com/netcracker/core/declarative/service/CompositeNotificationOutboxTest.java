@@ -0,0 +1,231 @@
+package com.netcracker.core.declarative.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netcracker.core.declarative.client.k8s.ConfigMapClient;
+import com.netcracker.core.declarative.service.composite.ConfigMapWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CompositeNotificationOutboxTest {
+    private static final String NAMESPACE = "test-ns";
+    private static final String CONFIG_MAP = CompositeNotificationOutbox.CONFIG_MAP_NAME;
+    private static final String MAAS_C1 = CompositeNotificationOutbox.recordKey("MaaS", "c-1");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ConfigMapClient configMapClient;
+    private ConfigMapWriter configMapWriter;
+    private CompositeStructureUpdateNotifier maas;
+    private CompositeStructureUpdateNotifier dbaas;
+    private XaasNotificationRegistry registry;
+    private CompositeNotificationOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        configMapClient = mock(ConfigMapClient.class);
+        maas = mock(CompositeStructureUpdateNotifier.class);
+        dbaas = mock(CompositeStructureUpdateNotifier.class);
+        when(maas.getXaasName()).thenReturn("MaaS");
+        when(dbaas.getXaasName()).thenReturn("DBaaS");
+        configMapWriter = new ConfigMapWriter(configMapClient, NAMESPACE);
+        registry = new XaasNotificationRegistry();
+        outbox = newOutbox(50);
+    }
+
+    @AfterEach
+    void tearDown() {
+        outbox.shutdown();
+        configMapWriter.shutdown();
+    }
+
+    private CompositeNotificationOutbox newOutbox(long retryInitialMs) {
+        return new CompositeNotificationOutbox(true, NAMESPACE, retryInitialMs, Math.max(200, retryInitialMs),
+                configMapClient, configMapWriter, List.of(maas, dbaas), registry, objectMapper);
+    }
+
+    @Test
+    void enqueuedMembersAreDeliveredAndAcknowledged() {
+        outbox.enqueue("c-1", Set.of("ns-1", "ns-2"));
+
+        verify(maas, timeout(1000)).notify("c-1", Set.of("ns-1", "ns-2"));
+        verify(dbaas, timeout(1000)).notify("c-1", Set.of("ns-1", "ns-2"));
+        await().untilAsserted(() -> assertThat(outbox.getPending()).isEmpty());
+        assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue();
+        assertThat(registry.isAcknowledged("DBaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue();
+        verify(configMapClient, timeout(1000).atLeast(1)).createOrUpdate(CONFIG_MAP, NAMESPACE, Map.of(), null);
+    }
+
+    @Test
+    void failingReceiverIsRetriedWithoutBlockingOthers() {
+        doThrow(new RuntimeException("unavailable"))
+                .doThrow(new RuntimeException("unavailable"))
+                .doNothing()
+                .when(maas).notify(any(), any());
+
+        outbox.enqueue("c-1", Set.of("ns-1"));
+
+        verify(dbaas, timeout(1000)).notify("c-1", Set.of("ns-1"));
+        await().untilAsserted(() -> assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1"))).isTrue());
+        assertThat(outbox.getPending()).isEmpty();
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        outbox.bindTo(meterRegistry);
+        assertThat(meterRegistry.get("core.operator.composite.outbox.delivery.failures").functionCounter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("core.operator.composite.outbox.pending").gauge().value()).isZero();
+    }
+
+    @Test
+    void pendingRecordsArePersistedAndNewerRecordReplacesOlder() throws Exception {
+        doThrow(new RuntimeException("unavailable")).when(maas).notify(any(), any());
+        outbox.enqueue("c-1", Set.of("ns-1"));
+        outbox.enqueue("c-1", Set.of("ns-1", "ns-2"));
+
+        Map<String, CompositeNotificationOutbox.OutboxRecord> pending = outbox.getPending();
+        assertThat(pending.get(MAAS_C1).members()).containsExactlyInAnyOrder("ns-1", "ns-2");
+        assertThat(pending.get(MAAS_C1).sequence()).isGreaterThan(1);
+
+        // the DBaaS records are delivered, the latest snapshot holds the newer MaaS record only
+        String persisted = objectMapper.writeValueAsString(pending.get(MAAS_C1));
+        verify(configMapClient, timeout(1000)).createOrUpdate(CONFIG_MAP, NAMESPACE, Map.of(MAAS_C1, persisted), null);
+    }
+
+    @Test
+    void slowConfigMapWriteDoesNotBlockEnqueue() {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(configMapClient).createOrUpdate(any(), any(), anyMap(), any());
+        doThrow(new RuntimeException("unavailable")).when(maas).notify(any(), any());
+        try {
+            assertThat(CompletableFuture.runAsync(() -> {
+                outbox.enqueue("c-1", Set.of("ns-1"));
+                outbox.enqueue("c-2", Set.of("ns-2"));
+            })).succeedsWithin(Duration.ofSeconds(1));
+            assertThat(outbox.getPending()).containsKeys(MAAS_C1, CompositeNotificationOutbox.recordKey("MaaS", "c-2"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void newerRecordDoesNotWaitForRetryOfOlder() {
+        outbox.shutdown();
+        outbox = newOutbox(60_000);
+        doThrow(new RuntimeException("unavailable")).doNothing().when(maas).notify(any(), any());
+
+        outbox.enqueue("c-1", Set.of("ns-1"));
+        verify(maas, timeout(1000)).notify("c-1", Set.of("ns-1"));
+        outbox.enqueue("c-1", Set.of("ns-1", "ns-2"));
+
+        verify(maas, timeout(1000)).notify("c-1", Set.of("ns-1", "ns-2"));
+        await().untilAsserted(() -> assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue());
+    }
+
+    @Test
+    void deliveryListenersAreCalledWithComposite() {
+        List<String> delivered = new CopyOnWriteArrayList<>();
+        outbox.addDeliveryListener(delivered::add);
+
+        outbox.enqueue("c-1", Set.of("ns-1"));
+
+        await().untilAsserted(() -> assertThat(delivered).containsExactly("c-1", "c-1"));
+    }
+
+    @Test
+    void recordsOfDifferentCompositesAreKeptApart() {
+        doThrow(new RuntimeException("unavailable")).when(maas).notify(any(), any());
+        outbox.enqueue("c-1", Set.of("ns-1"));
+        outbox.enqueue("c-2", Set.of("ns-2"));
+
+        Map<String, CompositeNotificationOutbox.OutboxRecord> pending = outbox.getPending();
+        assertThat(pending.get(MAAS_C1).members()).containsExactly("ns-1");
+        assertThat(pending.get(CompositeNotificationOutbox.recordKey("MaaS", "c-2")).members()).containsExactly("ns-2");
+    }
+
+    @Test
+    void hangingReceiverDoesNotHoldBackOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(maas).notify(any(), any());
+        try {
+            outbox.enqueue("c-1", Set.of("ns-1"));
+
+            verify(dbaas, timeout(1000)).notify("c-1", Set.of("ns-1"));
+            assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1"))).isFalse();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void acknowledgedMembersAreNotQueued() {
+        registry.acknowledge("MaaS", "c-1", Set.of("ns-1"));
+        registry.acknowledge("DBaaS", "c-1", Set.of("ns-1"));
+
+        outbox.enqueue("c-1", Set.of("ns-1"));
+
+        assertThat(outbox.getPending()).isEmpty();
+        verify(configMapClient, never()).createOrUpdate(any(), any(), anyMap(), any());
+    }
+
+    @Test
+    void recoveredRecordsAreDelivered() throws Exception {
+        String record = objectMapper.writeValueAsString(new CompositeNotificationOutbox.OutboxRecord("c-1", Set.of("ns-1"), 7));
+        // an entry keyed by the receiver only, as written before records were kept per composite
+        when(configMapClient.getData(CONFIG_MAP, NAMESPACE)).thenReturn(Map.of("MaaS", record, "DBaaS.c-1", "{broken"));
+        doNothing().when(maas).notify(any(), any());
+
+        outbox.recover();
+
+        verify(maas, timeout(1000)).notify("c-1", Set.of("ns-1"));
+        verify(dbaas, never()).notify(any(), any());
+        await().untilAsserted(() -> assertThat(outbox.getPending()).isEmpty());
+    }
+
+    @Test
+    void recoveryKeepsNewerRecordEnqueuedBeforeIt() throws Exception {
+        doThrow(new RuntimeException("unavailable")).when(maas).notify(any(), any());
+        outbox.enqueue("c-1", Set.of("ns-1", "ns-2"));
+        String stale = objectMapper.writeValueAsString(new CompositeNotificationOutbox.OutboxRecord("c-1", Set.of("ns-1"), 0));
+        when(configMapClient.getData(CONFIG_MAP, NAMESPACE)).thenReturn(Map.of(MAAS_C1, stale));
+
+        outbox.recover();
+
+        assertThat(outbox.getPending().get(MAAS_C1).members()).containsExactlyInAnyOrder("ns-1", "ns-2");
+    }
+
+    @Test
+    void disabledOutboxRejectsRecords() {
+        CompositeNotificationOutbox disabled = CompositeNotificationOutbox.disabled();
+
+        assertThat(disabled.isEnabled()).isFalse();
+        assertThatThrownBy(() -> disabled.enqueue("c-1", Set.of("ns-1"))).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,73 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.cloud.consul.provider.common.TokenStorage;
+import com.netcracker.cloud.quarkus.consul.client.ConsulClient;
+import com.netcracker.cloud.quarkus.consul.client.ConsulSourceConfig;
+import com.netcracker.cloud.quarkus.consul.client.http.QueryParams;
+import com.netcracker.cloud.quarkus.consul.client.http.Response;
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulLongPollConfig;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulLongPoller;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulUpdateEvent;
+import jakarta.enterprise.event.Event;
+import jakarta.enterprise.inject.Instance;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test helper that runs a real {@link ConsulLongPoller} against canned Consul responses and hands the fired events
+ * to an observer, so CDI observers are tested with the events the poller actually fires.
+ */
+final class ConsulLongPollerMocks {
+
+    private ConsulLongPollerMocks() {
+    }
+
+    /**
+     * @param responses responses of the blocking queries on {@code root} in order, the last one is repeated
+     */
+    @SuppressWarnings("unchecked")
+    static ConsulLongPoller replay(String root, List<Response<List<GetValue>>> responses, Consumer<ConsulUpdateEvent> observer) {
+        TokenStorage tokenStorage = mock(TokenStorage.class);
+        when(tokenStorage.get()).thenReturn("token");
+        Instance<TokenStorage> tokenStorageInstance = mock(Instance.class);
+        when(tokenStorageInstance.get()).thenReturn(tokenStorage);
+        ConsulSourceConfig consulSourceConfig = mock(ConsulSourceConfig.class);
+        when(consulSourceConfig.waitTime()).thenReturn(30);
+        ConsulLongPollConfig consulLongPollConfig = mock(ConsulLongPollConfig.class);
+        when(consulLongPollConfig.retryTime()).thenReturn(50);
+        when(consulLongPollConfig.onSuccessDelayTime()).thenReturn(20);
+
+        ConsulClient consulClient = mock(ConsulClient.class);
+        AtomicInteger call = new AtomicInteger();
+        when(consulClient.getKVValuesAsync(eq(root), anyString(), any(QueryParams.class)))
+                .thenAnswer(inv -> CompletableFuture.completedFuture(responses.get(Math.min(call.getAndIncrement(), responses.size() - 1))));
+        Event<ConsulUpdateEvent> event = mock(Event.class);
+        doAnswer(inv -> {
+            observer.accept(inv.getArgument(0));
+            return null;
+        }).when(event).fire(any(ConsulUpdateEvent.class));
+        return new ConsulLongPoller(tokenStorageInstance, consulClient, consulSourceConfig, consulLongPollConfig, event);
+    }
+
+    /**
+     * @param values entries under the watched root, {@code null} like Consul's answer for an empty prefix
+     */
+    @SuppressWarnings("unchecked")
+    static Response<List<GetValue>> response(List<GetValue> values, long consulIndex) {
+        Response<List<GetValue>> response = mock(Response.class);
+        when(response.getValue()).thenReturn(values);
+        when(response.getConsulIndex()).thenReturn(consulIndex);
+        return response;
+    }
+}
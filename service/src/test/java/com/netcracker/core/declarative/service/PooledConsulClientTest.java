@@ -0,0 +1,76 @@
+package com.netcracker.core.declarative.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.vertx.ext.consul.ConsulClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.*;
+
+class PooledConsulClientTest {
+    private final AtomicReference<String> token = new AtomicReference<>("token-1");
+    private ConsulClientFactory consulClientFactory;
+    private ConsulClient first;
+    private ConsulClient second;
+
+    @BeforeEach
+    void setUp() {
+        consulClientFactory = mock(ConsulClientFactory.class);
+        first = mock(ConsulClient.class);
+        second = mock(ConsulClient.class);
+        when(consulClientFactory.create("token-1")).thenReturn(first);
+        when(consulClientFactory.create("token-2")).thenReturn(second);
+    }
+
+    @Test
+    void clientIsCreatedOnceAndReused() {
+        PooledConsulClient pooled = new PooledConsulClient(consulClientFactory, token::get, 0);
+
+        assertThat(pooled.get()).isSameAs(first);
+        assertThat(pooled.get()).isSameAs(first);
+        assertThat(pooled.get()).isSameAs(first);
+
+        verify(consulClientFactory, times(1)).create(any());
+        verify(first, never()).close();
+        assertThat(pooled.getCreated()).isEqualTo(1);
+        assertThat(pooled.getReused()).isEqualTo(2);
+    }
+
+    @Test
+    void tokenRotationReplacesClientAndClosesPreviousOneLater() {
+        PooledConsulClient pooled = new PooledConsulClient(consulClientFactory, token::get, 50);
+        pooled.get();
+
+        token.set("token-2");
+
+        assertThat(pooled.get()).isSameAs(second);
+        await().untilAsserted(() -> verify(first).close());
+        verify(second, never()).close();
+    }
+
+    @Test
+    void closeReleasesCurrentClient() {
+        PooledConsulClient pooled = new PooledConsulClient(consulClientFactory, token::get, 0);
+        pooled.get();
+
+        pooled.close();
+
+        verify(first).close();
+    }
+
+    @Test
+    void metricsAreBound() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        PooledConsulClient pooled = new PooledConsulClient(consulClientFactory, token::get, 0);
+        pooled.bindTo(registry);
+        pooled.get();
+        pooled.get();
+
+        assertThat(registry.get("core.operator.consul.client.created").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("core.operator.consul.client.reused").functionCounter().count()).isEqualTo(1);
+    }
+}
@@ -1,11 +1,30 @@
 package com.netcracker.core.declarative.service;
 
+import com.netcracker.core.declarative.model.Tenant;
+import com.netcracker.core.declarative.model.TenantResult;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.ConsulLongPoller;
+import com.netcracker.core.declarative.service.composite.consul.longpoll.LongPollSession;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.ext.consul.ConsulClient;
+import io.vertx.ext.consul.TxnError;
+import io.vertx.ext.consul.TxnRequest;
+import io.vertx.ext.consul.TxnResponse;
+import jakarta.ws.rs.ServerErrorException;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
 
 class TenantServiceTest {
 
@@ -32,4 +51,126 @@ class TenantServiceTest {
         );
         assertEquals(Optional.empty(), TenantService.getCompositeIdForMember(composite, "wrong"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void getCompositeIdForMember_onlyStructureKeys() {
+        List<String> composite = List.of(
+                "composite/first/config/default/id",
+                "composite/second/structure/default/compositeRole"
+        );
+        assertEquals(Optional.of("second"), TenantService.getCompositeIdForMember(composite, "default"));
+        assertEquals(Optional.empty(), TenantService.getCompositeIdForMember(List.of("composite/first/config/default/id"), "default"));
+    }
+
+    @Test
+    void getCompositeIdForMember_scanResultIsIndexed() throws ExecutionException, InterruptedException {
+        ConsulClientFactory consulClientFactory = mock(ConsulClientFactory.class);
+        ConsulClient consulClient = mock(ConsulClient.class);
+        when(consulClientFactory.create(any())).thenReturn(consulClient);
+        when(consulClient.getKeys("composite/")).thenReturn(Future.succeededFuture(List.of("composite/first/structure/second/compositeRole")));
+        ConsulLongPoller consulLongPoller = mock(ConsulLongPoller.class);
+        when(consulLongPoller.startWatch(anyString(), any())).thenReturn(new LongPollSession());
+
+        TenantService tenantService = new TenantService(new PooledConsulClient(consulClientFactory, () -> "token", 0),
+                new CompositeMemberIndex(consulLongPoller, true));
+
+        assertEquals(Optional.of("first"), tenantService.getCompositeIdForMember("second"));
+        assertEquals(Optional.of("first"), tenantService.getCompositeIdForMember("second"));
+        verify(consulClient, times(1)).getKeys("composite/");
+    }
+
+    @Test
+    void addAll_resolvesOnceAndPacksTransactions() throws ExecutionException, InterruptedException {
+        ConsulClientFactory consulClientFactory = mock(ConsulClientFactory.class);
+        ConsulClient consulClient = mock(ConsulClient.class);
+        when(consulClientFactory.create(any())).thenReturn(consulClient);
+        List<String> keys = new ArrayList<>();
+        List<Tenant> tenants = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            keys.add("composite/c%d/structure/ns%d/compositeRole".formatted(i, i));
+            tenants.add(tenant("t" + i, "ns" + i, List.of("var")));
+        }
+        tenants.add(tenant("duplicate", "ns0", null));
+        tenants.add(tenant("unknown", "missing", null));
+        when(consulClient.getKeys("composite/")).thenReturn(Future.succeededFuture(keys));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()));
+
+        TenantService tenantService = new TenantService(new PooledConsulClient(consulClientFactory, () -> "token", 0));
+        List<TenantResult> results = tenantService.addAll(tenants);
+
+        verify(consulClient, times(1)).getKeys("composite/");
+        ArgumentCaptor<TxnRequest> captor = ArgumentCaptor.forClass(TxnRequest.class);
+        verify(consulClient, times(2)).transaction(captor.capture());
+        assertTrue(captor.getAllValues().stream().allMatch(request -> request.getOperations().size() <= TenantService.MAX_TXN_OPERATIONS));
+        assertEquals(80, captor.getAllValues().stream().mapToInt(request -> request.getOperations().size()).sum());
+
+        assertEquals(42, results.size());
+        assertTrue(results.subList(0, 40).stream().allMatch(TenantResult::isSuccess));
+        assertEquals("c3", results.get(3).getCompositeId());
+        assertFalse(results.get(40).isSuccess());
+        assertFalse(results.get(41).isSuccess());
+        assertNull(results.get(41).getCompositeId());
+    }
+
+    @Test
+    void addAll_failedTransactionFailsItsTenants() throws ExecutionException, InterruptedException {
+        ConsulClientFactory consulClientFactory = mock(ConsulClientFactory.class);
+        ConsulClient consulClient = mock(ConsulClient.class);
+        when(consulClientFactory.create(any())).thenReturn(consulClient);
+        when(consulClient.getKeys("composite/")).thenReturn(Future.succeededFuture(List.of(
+                "composite/first/structure/first/compositeRole",
+                "composite/second/structure/second/compositeRole")));
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(
+                new TxnResponse().addError(new TxnError().setWhat("permission denied"))));
+
+        TenantService tenantService = new TenantService(new PooledConsulClient(consulClientFactory, () -> "token", 0));
+        List<TenantResult> results = tenantService.addAll(List.of(tenant("t1", "first", null), tenant("t2", "second", null)));
+
+        assertTrue(results.stream().noneMatch(TenantResult::isSuccess));
+        assertTrue(results.getFirst().getError().contains("permission denied"));
+    }
+
+    @Test
+    void addAsync_composesLookupAndTransactionWithoutBlocking() throws Exception {
+        ConsulClientFactory consulClientFactory = mock(ConsulClientFactory.class);
+        ConsulClient consulClient = mock(ConsulClient.class);
+        when(consulClientFactory.create(any())).thenReturn(consulClient);
+        Promise<List<String>> keys = Promise.promise();
+        when(consulClient.getKeys("composite/")).thenReturn(keys.future());
+        when(consulClient.transaction(any())).thenReturn(Future.succeededFuture(new TxnResponse()));
+
+        TenantService tenantService = new TenantService(new PooledConsulClient(consulClientFactory, () -> "token", 0));
+        CompletableFuture<Void> result = tenantService.addAsync(tenant("t1", "first", List.of("a", "b"))).toCompletableFuture();
+
+        assertFalse(result.isDone());
+        verify(consulClient, never()).transaction(any());
+
+        keys.complete(List.of("composite/first/structure/first/compositeRole"));
+
+        result.get(5, TimeUnit.SECONDS);
+        ArgumentCaptor<TxnRequest> captor = ArgumentCaptor.forClass(TxnRequest.class);
+        verify(consulClient).transaction(captor.capture());
+        assertEquals(2, captor.getValue().getOperations().size());
+    }
+
+    @Test
+    void add_unknownNamespaceFailsWithServerError() {
+        ConsulClientFactory consulClientFactory = mock(ConsulClientFactory.class);
+        ConsulClient consulClient = mock(ConsulClient.class);
+        when(consulClientFactory.create(any())).thenReturn(consulClient);
+        when(consulClient.getKeys("composite/")).thenReturn(Future.succeededFuture(List.of()));
+
+        TenantService tenantService = new TenantService(new PooledConsulClient(consulClientFactory, () -> "token", 0));
+
+        assertThrows(ServerErrorException.class, () -> tenantService.add(tenant("t1", "missing", null)));
+        verify(consulClient, never()).transaction(any());
+    }
+
+    private static Tenant tenant(String tenantId, String namespace, List<String> vars) {
+        Tenant tenant = new Tenant();
+        tenant.setTenantId(tenantId);
+        tenant.setNamespace(namespace);
+        tenant.setDefaultTenantVars(vars);
+        return tenant;
+    }
+}
@@ -0,0 +1,89 @@
+package com.netcracker.core.declarative.service;
+
+import com.netcracker.core.declarative.resources.base.DeclarativeStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class XaasNotificationRegistryTest {
+
+    @Test
+    void acknowledgeIncrementsVersionOnlyForChangedMembers() {
+        XaasNotificationRegistry registry = new XaasNotificationRegistry();
+
+        assertThat(registry.acknowledge("MaaS", "c-1", Set.of("ns-1")).version()).isEqualTo(1);
+        assertThat(registry.acknowledge("MaaS", "c-1", Set.of("ns-1")).version()).isEqualTo(1);
+        assertThat(registry.acknowledge("MaaS", "c-1", Set.of("ns-1", "ns-2")).version()).isEqualTo(2);
+
+        assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue();
+        assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1"))).isFalse();
+        assertThat(registry.isAcknowledged("MaaS", "c-2", Set.of("ns-1", "ns-2"))).isFalse();
+        assertThat(registry.isAcknowledged("DBaaS", "c-1", Set.of("ns-1", "ns-2"))).isFalse();
+    }
+
+    @Test
+    void acknowledgementsSurviveStatusRoundTrip() {
+        XaasNotificationRegistry registry = new XaasNotificationRegistry();
+        registry.acknowledge("MaaS", "c-1", Set.of("ns-2", "ns-1"));
+        DeclarativeStatus status = new DeclarativeStatus();
+        registry.store(status, "c-1");
+
+        assertThat(status.getAdditionalProperties().get(XaasNotificationRegistry.STATUS_PROPERTY))
+                .isEqualTo(Map.of("MaaS", Map.of("compositeId", "c-1", "members", new TreeSet<>(Set.of("ns-1", "ns-2")), "version", 1L)));
+
+        // as read back from the apiserver
+        DeclarativeStatus read = new DeclarativeStatus();
+        read.setAdditionalProperty(XaasNotificationRegistry.STATUS_PROPERTY,
+                Map.of("MaaS", Map.of("compositeId", "c-1", "members", List.of("ns-1", "ns-2"), "version", 1)));
+        XaasNotificationRegistry restored = new XaasNotificationRegistry();
+        restored.restore(read);
+
+        assertThat(restored.isAcknowledged("MaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue();
+    }
+
+    @Test
+    void restoreKeepsNewerInMemoryAcknowledgement() {
+        XaasNotificationRegistry registry = new XaasNotificationRegistry();
+        registry.acknowledge("MaaS", "c-1", Set.of("ns-1"));
+        registry.acknowledge("MaaS", "c-1", Set.of("ns-1", "ns-2"));
+        DeclarativeStatus status = new DeclarativeStatus();
+        status.setAdditionalProperty(XaasNotificationRegistry.STATUS_PROPERTY,
+                Map.of("MaaS", Map.of("compositeId", "c-1", "members", List.of("ns-1"), "version", 1)));
+
+        registry.restore(status);
+
+        assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1", "ns-2"))).isTrue();
+    }
+
+    @Test
+    void malformedStatusEntriesAreIgnored() {
+        XaasNotificationRegistry registry = new XaasNotificationRegistry();
+        DeclarativeStatus status = new DeclarativeStatus();
+        status.setAdditionalProperty(XaasNotificationRegistry.STATUS_PROPERTY, Map.of("MaaS", "garbage", "DBaaS", Map.of("members", List.of())));
+
+        registry.restore(status);
+
+        assertThat(registry.get("MaaS", "c-1")).isEmpty();
+        assertThat(registry.get("DBaaS", "c-1")).isEmpty();
+    }
+
+    @Test
+    void compositesAreAcknowledgedIndependently() {
+        XaasNotificationRegistry registry = new XaasNotificationRegistry();
+        registry.acknowledge("MaaS", "c-1", Set.of("ns-1"));
+        registry.acknowledge("MaaS", "c-2", Set.of("ns-2"));
+
+        assertThat(registry.isAcknowledged("MaaS", "c-1", Set.of("ns-1"))).isTrue();
+        assertThat(registry.isAcknowledged("MaaS", "c-2", Set.of("ns-2"))).isTrue();
+
+        DeclarativeStatus status = new DeclarativeStatus();
+        registry.store(status, "c-2");
+        assertThat(status.getAdditionalProperties().get(XaasNotificationRegistry.STATUS_PROPERTY))
+                .isEqualTo(Map.of("MaaS", Map.of("compositeId", "c-2", "members", new TreeSet<>(Set.of("ns-2")), "version", 1L)));
+    }
+}
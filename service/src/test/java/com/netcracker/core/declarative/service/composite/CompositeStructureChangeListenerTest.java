@@ -5,7 +5,7 @@ import com.netcracker.core.declarative.resources.composite.Composite;
 import com.netcracker.core.declarative.service.CompositeCRHolder;
 import com.netcracker.core.declarative.service.composite.consul.CompositeStructureUpdateEvent;
 import com.netcracker.core.declarative.service.composite.model.CompositeStructure;
-import com.netcracker.core.declarative.service.composite.model.transformation.CompositeStructureTransformer;
+import com.netcracker.core.declarative.service.composite.model.transformation.IncrementalCompositeStructureTransformer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -30,14 +30,14 @@ class CompositeStructureChangeListenerTest {
     @BeforeEach
     void setUp() {
         topologyConfigMapPublisher = mock(TopologyConfigMapPublisher.class);
-        when(topologyConfigMapPublisher.publish(any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        when(topologyConfigMapPublisher.publish(any(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
 
         composite = mock(Composite.class);
         compositeCRHolder = mock(CompositeCRHolder.class);
-        when(compositeCRHolder.get()).thenReturn(composite);
+        when(compositeCRHolder.get(any())).thenReturn(composite);
 
         // real transformer so produced structures are realistic
-        CompositeStructureTransformer compositeStructureTransformer = new CompositeStructureTransformer();
+        IncrementalCompositeStructureTransformer compositeStructureTransformer = new IncrementalCompositeStructureTransformer();
         listener = new CompositeStructureChangeListener(
                 compositeStructureTransformer,
                 compositeCRHolder,
@@ -83,7 +83,7 @@ class CompositeStructureChangeListenerTest {
 
     @Test
     void skipsPublishWhenCompositeIsNull() {
-        when(compositeCRHolder.get()).thenReturn(null);
+        when(compositeCRHolder.get(any())).thenReturn(null);
 
         CompositeStructureUpdateEvent event = createEvent(Map.of(
                 "composite/sample/structure/ns-a/compositeRole", "baseline"
@@ -94,9 +94,20 @@ class CompositeStructureChangeListenerTest {
         verifyNoInteractions(topologyConfigMapPublisher);
     }
 
+    @Test
+    void publishesWithCompositeOfTheEvent() {
+        Composite other = mock(Composite.class);
+        when(compositeCRHolder.get("other")).thenReturn(other);
+        CompositeStructureUpdateEvent event = new CompositeStructureUpdateEvent("other", Collections.emptyList(), 7);
+
+        listener.onStructureUpdated(event);
+
+        verify(topologyConfigMapPublisher).publish(any(), eq(other), eq(7L));
+    }
+
     private CompositeStructure capturePublishedStructure() {
         ArgumentCaptor<CompositeStructure> captor = ArgumentCaptor.forClass(CompositeStructure.class);
-        verify(topologyConfigMapPublisher).publish(captor.capture(), eq(composite));
+        verify(topologyConfigMapPublisher).publish(captor.capture(), eq(composite), any());
         return captor.getValue();
     }
 
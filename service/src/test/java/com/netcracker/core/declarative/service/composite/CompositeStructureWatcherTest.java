@@ -13,6 +13,7 @@ import org.mockito.ArgumentCaptor;
 
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.NAME;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -86,6 +87,52 @@ class CompositeStructureWatcherTest {
         verifyNoInteractions(configMapClient);
     }
 
+    @Test
+    void shouldWatchEveryStartedComposite() {
+        LongPollSession otherSession = createMockLongPollSession();
+        when(consulLongPoller.startWatch(eq("composite/other-composite/structure"), any())).thenReturn(otherSession);
+        when(configMapClient.shouldBeManagedByCoreOperator(NAME, NAMESPACE)).thenReturn(true);
+
+        watcher.start(COMPOSITE_ID);
+        watcher.start("other-composite");
+
+        await().untilAsserted(() -> {
+            verify(consulLongPoller).startWatch(eq(COMPOSITE_STRUCTURE_KEY), any());
+            verify(consulLongPoller).startWatch(eq("composite/other-composite/structure"), any());
+        });
+        assertThat(watcher.getWatchedCompositeIds()).containsExactlyInAnyOrder(COMPOSITE_ID, "other-composite");
+        verify(configMapClient, times(1)).watchOwnership(eq(NAME), eq(NAMESPACE), any());
+    }
+
+    @Test
+    void stopShouldCancelOnlyTheStoppedComposite() {
+        LongPollSession otherSession = createMockLongPollSession();
+        when(consulLongPoller.startWatch(eq("composite/other-composite/structure"), any())).thenReturn(otherSession);
+        when(configMapClient.shouldBeManagedByCoreOperator(NAME, NAMESPACE)).thenReturn(true);
+        watcher.start(COMPOSITE_ID);
+        watcher.start("other-composite");
+        await().untilAsserted(() ->
+                verify(consulLongPoller).startWatch(eq("composite/other-composite/structure"), any()));
+
+        watcher.stop(COMPOSITE_ID);
+
+        verify(longPollSession).cancel();
+        verify(otherSession, never()).cancel();
+        assertThat(watcher.getWatchedCompositeIds()).containsExactly("other-composite");
+    }
+
+    @Test
+    void compositeCanBeStartedAgainAfterStop() {
+        when(configMapClient.shouldBeManagedByCoreOperator(NAME, NAMESPACE)).thenReturn(true);
+        watcher.start(COMPOSITE_ID);
+        await().untilAsserted(() -> verify(consulLongPoller).startWatch(eq(COMPOSITE_STRUCTURE_KEY), any()));
+
+        watcher.stop(COMPOSITE_ID);
+        watcher.start(COMPOSITE_ID);
+
+        await().untilAsserted(() -> verify(consulLongPoller, times(2)).startWatch(eq(COMPOSITE_STRUCTURE_KEY), any()));
+    }
+
     // === Ownership-based long-poll control tests ===
 
     @Test
@@ -132,6 +179,27 @@ class CompositeStructureWatcherTest {
         verify(consulLongPoller, never()).startWatch(any(), any());
     }
 
+    // === Informer-based ownership tests ===
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldReactToOwnershipEventsWithoutPolling() {
+        when(configMapClient.shouldBeManagedByCoreOperator(NAME, NAMESPACE)).thenReturn(true);
+        ArgumentCaptor<Consumer<Boolean>> listenerCaptor = ArgumentCaptor.forClass(Consumer.class);
+        when(configMapClient.watchOwnership(eq(NAME), eq(NAMESPACE), listenerCaptor.capture())).thenReturn(true);
+
+        watcher.start(COMPOSITE_ID);
+
+        await().untilAsserted(() -> verify(consulLongPoller).startWatch(eq(COMPOSITE_STRUCTURE_KEY), any()));
+
+        listenerCaptor.getValue().accept(false);
+        await().untilAsserted(() -> verify(longPollSession).cancel());
+
+        listenerCaptor.getValue().accept(true);
+        await().untilAsserted(() -> verify(consulLongPoller, times(2)).startWatch(eq(COMPOSITE_STRUCTURE_KEY), any()));
+        verify(configMapClient, times(1)).shouldBeManagedByCoreOperator(NAME, NAMESPACE);
+    }
+
     // === Feature flag tests ===
 
     @Test
@@ -167,6 +235,7 @@ class CompositeStructureWatcherTest {
         assertThat(event).isInstanceOf(CompositeStructureUpdateEvent.class);
         assertThat(event.getValues()).containsExactly(mockValue);
         assertThat(event.getConsulIndex()).isEqualTo(123L);
+        assertThat(event.getCompositeId()).isEqualTo(COMPOSITE_ID);
     }
 
     // === Helper methods ===
@@ -2,16 +2,28 @@ package com.netcracker.core.declarative.service.composite;
 
 import com.netcracker.core.declarative.client.k8s.ConfigMapClient;
 import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 class ConfigMapWriterTest {
@@ -30,6 +42,11 @@ class ConfigMapWriterTest {
         writer = new ConfigMapWriter(configMapClient, NAMESPACE);
     }
 
+    @AfterEach
+    void tearDown() {
+        writer.shutdown();
+    }
+
     @Test
     void requestUpdateShouldCallConfigMapClient() {
         Map<String, String> payload = Map.of("key", "value");
@@ -37,7 +54,148 @@ class ConfigMapWriterTest {
         CompletionStage<Void> result = writer.requestUpdate(CONFIG_MAP_NAME, payload, owner);
 
         assertThat(result).isNotNull();
-        verify(configMapClient).createOrUpdate(eq(CONFIG_MAP_NAME), eq(NAMESPACE), eq(payload), eq(owner));
+        verify(configMapClient, timeout(1000)).createOrUpdate(eq(CONFIG_MAP_NAME), eq(NAMESPACE), eq(payload), eq(owner));
+    }
+
+    @Test
+    void requestUpdateShouldPassBinaryPayload() {
+        Map<String, String> payload = Map.of("version", "1");
+        Map<String, String> binaryPayload = Map.of("data.gz", "H4sI");
+
+        writer.requestUpdate(CONFIG_MAP_NAME, payload, binaryPayload, owner);
+
+        verify(configMapClient, timeout(1000)).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, payload, binaryPayload, owner);
+    }
+
+    @Test
+    void payloadsRequestedDuringWriteAreCollapsedToLatest() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, String> first = Map.of("key", "1");
+        Map<String, String> second = Map.of("key", "2");
+        Map<String, String> third = Map.of("key", "3");
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(configMapClient).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, first, owner);
+
+        CompletableFuture<Void> firstResult = writer.requestUpdate(CONFIG_MAP_NAME, first, owner).toCompletableFuture();
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<Void> secondResult = writer.requestUpdate(CONFIG_MAP_NAME, second, owner).toCompletableFuture();
+        CompletableFuture<Void> thirdResult = writer.requestUpdate(CONFIG_MAP_NAME, third, owner).toCompletableFuture();
+        assertThat(writer.getQueueDepth()).isEqualTo(2);
+        release.countDown();
+
+        CompletableFuture.allOf(firstResult, secondResult, thirdResult).get(5, TimeUnit.SECONDS);
+        verify(configMapClient, never()).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, second, owner);
+        verify(configMapClient).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, third, owner);
+        assertThat(writer.getSuperseded()).isEqualTo(1);
+        assertThat(writer.getQueueDepth()).isZero();
+    }
+
+    @Test
+    void onlyLatestPayloadIsRetried() throws Exception {
+        ConfigMapWriter retrying = new ConfigMapWriter(configMapClient, NAMESPACE,
+                Duration.ofMillis(200), Duration.ofMillis(200), 10, Duration.ofMinutes(1));
+        try {
+            Map<String, String> stale = Map.of("key", "stale");
+            Map<String, String> latest = Map.of("key", "latest");
+            doThrow(new IllegalStateException("conflict")).when(configMapClient).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, stale, owner);
+
+            CompletableFuture<Void> staleResult = retrying.requestUpdate(CONFIG_MAP_NAME, stale, owner).toCompletableFuture();
+            verify(configMapClient, timeout(1000)).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, stale, owner);
+            CompletableFuture<Void> latestResult = retrying.requestUpdate(CONFIG_MAP_NAME, latest, owner).toCompletableFuture();
+
+            latestResult.get(5, TimeUnit.SECONDS);
+            staleResult.get(5, TimeUnit.SECONDS);
+            verify(configMapClient, times(1)).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, stale, owner);
+            verify(configMapClient).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, latest, owner);
+        } finally {
+            retrying.shutdown();
+        }
+    }
+
+    @Test
+    void newerPayloadDoesNotWaitForBackoffOfReplacedWrite() throws Exception {
+        ConfigMapWriter retrying = new ConfigMapWriter(configMapClient, NAMESPACE,
+                Duration.ofMinutes(1), Duration.ofMinutes(1), 10, Duration.ofMinutes(5));
+        try {
+            Map<String, String> failing = Map.of("key", "failing");
+            Map<String, String> latest = Map.of("key", "latest");
+            doThrow(new IllegalStateException("unavailable")).when(configMapClient).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, failing, owner);
+
+            CompletableFuture<Void> failingResult = retrying.requestUpdate(CONFIG_MAP_NAME, failing, owner).toCompletableFuture();
+            verify(configMapClient, timeout(1000)).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, failing, owner);
+            retrying.requestUpdate(CONFIG_MAP_NAME, latest, owner).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+            failingResult.get(5, TimeUnit.SECONDS);
+            verify(configMapClient, times(1)).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, failing, owner);
+        } finally {
+            retrying.shutdown();
+        }
+    }
+
+    @Test
+    void slowWriteDoesNotHoldBackOtherConfigMaps() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, String> payload = Map.of("key", "value");
+        doAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(configMapClient).createOrUpdate("slow", NAMESPACE, payload, owner);
+
+        CompletableFuture<Void> slow = writer.requestUpdate("slow", payload, owner).toCompletableFuture();
+        writer.requestUpdate(CONFIG_MAP_NAME, payload, owner).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertThat(slow).isNotDone();
+        release.countDown();
+        slow.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void failedWriteIsRetriedUntilItSucceeds() throws Exception {
+        ConfigMapWriter retrying = new ConfigMapWriter(configMapClient, NAMESPACE,
+                Duration.ofMillis(10), Duration.ofMillis(50), 10, Duration.ofMinutes(1));
+        try {
+            Map<String, String> payload = Map.of("key", "value");
+            doThrow(new IllegalStateException("unavailable"))
+                    .doThrow(new IllegalStateException("unavailable"))
+                    .doNothing()
+                    .when(configMapClient).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, payload, owner);
+
+            retrying.requestUpdate(CONFIG_MAP_NAME, payload, owner).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+            verify(configMapClient, times(3)).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, payload, owner);
+        } finally {
+            retrying.shutdown();
+        }
+    }
+
+    @Test
+    void exhaustedRetriesFailTheRequest() {
+        ConfigMapWriter retrying = new ConfigMapWriter(configMapClient, NAMESPACE,
+                Duration.ofMillis(10), Duration.ofMillis(10), 2, Duration.ofMinutes(1));
+        try {
+            Map<String, String> payload = Map.of("key", "value");
+            doThrow(new IllegalStateException("unavailable")).when(configMapClient).createOrUpdate(any(), any(), any(), any());
+
+            CompletableFuture<Void> result = retrying.requestUpdate(CONFIG_MAP_NAME, payload, owner).toCompletableFuture();
+
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class);
+            verify(configMapClient, times(3)).createOrUpdate(CONFIG_MAP_NAME, NAMESPACE, payload, owner);
+        } finally {
+            retrying.shutdown();
+        }
+    }
+
+    @Test
+    void metricsAreBound() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        writer.bindTo(registry);
+
+        assertThat(registry.get("core.operator.configmap.writer.queue.depth").gauge().value()).isZero();
+        assertThat(registry.get("core.operator.configmap.writer.superseded").functionCounter().count()).isZero();
     }
 
     @Test
@@ -3,23 +3,39 @@ package com.netcracker.core.declarative.service.composite;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.netcracker.core.declarative.client.k8s.ConfigMapClient;
 import com.netcracker.core.declarative.resources.composite.Composite;
 import com.netcracker.core.declarative.service.CloudProviderDetector;
 import com.netcracker.core.declarative.service.CloudProviderResolver;
 import com.netcracker.core.declarative.service.composite.model.CloudProvider;
 import com.netcracker.core.declarative.service.composite.model.CompositeStructure;
 import com.netcracker.core.declarative.service.composite.model.CompositeStructure.NamespaceRoles;
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.BASELINE_KEY;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.CONSUL_INDEX_KEY;
 import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.DATA_KEY;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.FORMAT_KEY;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.GZIP_DATA_KEY;
 import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.NAME;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.SATELLITES_KEY_PREFIX;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.VERSIONS_KEY;
+import static com.netcracker.core.declarative.service.composite.TopologyConfigMap.VERSION_KEY;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -29,6 +45,7 @@ class TopologyConfigMapPublisherTest {
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private ConfigMapWriter configMapWriter;
+    private ConfigMapClient configMapClient;
     private CloudProviderDetector cloudProviderDetector;
 
     @BeforeEach
@@ -36,6 +53,11 @@ class TopologyConfigMapPublisherTest {
         configMapWriter = mock(ConfigMapWriter.class);
         when(configMapWriter.requestUpdate(any(), any(), any()))
                 .thenReturn(CompletableFuture.completedFuture(null));
+        when(configMapWriter.requestUpdate(any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        configMapClient = mock(ConfigMapClient.class);
+        when(configMapClient.getData(NAME, "ns")).thenReturn(Map.of());
 
         cloudProviderDetector = mock(CloudProviderDetector.class);
         when(cloudProviderDetector.getCloudProvider()).thenReturn(CloudProvider.ON_PREM);
@@ -46,6 +68,11 @@ class TopologyConfigMapPublisherTest {
         return new TopologyConfigMapPublisher(configMapWriter, objectMapper, resolver);
     }
 
+    private TopologyConfigMapPublisher newPublisher(String format) {
+        CloudProviderResolver resolver = new CloudProviderResolver(Optional.of("EKS"), cloudProviderDetector);
+        return new TopologyConfigMapPublisher(configMapWriter, configMapClient, objectMapper, resolver, "ns", format, 4);
+    }
+
     @Test
     void stampsProviderAndSerializesStructure() throws JsonProcessingException {
         TopologyConfigMapPublisher publisher = newPublisher(Optional.of("EKS"));
@@ -94,6 +121,179 @@ class TopologyConfigMapPublisherTest {
         verify(configMapWriter).requestUpdate(eq(NAME), any(), eq(owner));
     }
 
+    @Test
+    void compositeOfOtherNamespaceIsNotPublished() {
+        TopologyConfigMapPublisher publisher = newPublisher("json");
+        Composite owner = mock(Composite.class);
+        when(owner.getMetadata()).thenReturn(new ObjectMetaBuilder().withNamespace("other").build());
+
+        publisher.publish(new CompositeStructure(new NamespaceRoles(null, "o", null), null), owner, 42L);
+
+        assertFalse(publisher.isPublishedFor(owner));
+        verifyNoInteractions(configMapWriter);
+    }
+
+    @Test
+    void gzipFormatWritesCompressedPayloadWithVersionAndConsulIndex() throws IOException {
+        TopologyConfigMapPublisher publisher = newPublisher("gzip");
+        Composite owner = mock(Composite.class);
+
+        publisher.publish(new CompositeStructure(new NamespaceRoles(null, "origin", null), null), owner, 42L);
+
+        ArgumentCaptor<Map<String, String>> data = mapCaptor();
+        ArgumentCaptor<Map<String, String>> binaryData = mapCaptor();
+        verify(configMapWriter).requestUpdate(eq(NAME), data.capture(), binaryData.capture(), eq(owner));
+        assertEquals(Map.of(FORMAT_KEY, "gzip", VERSION_KEY, "1", CONSUL_INDEX_KEY, "42"), data.getValue());
+        JsonNode root = objectMapper.readTree(gunzip(binaryData.getValue().get(GZIP_DATA_KEY)));
+        assertEquals("EKS", root.get("cloudProvider").asText());
+        assertEquals("origin", root.get("composite").get("baseline").get("origin").asText());
+    }
+
+    @Test
+    void versionGrowsOnlyWhenContentChanges() {
+        TopologyConfigMapPublisher publisher = newPublisher("gzip");
+        Composite owner = mock(Composite.class);
+        CompositeStructure structure = new CompositeStructure(new NamespaceRoles(null, "origin", null), null);
+
+        publisher.publish(structure, owner, 10L);
+        publisher.publish(structure, owner, null);
+        publisher.publish(new CompositeStructure(new NamespaceRoles(null, "other", null), null), owner, 11L);
+
+        ArgumentCaptor<Map<String, String>> data = mapCaptor();
+        verify(configMapWriter, times(3)).requestUpdate(eq(NAME), data.capture(), any(), eq(owner));
+        assertEquals(List.of("1", "1", "2"), data.getAllValues().stream().map(values -> values.get(VERSION_KEY)).toList());
+        assertEquals(List.of("10", "10", "11"), data.getAllValues().stream().map(values -> values.get(CONSUL_INDEX_KEY)).toList());
+    }
+
+    @Test
+    void versionContinuesFromExistingConfigMap() {
+        when(configMapClient.getData(NAME, "ns")).thenReturn(Map.of(VERSION_KEY, "7", CONSUL_INDEX_KEY, "100"));
+        TopologyConfigMapPublisher publisher = newPublisher("gzip");
+        Composite owner = mock(Composite.class);
+
+        publisher.publish(new CompositeStructure(new NamespaceRoles(null, "origin", null), null), owner);
+
+        ArgumentCaptor<Map<String, String>> data = mapCaptor();
+        verify(configMapWriter).requestUpdate(eq(NAME), data.capture(), any(), eq(owner));
+        assertEquals("8", data.getValue().get(VERSION_KEY));
+        assertEquals("100", data.getValue().get(CONSUL_INDEX_KEY));
+    }
+
+    @Test
+    void versionIsRecordedOnlyAfterWriteSucceeds() {
+        CompletableFuture<Void> firstWrite = new CompletableFuture<>();
+        when(configMapWriter.requestUpdate(any(), any(), any(), any()))
+                .thenReturn(firstWrite, CompletableFuture.completedFuture(null));
+        TopologyConfigMapPublisher publisher = newPublisher("gzip");
+        Composite owner = mock(Composite.class);
+        CompositeStructure structure = new CompositeStructure(new NamespaceRoles(null, "origin", null), null);
+
+        publisher.publish(structure, owner, 10L);
+        // the first write is still in flight, its content is not known to be written
+        publisher.publish(structure, owner, 10L);
+        // superseded by the second write, which completed already
+        firstWrite.complete(null);
+        publisher.publish(structure, owner, 10L);
+
+        ArgumentCaptor<Map<String, String>> data = mapCaptor();
+        verify(configMapWriter, times(3)).requestUpdate(eq(NAME), data.capture(), any(), eq(owner));
+        assertEquals(List.of("1", "2", "2"), data.getAllValues().stream().map(values -> values.get(VERSION_KEY)).toList());
+    }
+
+    @Test
+    void failedWriteReloadsConfigMapAndNeverReusesVersion() {
+        when(configMapWriter.requestUpdate(any(), any(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("apiserver unavailable")),
+                        CompletableFuture.completedFuture(null));
+        TopologyConfigMapPublisher publisher = newPublisher("gzip");
+        Composite owner = mock(Composite.class);
+        CompositeStructure structure = new CompositeStructure(new NamespaceRoles(null, "origin", null), null);
+
+        publisher.publish(structure, owner, 10L);
+        publisher.publish(structure, owner, null);
+
+        ArgumentCaptor<Map<String, String>> data = mapCaptor();
+        verify(configMapWriter, times(2)).requestUpdate(eq(NAME), data.capture(), any(), eq(owner));
+        assertEquals(List.of("1", "2"), data.getAllValues().stream().map(values -> values.get(VERSION_KEY)).toList());
+        // the Consul index of the failed write is not recorded either
+        assertNull(data.getAllValues().get(1).get(CONSUL_INDEX_KEY));
+        verify(configMapClient, times(2)).getData(NAME, "ns");
+    }
+
+    @Test
+    void shardedFormatSpreadsSatellitesOverKeys() throws IOException {
+        TopologyConfigMapPublisher publisher = newPublisher("sharded");
+        Composite owner = mock(Composite.class);
+        List<NamespaceRoles> satellites = IntStream.range(0, 20)
+                .mapToObj(i -> new NamespaceRoles(null, "sat-" + i, null))
+                .toList();
+
+        publisher.publish(new CompositeStructure(new NamespaceRoles(null, "origin", null), satellites), owner, 5L);
+
+        Map<String, String> data = captureData(owner, 1).get(0);
+        assertEquals("sharded", data.get(FORMAT_KEY));
+        assertEquals("1", data.get(VERSION_KEY));
+        assertEquals("5", data.get(CONSUL_INDEX_KEY));
+        assertEquals("origin", objectMapper.readTree(data.get(BASELINE_KEY)).get(BASELINE_KEY).get("origin").asText());
+        int published = 0;
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            if (entry.getKey().startsWith(SATELLITES_KEY_PREFIX)) {
+                published += objectMapper.readTree(entry.getValue()).size();
+            }
+        }
+        assertEquals(20, published);
+        JsonNode versions = objectMapper.readTree(data.get(VERSIONS_KEY));
+        data.keySet().stream()
+                .filter(key -> key.startsWith(SATELLITES_KEY_PREFIX) || key.equals(BASELINE_KEY))
+                .forEach(key -> assertEquals(1, versions.get(key).asLong()));
+    }
+
+    @Test
+    void shardedFormatKeepsVersionsOfUnchangedShards() throws IOException {
+        TopologyConfigMapPublisher publisher = newPublisher("sharded");
+        Composite owner = mock(Composite.class);
+        NamespaceRoles baseline = new NamespaceRoles(null, "origin", null);
+        List<NamespaceRoles> satellites = IntStream.range(0, 20)
+                .mapToObj(i -> new NamespaceRoles(null, "sat-" + i, null))
+                .toList();
+        List<NamespaceRoles> withNew = new ArrayList<>(satellites);
+        withNew.add(new NamespaceRoles(null, "sat-new", null));
+
+        publisher.publish(new CompositeStructure(baseline, satellites), owner, 5L);
+        publisher.publish(new CompositeStructure(baseline, withNew), owner, 6L);
+
+        List<Map<String, String>> data = captureData(owner, 2);
+        Map<String, String> first = data.get(0);
+        Map<String, String> second = data.get(1);
+        assertEquals("2", second.get(VERSION_KEY));
+        JsonNode versions = objectMapper.readTree(second.get(VERSIONS_KEY));
+        long changedShards = second.keySet().stream()
+                .filter(key -> key.startsWith(SATELLITES_KEY_PREFIX))
+                .filter(key -> !second.get(key).equals(first.get(key)))
+                .peek(key -> assertEquals(2, versions.get(key).asLong()))
+                .count();
+        assertEquals(1, changedShards);
+        assertEquals(1, versions.get(BASELINE_KEY).asLong());
+        assertEquals(first.get(BASELINE_KEY), second.get(BASELINE_KEY));
+    }
+
+    private List<Map<String, String>> captureData(Composite owner, int times) {
+        ArgumentCaptor<Map<String, String>> captor = mapCaptor();
+        verify(configMapWriter, times(times)).requestUpdate(eq(NAME), captor.capture(), eq(owner));
+        return captor.getAllValues();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<Map<String, String>> mapCaptor() {
+        return ArgumentCaptor.forClass(Map.class);
+    }
+
+    private static String gunzip(String base64) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(base64)))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private JsonNode capturePayload(Composite owner) throws JsonProcessingException {
         ArgumentCaptor<Map<String, String>> captor = ArgumentCaptor.forClass(Map.class);
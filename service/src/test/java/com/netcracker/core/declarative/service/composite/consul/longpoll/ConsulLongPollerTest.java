@@ -6,12 +6,14 @@ import com.netcracker.cloud.quarkus.consul.client.ConsulSourceConfig;
 import com.netcracker.cloud.quarkus.consul.client.http.QueryParams;
 import com.netcracker.cloud.quarkus.consul.client.http.Response;
 import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.enterprise.event.Event;
 import jakarta.enterprise.inject.Instance;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
@@ -20,6 +22,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -29,6 +32,7 @@ import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -327,6 +331,244 @@ class ConsulLongPollerTest {
         session.cancel();
     }
 
+    @Test
+    void nestedWatchesShareOneBlockingQueryOnParent() throws InterruptedException {
+        GetValue structureValue = value("composite/first/structure/ns/compositeRole");
+        GetValue configValue = value("composite/first/config/tenants/default/id");
+        Response<List<GetValue>> response = createResponse(List.of(structureValue, configValue), 100L);
+        when(consulClient.getKVValuesAsync(eq("composite/"), eq(TOKEN), any(QueryParams.class)))
+                .thenReturn(CompletableFuture.completedFuture(response));
+        CountDownLatch childEvent = new CountDownLatch(1);
+        doAnswer(inv -> {
+            if (inv.getArgument(0) instanceof ChildEvent) {
+                childEvent.countDown();
+            }
+            return null;
+        }).when(event).fire(any(ConsulUpdateEvent.class));
+
+        LongPollSession parent = poller.startWatch("composite/", TestEvent::new);
+        LongPollSession child = poller.startWatch("composite/first/structure", ChildEvent::new);
+
+        assertThat(childEvent.await(2, TimeUnit.SECONDS)).isTrue();
+        verify(consulClient, never()).getKVValuesAsync(eq("composite/first/structure"), anyString(), any(QueryParams.class));
+        ArgumentCaptor<ConsulUpdateEvent> eventCaptor = ArgumentCaptor.forClass(ConsulUpdateEvent.class);
+        verify(event, atLeast(2)).fire(eventCaptor.capture());
+        assertThat(eventCaptor.getAllValues())
+                .filteredOn(ChildEvent.class::isInstance)
+                .allSatisfy(childUpdate -> assertThat(childUpdate.getValues()).containsExactly(structureValue));
+
+        parent.cancel();
+        child.cancel();
+    }
+
+    @Test
+    void cancellingParentStartsOwnWatchForNestedRoot() {
+        when(consulClient.getKVValuesAsync(anyString(), eq(TOKEN), any(QueryParams.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        LongPollSession parent = poller.startWatch("composite/", TestEvent::new);
+        LongPollSession child = poller.startWatch("composite/first/structure", ChildEvent::new);
+        parent.cancel();
+
+        verify(consulClient, timeout(2000).atLeast(1))
+                .getKVValuesAsync(eq("composite/first/structure"), eq(TOKEN), any(QueryParams.class));
+
+        child.cancel();
+    }
+
+    @Test
+    void watchMetricsAreExported() {
+        when(consulClient.getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class)))
+                .thenReturn(CompletableFuture.completedFuture(createResponse(List.of(mock(GetValue.class)), 100L)));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        poller.bindTo(registry);
+
+        LongPollSession session = poller.startWatch(ROOT_PATH, TestEvent::new);
+
+        await().atMost(Duration.ofSeconds(2)).untilAsserted(() ->
+                assertThat(registry.get("core.operator.consul.longpoll.index").tag("root", ROOT_PATH).gauge().value()).isEqualTo(100));
+        assertThat(registry.get("core.operator.consul.longpoll.lag").tag("root", ROOT_PATH).timeGauge()).isNotNull();
+        assertThat(registry.get("core.operator.consul.longpoll.watches").gauge().value()).isEqualTo(1);
+
+        session.cancel();
+        assertThat(registry.find("core.operator.consul.longpoll.lag").tag("root", ROOT_PATH).timeGauge()).isNull();
+    }
+
+    @Test
+    void unchangedEntriesDoNotFireAgain() {
+        GetValue first = value("root/key", 5L, "v1");
+        GetValue changed = value("root/key", 6L, "v2");
+        List<Response<List<GetValue>>> responses = List.of(
+                createResponse(List.of(first), 100L),
+                createResponse(List.of(first), 150L),
+                createResponse(List.of(changed), 200L),
+                createResponse(List.of(changed), 200L));
+        AtomicInteger call = new AtomicInteger();
+        when(consulClient.getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class)))
+                .thenAnswer(inv -> CompletableFuture.completedFuture(responses.get(Math.min(call.getAndIncrement(), responses.size() - 1))));
+
+        LongPollSession session = poller.startWatch(ROOT_PATH, TestEvent::new);
+
+        verify(consulClient, timeout(3000).atLeast(5)).getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class));
+        session.cancel();
+        ArgumentCaptor<ConsulUpdateEvent> eventCaptor = ArgumentCaptor.forClass(ConsulUpdateEvent.class);
+        verify(event, times(2)).fire(eventCaptor.capture());
+        assertThat(eventCaptor.getAllValues()).extracting(ConsulUpdateEvent::getConsulIndex).containsExactly(100L, 200L);
+    }
+
+    @Test
+    void indexGoingBackwardsRedeliversCurrentState() {
+        GetValue entry = value("root/key", 5L, "v1");
+        List<Response<List<GetValue>>> responses = List.of(
+                createResponse(List.of(entry), 100L),
+                createResponse(List.of(entry), 10L),
+                createResponse(List.of(entry), 10L));
+        AtomicInteger call = new AtomicInteger();
+        AtomicReference<Long> indexAfterReset = new AtomicReference<>();
+        when(consulClient.getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class)))
+                .thenAnswer(inv -> {
+                    int count = call.getAndIncrement();
+                    if (count == 2) {
+                        indexAfterReset.set(((QueryParams) inv.getArgument(2)).getIndex());
+                    }
+                    return CompletableFuture.completedFuture(responses.get(Math.min(count, responses.size() - 1)));
+                });
+
+        LongPollSession session = poller.startWatch(ROOT_PATH, TestEvent::new);
+
+        verify(consulClient, timeout(3000).atLeast(4)).getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class));
+        session.cancel();
+        verify(event, times(2)).fire(any(ConsulUpdateEvent.class));
+        assertThat(indexAfterReset.get()).isEqualTo(10L);
+    }
+
+    @Test
+    void emptiedRootFiresOneEmptySnapshot() {
+        GetValue entry = value("root/key", 5L, "v1");
+        List<Response<List<GetValue>>> responses = List.of(
+                createResponse(List.of(entry), 100L),
+                createResponse(null, 150L),
+                createResponse(null, 150L));
+        AtomicInteger call = new AtomicInteger();
+        when(consulClient.getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class)))
+                .thenAnswer(inv -> CompletableFuture.completedFuture(responses.get(Math.min(call.getAndIncrement(), responses.size() - 1))));
+
+        LongPollSession session = poller.startWatch(ROOT_PATH, TestEvent::new);
+
+        verify(consulClient, timeout(3000).atLeast(4)).getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class));
+        session.cancel();
+        ArgumentCaptor<ConsulUpdateEvent> eventCaptor = ArgumentCaptor.forClass(ConsulUpdateEvent.class);
+        verify(event, times(2)).fire(eventCaptor.capture());
+        ConsulUpdateEvent emptied = eventCaptor.getAllValues().getLast();
+        assertThat(emptied.getValues()).isEmpty();
+        assertThat(emptied.getConsulIndex()).isEqualTo(150L);
+    }
+
+    @Test
+    void emptiedNestedRootFiresEmptySnapshotWhileParentKeepsData() {
+        GetValue structureValue = value("composite/first/structure/ns/compositeRole", 5L, "baseline");
+        GetValue configValue = value("composite/first/config/tenants/default/id", 6L, "tenant");
+        List<Response<List<GetValue>>> responses = List.of(
+                createResponse(List.of(structureValue, configValue), 100L),
+                createResponse(List.of(configValue), 150L),
+                createResponse(List.of(configValue), 150L));
+        AtomicInteger call = new AtomicInteger();
+        when(consulClient.getKVValuesAsync(anyString(), eq(TOKEN), any(QueryParams.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(consulClient.getKVValuesAsync(eq("composite/"), eq(TOKEN), any(QueryParams.class)))
+                .thenAnswer(inv -> CompletableFuture.completedFuture(responses.get(Math.min(call.getAndIncrement(), responses.size() - 1))));
+
+        // subscribed first, so the child already gets the first response of the shared watch
+        LongPollSession child = poller.startWatch("composite/first/structure", ChildEvent::new);
+        LongPollSession parent = poller.startWatch("composite/", TestEvent::new);
+
+        verify(consulClient, timeout(3000).atLeast(4)).getKVValuesAsync(eq("composite/"), eq(TOKEN), any(QueryParams.class));
+        parent.cancel();
+        child.cancel();
+        ArgumentCaptor<ConsulUpdateEvent> eventCaptor = ArgumentCaptor.forClass(ConsulUpdateEvent.class);
+        verify(event, atLeast(2)).fire(eventCaptor.capture());
+        assertThat(eventCaptor.getAllValues())
+                .filteredOn(ChildEvent.class::isInstance)
+                .extracting(ConsulUpdateEvent::getValues)
+                .containsExactly(List.of(structureValue), List.of());
+    }
+
+    @Test
+    void digestToleratesMissingFields() {
+        GetValue empty = mock(GetValue.class);
+
+        assertThat(ConsulLongPoller.digest(List.of(empty))).isEqualTo(ConsulLongPoller.digest(List.of(mock(GetValue.class))));
+        assertThat(ConsulLongPoller.digest(List.of(value("k", 1L, "a"))))
+                .isNotEqualTo(ConsulLongPoller.digest(List.of(value("k", 1L, "b"))));
+    }
+
+    @Test
+    void adaptivePollerRepollsRightAfterChange() {
+        ConsulLongPoller adaptivePoller = adaptivePoller(20);
+        AtomicInteger call = new AtomicInteger();
+        when(consulClient.getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class)))
+                .thenAnswer(inv -> {
+                    int count = call.incrementAndGet();
+                    return CompletableFuture.completedFuture(createResponse(List.of(value("root/key", count, "v" + count)), 100L + count));
+                });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        adaptivePoller.bindTo(registry);
+
+        LongPollSession session = adaptivePoller.startWatch(ROOT_PATH, TestEvent::new);
+
+        // on-success-delay-time is 10s, so several polls within 2s are only possible with adaptive scheduling
+        verify(consulClient, timeout(2000).atLeast(4)).getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class));
+        session.cancel();
+        adaptivePoller.shutdown();
+        assertThat(registry.get("core.operator.consul.longpoll.propagation").tag("root", ROOT_PATH).timer().count()).isPositive();
+    }
+
+    @Test
+    void adaptivePollerLimitsPollRateOfFlappingKey() throws InterruptedException {
+        ConsulLongPoller adaptivePoller = adaptivePoller(200);
+        AtomicInteger call = new AtomicInteger();
+        when(consulClient.getKVValuesAsync(eq(ROOT_PATH), eq(TOKEN), any(QueryParams.class)))
+                .thenAnswer(inv -> {
+                    int count = call.incrementAndGet();
+                    return CompletableFuture.completedFuture(createResponse(List.of(value("root/key", count, "v" + count)), 100L + count));
+                });
+
+        LongPollSession session = adaptivePoller.startWatch(ROOT_PATH, TestEvent::new);
+        Thread.sleep(700);
+        session.cancel();
+        adaptivePoller.shutdown();
+
+        assertThat(call.get()).isBetween(2, 5);
+    }
+
+    private ConsulLongPoller adaptivePoller(int minPollIntervalMs) {
+        ConsulSourceConfig consulSourceConfig = mock(ConsulSourceConfig.class);
+        ConsulLongPollConfig consulLongPollConfig = mock(ConsulLongPollConfig.class);
+        @SuppressWarnings("unchecked")
+        Instance<TokenStorage> tokenStorageInstance = mock(Instance.class);
+        when(tokenStorageInstance.get()).thenReturn(tokenStorage);
+        when(consulSourceConfig.waitTime()).thenReturn(WAIT_TIME_SECS);
+        when(consulLongPollConfig.retryTime()).thenReturn(RETRY_DELAY_MS);
+        when(consulLongPollConfig.onSuccessDelayTime()).thenReturn(10_000);
+        when(consulLongPollConfig.adaptive()).thenReturn(true);
+        when(consulLongPollConfig.minPollInterval()).thenReturn(minPollIntervalMs);
+        when(consulLongPollConfig.backoffInitial()).thenReturn(10);
+        return new ConsulLongPoller(tokenStorageInstance, consulClient, consulSourceConfig, consulLongPollConfig, event);
+    }
+
+    private static GetValue value(String key, long modifyIndex, String content) {
+        GetValue value = value(key);
+        when(value.getModifyIndex()).thenReturn(modifyIndex);
+        when(value.getValue()).thenReturn(content);
+        return value;
+    }
+
+    private static GetValue value(String key) {
+        GetValue value = mock(GetValue.class);
+        when(value.getKey()).thenReturn(key);
+        return value;
+    }
+
     @SuppressWarnings("unchecked")
     private Response<List<GetValue>> createResponse(List<GetValue> values, long consulIndex) {
         Response<List<GetValue>> response = mock(Response.class);
@@ -340,4 +582,10 @@ class ConsulLongPollerTest {
             super(values, consulIndex);
         }
     }
+
+    private static class ChildEvent extends ConsulUpdateEvent {
+        public ChildEvent(List<GetValue> values, long consulIndex) {
+            super(values, consulIndex);
+        }
+    }
 }
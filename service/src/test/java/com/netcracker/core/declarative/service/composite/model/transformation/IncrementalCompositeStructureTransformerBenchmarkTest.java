@@ -0,0 +1,76 @@
+package com.netcracker.core.declarative.service.composite.model.transformation;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.model.CompositeStructure;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.netcracker.core.declarative.service.composite.model.transformation.IncrementalCompositeStructureTransformerTest.value;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the full and the incremental transformation of a composite with thousands of satellite namespaces,
+ * where every long-poll snapshot adds one satellite and removes another.
+ */
+class IncrementalCompositeStructureTransformerBenchmarkTest {
+    private static final int SATELLITES = 2_000;
+    private static final int SNAPSHOTS = 50;
+
+    @Test
+    void incrementalTransformationOfLargeComposite(TestReporter reporter) {
+        Map<String, GetValue> entries = new LinkedHashMap<>();
+        long modifyIndex = 0;
+        put(entries, "bs-origin/compositeRole", "baseline", ++modifyIndex);
+        for (int i = 0; i < SATELLITES; i++) {
+            String controller = "sat-" + i + "-controller";
+            put(entries, controller + "/compositeRole", "satellite", ++modifyIndex);
+            put(entries, controller + "/bluegreenRole", "controller", ++modifyIndex);
+            for (String role : List.of("origin", "peer")) {
+                String namespace = "sat-" + i + "-" + role;
+                put(entries, namespace + "/compositeRole", "satellite", ++modifyIndex);
+                put(entries, namespace + "/bluegreenRole", role, ++modifyIndex);
+                put(entries, namespace + "/controllerNamespace", controller, ++modifyIndex);
+            }
+        }
+
+        List<List<GetValue>> snapshots = new ArrayList<>();
+        snapshots.add(List.copyOf(entries.values()));
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            put(entries, "sat-new-" + i + "/compositeRole", "satellite", ++modifyIndex);
+            entries.remove("composite/bs-origin/structure/sat-" + i + "-peer/compositeRole");
+            snapshots.add(List.copyOf(entries.values()));
+        }
+
+        CompositeStructureTransformer fullTransformer = new CompositeStructureTransformer();
+        IncrementalCompositeStructureTransformer incrementalTransformer = new IncrementalCompositeStructureTransformer();
+        List<CompositeStructure> expected = new ArrayList<>();
+        long fullNanos = 0;
+        long incrementalNanos = 0;
+        for (List<GetValue> snapshot : snapshots) {
+            long started = System.nanoTime();
+            expected.add(fullTransformer.transform(snapshot));
+            fullNanos += System.nanoTime() - started;
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            long started = System.nanoTime();
+            CompositeStructure structure = incrementalTransformer.transform("bs-origin", snapshots.get(i));
+            incrementalNanos += System.nanoTime() - started;
+            assertThat(structure).isEqualTo(expected.get(i));
+        }
+
+        assertThat(expected.getLast().satellites()).hasSize(SATELLITES + SNAPSHOTS);
+        reporter.publishEntry("entries", String.valueOf(snapshots.getFirst().size()));
+        reporter.publishEntry("full transformation, ms per snapshot", String.valueOf(fullNanos / snapshots.size() / 1_000_000.0));
+        reporter.publishEntry("incremental transformation, ms per snapshot", String.valueOf(incrementalNanos / snapshots.size() / 1_000_000.0));
+    }
+
+    private static void put(Map<String, GetValue> entries, String path, String value, long modifyIndex) {
+        GetValue getValue = value(path, value, modifyIndex);
+        entries.put(getValue.getKey(), getValue);
+    }
+}
@@ -0,0 +1,183 @@
+package com.netcracker.core.declarative.service.composite.model.transformation;
+
+import com.netcracker.cloud.quarkus.consul.client.model.GetValue;
+import com.netcracker.core.declarative.service.composite.model.CompositeStructure;
+import com.netcracker.core.declarative.service.composite.model.CompositeStructure.NamespaceRoles;
+import com.netcracker.core.declarative.service.composite.model.CompositeStructureParseException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IncrementalCompositeStructureTransformerTest {
+    private static final String COMPOSITE_ID = "bs-origin";
+    private static final String PREFIX = "composite/bs-origin/structure/";
+
+    private IncrementalCompositeStructureTransformer transformer;
+    private CompositeStructureTransformer fullTransformer;
+
+    @BeforeEach
+    void setUp() {
+        transformer = new IncrementalCompositeStructureTransformer();
+        fullTransformer = new CompositeStructureTransformer();
+    }
+
+    @Test
+    void firstSnapshotIsTransformedLikeFullTransformer() {
+        List<GetValue> values = List.of(
+                value("bs-controller/bluegreenRole", "controller", 1),
+                value("bs-controller/compositeRole", "baseline", 2),
+                value("bs-origin/bluegreenRole", "origin", 3),
+                value("bs-origin/compositeRole", "baseline", 4),
+                value("bs-origin/controllerNamespace", "bs-controller", 5),
+                value("st-controller/bluegreenRole", "controller", 6),
+                value("st-controller/compositeRole", "satellite", 7),
+                value("st-origin/bluegreenRole", "origin", 8),
+                value("st-origin/compositeRole", "satellite", 9),
+                value("st-origin/controllerNamespace", "st-controller", 10),
+                value("st-2/compositeRole", "satellite", 11),
+                rawValue("some/other/key", "value", 12));
+
+        assertThat(transformer.transform(COMPOSITE_ID, values)).isEqualTo(fullTransformer.transform(values));
+    }
+
+    @Test
+    void unchangedEntriesAreNotParsedAgain() {
+        GetValue baseline = value("bs-origin/compositeRole", "baseline", 1);
+        GetValue satellite = value("st-1/compositeRole", "satellite", 2);
+        transformer.transform(COMPOSITE_ID, List.of(baseline, satellite));
+
+        GetValue unchanged = value("bs-origin/compositeRole", "baseline", 1);
+        GetValue added = value("st-2/compositeRole", "satellite", 3);
+        CompositeStructure structure = transformer.transform(COMPOSITE_ID, List.of(unchanged, satellite, added));
+
+        verify(unchanged, never()).getDecodedValue();
+        assertThat(structure).isEqualTo(new CompositeStructure(new NamespaceRoles(null, "bs-origin", null),
+                List.of(new NamespaceRoles(null, "st-1", null), new NamespaceRoles(null, "st-2", null))));
+    }
+
+    @Test
+    void removedEntriesAreApplied() {
+        transformer.transform(COMPOSITE_ID, List.of(
+                value("bs-origin/compositeRole", "baseline", 1),
+                value("st-1/compositeRole", "satellite", 2),
+                value("st-2/compositeRole", "satellite", 3)));
+
+        CompositeStructure structure = transformer.transform(COMPOSITE_ID, List.of(
+                value("bs-origin/compositeRole", "baseline", 1),
+                value("st-2/compositeRole", "satellite", 3)));
+
+        assertThat(structure).isEqualTo(new CompositeStructure(new NamespaceRoles(null, "bs-origin", null),
+                List.of(new NamespaceRoles(null, "st-2", null))));
+    }
+
+    @Test
+    void changedEntryMovesNamespaceBetweenGroups() {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("bs-origin/compositeRole", "baseline");
+        entries.put("st-controller/bluegreenRole", "controller");
+        entries.put("st-controller/compositeRole", "satellite");
+        entries.put("st-origin/bluegreenRole", "origin");
+        entries.put("st-origin/compositeRole", "satellite");
+        entries.put("st-origin/controllerNamespace", "st-controller");
+        entries.put("st-peer/bluegreenRole", "peer");
+        entries.put("st-peer/compositeRole", "satellite");
+        entries.put("st-peer/controllerNamespace", "st-controller");
+        transformer.transform(COMPOSITE_ID, snapshot(entries, Map.of()));
+
+        // the peer leaves the blue-green domain and becomes a standalone baseline member
+        entries.remove("st-peer/bluegreenRole");
+        entries.remove("st-peer/controllerNamespace");
+        entries.put("st-peer/compositeRole", "baseline");
+        entries.remove("bs-origin/compositeRole");
+        List<GetValue> values = snapshot(entries, Map.of("st-peer/compositeRole", 100L));
+
+        CompositeStructure structure = transformer.transform(COMPOSITE_ID, values);
+
+        assertThat(structure).isEqualTo(fullTransformer.transform(values));
+        assertThat(structure.baseline()).isEqualTo(new NamespaceRoles(null, "st-peer", null));
+        assertThat(structure.satellites()).containsExactly(new NamespaceRoles("st-controller", "st-origin", null));
+    }
+
+    @Test
+    void entriesWithoutModifyIndexAreComparedByValue() {
+        transformer.transform(COMPOSITE_ID, List.of(value("ns-1/compositeRole", "baseline", 0)));
+
+        CompositeStructure structure = transformer.transform(COMPOSITE_ID, List.of(value("ns-1/compositeRole", "satellite", 0)));
+
+        assertThat(structure).isEqualTo(new CompositeStructure(null, List.of(new NamespaceRoles(null, "ns-1", null))));
+    }
+
+    @Test
+    void invalidSnapshotThrowsAndNextSnapshotIsTransformedInFull() {
+        transformer.transform(COMPOSITE_ID, List.of(value("bs-origin/compositeRole", "baseline", 1)));
+
+        assertThatThrownBy(() -> transformer.transform(COMPOSITE_ID, List.of(
+                value("bs-origin/compositeRole", "baseline", 1),
+                value("bs-two/compositeRole", "baseline", 2))))
+                .isInstanceOf(CompositeStructureParseException.class)
+                .hasMessageContaining("Multiple namespaces with the same blue-green role");
+        assertThatThrownBy(() -> transformer.transform(COMPOSITE_ID, List.of(value("bs-origin/compositeRole", "INVALID", 3))))
+                .isInstanceOf(CompositeStructureParseException.class)
+                .hasMessageContaining("composite role");
+
+        GetValue valid = value("bs-origin/compositeRole", "baseline", 1);
+        assertThat(transformer.transform(COMPOSITE_ID, List.of(valid)))
+                .isEqualTo(new CompositeStructure(new NamespaceRoles(null, "bs-origin", null), List.of()));
+        verify(valid).getDecodedValue();
+    }
+
+    @Test
+    void compositesAreTransformedIndependently() {
+        transformer.transform("c-1", List.of(value("ns-1/compositeRole", "baseline", 1)));
+
+        CompositeStructure other = transformer.transform("c-2", List.of(value("ns-2/compositeRole", "baseline", 1)));
+        CompositeStructure first = transformer.transform("c-1", List.of(value("ns-1/compositeRole", "baseline", 1)));
+
+        assertThat(other.baseline().origin()).isEqualTo("ns-2");
+        assertThat(first.baseline().origin()).isEqualTo("ns-1");
+    }
+
+    @Test
+    void removedCompositeIsTransformedInFull() {
+        transformer.transform(COMPOSITE_ID, List.of(value("bs-origin/compositeRole", "baseline", 1)));
+
+        transformer.remove(COMPOSITE_ID);
+
+        GetValue unchanged = value("bs-origin/compositeRole", "baseline", 1);
+        transformer.transform(COMPOSITE_ID, List.of(unchanged));
+        verify(unchanged).getDecodedValue();
+    }
+
+    private static List<GetValue> snapshot(Map<String, String> entries, Map<String, Long> changedIndexes) {
+        List<GetValue> values = new ArrayList<>();
+        int index = 0;
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            index++;
+            values.add(value(entry.getKey(), entry.getValue(), changedIndexes.getOrDefault(entry.getKey(), (long) index)));
+        }
+        return values;
+    }
+
+    static GetValue value(String path, String value, long modifyIndex) {
+        return rawValue(PREFIX + path, value, modifyIndex);
+    }
+
+    static GetValue rawValue(String key, String value, long modifyIndex) {
+        GetValue gv = mock(GetValue.class);
+        when(gv.getKey()).thenReturn(key);
+        when(gv.getDecodedValue()).thenReturn(value);
+        when(gv.getModifyIndex()).thenReturn(modifyIndex);
+        return gv;
+    }
+}